@@ -0,0 +1,57 @@
+package UI;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import algorithm.AnalysisSettings;
+import algorithm.DiscreteCostAnalysis;
+import algorithm.Raster;
+import benchmarks.Benchmarks;
+import benchmarks.SyntheticTerrain;
+
+/**
+ * Colour rendering of a discrete cost surface as TrainTerrainPanel shows it, serially and on every processor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {Benchmarks.HEAP, "-Djava.awt.headless=true"})
+public class ColorRenderingBenchmark {
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	private Raster discreteCost;
+	private Palette palette;
+
+	@Setup
+	public void setUp() {
+		SyntheticTerrain terrain = SyntheticTerrain.generate(size);
+		discreteCost = DiscreteCostAnalysis.generateDiscreteCostRaster(terrain.layers(), Benchmarks.CELL_SIZE, Benchmarks.ALTITUDE_SCALE,
+				SyntheticTerrain.weightings(), new AnalysisSettings());
+		palette = Palette.cost();
+	}
+
+	@Benchmark
+	public BufferedImage renderSerial() {
+		return CostRenderer.render(discreteCost, palette, 1);
+	}
+
+	@Benchmark
+	public BufferedImage renderParallel() {
+		return CostRenderer.render(discreteCost, palette, Runtime.getRuntime().availableProcessors());
+	}
+}
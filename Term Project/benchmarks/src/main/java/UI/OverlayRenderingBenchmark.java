@@ -0,0 +1,78 @@
+package UI;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmarks.Benchmarks;
+import benchmarks.SyntheticTerrain;
+import fileUtils.FileUtil;
+
+/**
+ * Drawing a layer image fitted to a 1280 x 800 view as OverlayPanel paints it: with the mipmaps built by the first paint (coldFit),
+ * with them already built (fit, as on a resize), and zoomed in to one image pixel per screen pixel (zoomed)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {Benchmarks.HEAP, "-Djava.awt.headless=true"})
+public class OverlayRenderingBenchmark {
+	private static final int VIEW_WIDTH = 1280;
+	private static final int VIEW_HEIGHT = 800;
+
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	private BufferedImage image;
+	private ImagePyramid pyramid;
+	private BufferedImage view;
+	private double fitScale;
+
+	@Setup
+	public void setUp() {
+		image = FileUtil.gridToImage(SyntheticTerrain.generate(size).altitude);
+		view = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		fitScale = Math.min((double) VIEW_WIDTH / size, (double) VIEW_HEIGHT / size);
+		pyramid = new ImagePyramid(image, false);
+		draw(pyramid, fitScale);
+	}
+
+	@Benchmark
+	public BufferedImage coldFit() {
+		return draw(new ImagePyramid(image, false), fitScale);
+	}
+
+	@Benchmark
+	public BufferedImage fit() {
+		return draw(pyramid, fitScale);
+	}
+
+	@Benchmark
+	public BufferedImage zoomed() {
+		return draw(pyramid, 1);
+	}
+
+	private BufferedImage draw(ImagePyramid pyramid, double scale) {
+		Graphics2D graphics = view.createGraphics();
+		try {
+			pyramid.draw(graphics, scale, 0, 0);
+		} finally {
+			graphics.dispose();
+		}
+		return view;
+	}
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import algorithm.AccumulatedCostAnalysis;
+import algorithm.AnalysisSettings;
+import algorithm.DiscreteCostAnalysis;
+import algorithm.FloatRaster;
+import algorithm.Grid;
+import algorithm.IntRaster;
+import algorithm.MapUtil;
+import algorithm.Raster;
+
+/**
+ * Full accumulated cost surface of the discrete cost of a synthetic terrain, from its bottom right cell
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.HEAP)
+public class AccumulatedCostBenchmark {
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	// DIJKSTRA and DELTA_STEPPING engines in double precision, or the single precision Dijkstra search
+	@Param({"DIJKSTRA", "DELTA_STEPPING", "DIJKSTRA_FLOAT"})
+	public String engine;
+
+	private IntRaster source;
+	private Raster discreteCost;
+	private FloatRaster floatDiscreteCost;
+	private AnalysisSettings settings;
+
+	@Setup
+	public void setUp() {
+		SyntheticTerrain terrain = SyntheticTerrain.generate(size);
+		discreteCost = DiscreteCostAnalysis.generateDiscreteCostRaster(terrain.layers(), Benchmarks.CELL_SIZE, Benchmarks.ALTITUDE_SCALE,
+				SyntheticTerrain.weightings(), new AnalysisSettings());
+		floatDiscreteCost = FloatRaster.fromRaster(discreteCost);
+		source = new IntRaster(size, size);
+		source.set(size - 1, size - 1, 1);
+		settings = new AnalysisSettings();
+		settings.parallelism = Runtime.getRuntime().availableProcessors();
+		if(!engine.equals("DIJKSTRA_FLOAT")) {
+			settings.accumulatedCostEngine = MapUtil.AccumulatedCostEngines.valueOf(engine);
+		}
+	}
+
+	@Benchmark
+	public Grid generateAccumulatedCostMap() {
+		if(engine.equals("DIJKSTRA_FLOAT")) {
+			return AccumulatedCostAnalysis.generateAccumulatedCostMap(source, floatDiscreteCost, Benchmarks.COST_DISTANCE, null, null);
+		}
+		return AccumulatedCostAnalysis.generateAccumulatedCostMap(source, discreteCost, Benchmarks.COST_DISTANCE, settings);
+	}
+}
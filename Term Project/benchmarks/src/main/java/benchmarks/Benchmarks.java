@@ -0,0 +1,17 @@
+package benchmarks;
+
+/**
+ * Constants shared by the benchmarks.
+ * Every benchmark runs at 256, 1024, 4096 and 8192 cells square (pick sizes with -p size=...).
+ */
+public class Benchmarks {
+	// Heap of the forked benchmark JVMs: a full analysis of 8192 x 8192 cells holds several rasters of 512 MB
+	public static final String HEAP = "-Xmx12g";
+
+	// Analysis constants of the synthetic terrains
+	public static final double CELL_SIZE = 10.0;
+	public static final double ALTITUDE_SCALE = 2.0;
+	public static final double COST_DISTANCE = 1.0;
+
+	private Benchmarks() {}
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import algorithm.AnalysisSettings;
+import algorithm.DiscreteCostAnalysis;
+import algorithm.MapUtil;
+import algorithm.Raster;
+
+/**
+ * Discrete cost of a single layer of each type, through the 2D array API and the raster API (8-bit layer, serial)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.HEAP)
+public class DiscreteCostBenchmark {
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	@Param({"ALTITUDE", "WATER", "HOUSINGDENSITY", "ROADS"})
+	public MapUtil.MapTypes type;
+
+	private SyntheticTerrain terrain;
+	private Map<MapUtil.MapTypes, double[][]> arrayLayers;
+	private Map<MapUtil.MapTypes, Double> weightings;
+	private AnalysisSettings settings;
+
+	@Setup
+	public void setUp() {
+		terrain = SyntheticTerrain.generate(size);
+		arrayLayers = new EnumMap<MapUtil.MapTypes, double[][]>(MapUtil.MapTypes.class);
+		arrayLayers.put(type, terrain.layer(type).toRaster().toArray());
+		weightings = SyntheticTerrain.weightings();
+		settings = new AnalysisSettings();
+	}
+
+	@Benchmark
+	public double[][] generateDiscreteCostMap() {
+		return DiscreteCostAnalysis.generateDiscreteCostMap(arrayLayers, Benchmarks.CELL_SIZE, Benchmarks.ALTITUDE_SCALE, weightings);
+	}
+
+	@Benchmark
+	public Raster generateLayerCostRaster() {
+		return DiscreteCostAnalysis.generateLayerCostRaster(type, terrain.layer(type), Benchmarks.CELL_SIZE, Benchmarks.ALTITUDE_SCALE, settings);
+	}
+}
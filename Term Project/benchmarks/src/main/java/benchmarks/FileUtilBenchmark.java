@@ -0,0 +1,52 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fileUtils.FileUtil;
+
+/**
+ * Conversions between images and maps of the altitude of a synthetic terrain
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {Benchmarks.HEAP, "-Djava.awt.headless=true"})
+public class FileUtilBenchmark {
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	private BufferedImage image;
+	private double[][] map;
+
+	@Setup
+	public void setUp() {
+		SyntheticTerrain terrain = SyntheticTerrain.generate(size);
+		image = FileUtil.gridToImage(terrain.altitude);
+		map = terrain.altitude.toRaster().toArray();
+	}
+
+	@Benchmark
+	public double[][] imageToMap() {
+		return FileUtil.imageToMap(image);
+	}
+
+	@Benchmark
+	public BufferedImage mapToImage() {
+		return FileUtil.mapToImage(map);
+	}
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import UI.CostRenderer;
+import UI.Palette;
+import algorithm.AnalysisSettings;
+import algorithm.DiscreteCostAnalysis;
+import fileUtils.FileUtil;
+
+/**
+ * Writing the colour image of a discrete cost surface in every image format of FileUtil, to a temporary file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {Benchmarks.HEAP, "-Djava.awt.headless=true"})
+public class ImageWriteBenchmark {
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	@Param({"PNG", "FAST_PNG", "RAW"})
+	public FileUtil.ImageFormats format;
+
+	private BufferedImage image;
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		SyntheticTerrain terrain = SyntheticTerrain.generate(size);
+		image = CostRenderer.render(DiscreteCostAnalysis.generateDiscreteCostRaster(terrain.layers(), Benchmarks.CELL_SIZE, Benchmarks.ALTITUDE_SCALE,
+				SyntheticTerrain.weightings(), new AnalysisSettings()), Palette.cost(), 1);
+		file = File.createTempFile("benchmark", "." + FileUtil.imageExtension(format));
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		FileUtil.writeImage(image, file, format);
+		return file.length();
+	}
+}
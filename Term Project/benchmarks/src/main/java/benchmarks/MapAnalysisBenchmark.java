@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import algorithm.AnalysisSettings;
+import algorithm.Grid;
+import algorithm.IntRaster;
+import algorithm.MapAnalysis;
+import algorithm.MapUtil;
+import algorithm.MapUtil.Pair;
+
+/**
+ * Complete analysis of a synthetic terrain (discrete cost, accumulated cost and path) from its top left to its bottom right cell
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.HEAP)
+public class MapAnalysisBenchmark {
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	@Param({"FULL_SURFACE", "POINT_TO_POINT", "PYRAMID"})
+	public MapUtil.RoutingModes routing;
+
+	@Param({"DOUBLE", "FLOAT"})
+	public MapUtil.Precisions precision;
+
+	private Map<MapUtil.MapTypes, Grid> layers;
+	private Map<MapUtil.MapTypes, Double> weightings;
+	private IntRaster source;
+	private Pair<Integer, Integer> start;
+
+	@Setup
+	public void setUp() {
+		SyntheticTerrain terrain = SyntheticTerrain.generate(size);
+		layers = terrain.layers();
+		weightings = SyntheticTerrain.weightings();
+		source = new IntRaster(size, size);
+		source.set(size - 1, size - 1, 1);
+		start = new Pair<Integer, Integer>(0, 0);
+	}
+
+	@Benchmark
+	public MapAnalysis analyze() {
+		// new settings every time, so that no layer costs are cached between analyses
+		AnalysisSettings settings = new AnalysisSettings();
+		settings.routing = routing;
+		settings.precision = precision;
+		return new MapAnalysis(source, start, layers, Benchmarks.CELL_SIZE, Benchmarks.ALTITUDE_SCALE, Benchmarks.COST_DISTANCE, weightings, settings);
+	}
+}
@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import algorithm.AccumulatedCostAnalysis;
+import algorithm.AnalysisSettings;
+import algorithm.DiscreteCostAnalysis;
+import algorithm.IntRaster;
+import algorithm.MapUtil.Pair;
+import algorithm.Raster;
+import algorithm.StationCostMatrix;
+
+/**
+ * Cost matrix of randomly placed stations on the discrete cost raster of a synthetic terrain: with StationCostMatrix (matrix),
+ * and with a full accumulated cost surface per station, one after the other (fullSurfaces)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = Benchmarks.HEAP)
+public class StationCostMatrixBenchmark {
+	@Param({"256", "1024", "4096", "8192"})
+	public int size;
+
+	@Param({"8", "32"})
+	public int stationCount;
+
+	@Param({"1", "4"})
+	public int parallelism;
+
+	private Raster discreteCost;
+	private List<Pair<Integer, Integer>> stations;
+
+	@Setup
+	public void setUp() {
+		SyntheticTerrain terrain = SyntheticTerrain.generate(size);
+		discreteCost = DiscreteCostAnalysis.generateDiscreteCostRaster(terrain.layers(), Benchmarks.CELL_SIZE, Benchmarks.ALTITUDE_SCALE,
+				SyntheticTerrain.weightings(), new AnalysisSettings());
+		Random random = new Random(SyntheticTerrain.SEED);
+		stations = new ArrayList<Pair<Integer, Integer>>();
+		for(int i = 0; i < stationCount; i++) {
+			stations.add(new Pair<Integer, Integer>(random.nextInt(size), random.nextInt(size)));
+		}
+	}
+
+	@Benchmark
+	public StationCostMatrix matrix() {
+		AnalysisSettings settings = new AnalysisSettings();
+		settings.parallelism = parallelism;
+		return new StationCostMatrix(stations, discreteCost, Benchmarks.COST_DISTANCE, false, settings);
+	}
+
+	@Benchmark
+	public double[][] fullSurfaces() {
+		double[][] costs = new double[stationCount][stationCount];
+		IntRaster source = new IntRaster(size, size);
+		for(int j = 0; j < stationCount; j++) {
+			Pair<Integer, Integer> station = stations.get(j);
+			source.set(station.getFirst(), station.getSecond(), 1);
+			Raster accumulated = AccumulatedCostAnalysis.generateAccumulatedCostMap(source, discreteCost, Benchmarks.COST_DISTANCE);
+			source.set(station.getFirst(), station.getSecond(), 0);
+			for(int i = 0; i < stationCount; i++) {
+				costs[i][j] = accumulated.get(stations.get(i).getFirst(), stations.get(i).getSecond());
+			}
+		}
+		return costs;
+	}
+}
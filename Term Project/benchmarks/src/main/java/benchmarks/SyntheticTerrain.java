@@ -0,0 +1,132 @@
+package benchmarks;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import algorithm.ByteLayer;
+import algorithm.Grid;
+import algorithm.MapUtil;
+
+/**
+ * Deterministic square terrains, so the benchmarks need no map images.
+ * The layers are 8-bit as if read by TrainTerrainPanel (roads and housing density already inverted):
+ * rolling hills, lakes in the valleys, a grid of roads and a few towns.
+ */
+public class SyntheticTerrain {
+	// Seed of every terrain, so that runs are comparable
+	public static final long SEED = 42;
+	// Altitudes below this are under water
+	private static final int WATER_LEVEL = 70;
+
+	public final int size;
+	public final ByteLayer altitude;
+	public final ByteLayer water;
+	public final ByteLayer roads;
+	public final ByteLayer housing;
+
+	private SyntheticTerrain(int size) {
+		this.size = size;
+		altitude = new ByteLayer(size, size);
+		water = new ByteLayer(size, size);
+		roads = new ByteLayer(size, size);
+		housing = new ByteLayer(size, size);
+	}
+
+	/**
+	 * @param size number of rows and columns
+	 * @return terrain of size x size cells
+	 */
+	public static SyntheticTerrain generate(int size) {
+		SyntheticTerrain terrain = new SyntheticTerrain(size);
+		Random random = new Random(SEED);
+
+		// hills: a few sine waves of random direction and phase, about 4 to 12 periods across the map at every size
+		int waves = 6;
+		double[] frequencyX = new double[waves];
+		double[] frequencyY = new double[waves];
+		double[] phase = new double[waves];
+		for(int w = 0; w < waves; w++) {
+			double angle = random.nextDouble()*Math.PI;
+			double periods = 4 + random.nextDouble()*8;
+			frequencyX[w] = Math.cos(angle)*periods*2*Math.PI/size;
+			frequencyY[w] = Math.sin(angle)*periods*2*Math.PI/size;
+			phase[w] = random.nextDouble()*2*Math.PI;
+		}
+
+		// towns: gaussian density around a few centers
+		int towns = 5;
+		double[] townX = new double[towns];
+		double[] townY = new double[towns];
+		double[] townRadius = new double[towns];
+		for(int t = 0; t < towns; t++) {
+			townX[t] = random.nextDouble()*size;
+			townY[t] = random.nextDouble()*size;
+			townRadius[t] = size*(0.03 + random.nextDouble()*0.05);
+		}
+
+		// roads every eighth of the map (white background and dark roads in the image, so 255 on roads once inverted)
+		int roadSpacing = Math.max(1, size/8);
+
+		for(int y = 0; y < size; y++) {
+			for(int x = 0; x < size; x++) {
+				double height = 0;
+				for(int w = 0; w < waves; w++) {
+					height += Math.sin(x*frequencyX[w] + y*frequencyY[w] + phase[w]);
+				}
+				int altitude = clamp(128 + height*127/waves*2);
+				terrain.altitude.set(x, y, altitude);
+				terrain.water.set(x, y, altitude < WATER_LEVEL ? clamp((WATER_LEVEL - altitude)*3) : 0);
+				terrain.roads.set(x, y, x % roadSpacing == 0 || y % roadSpacing == 0 ? 255 : 0);
+				double density = 0;
+				for(int t = 0; t < towns; t++) {
+					double dx = (x - townX[t])/townRadius[t];
+					double dy = (y - townY[t])/townRadius[t];
+					density += Math.exp(-(dx*dx + dy*dy));
+				}
+				terrain.housing.set(x, y, clamp(density*255));
+			}
+		}
+		return terrain;
+	}
+
+	/**
+	 * @return the four layers mapped by their type
+	 */
+	public Map<MapUtil.MapTypes, Grid> layers() {
+		Map<MapUtil.MapTypes, Grid> layers = new EnumMap<MapUtil.MapTypes, Grid>(MapUtil.MapTypes.class);
+		layers.put(MapUtil.MapTypes.ALTITUDE, altitude);
+		layers.put(MapUtil.MapTypes.WATER, water);
+		layers.put(MapUtil.MapTypes.ROADS, roads);
+		layers.put(MapUtil.MapTypes.HOUSINGDENSITY, housing);
+		return layers;
+	}
+
+	/**
+	 * @param type map type
+	 * @return layer of the type
+	 */
+	public ByteLayer layer(MapUtil.MapTypes type) {
+		switch(type) {
+		case ALTITUDE: return altitude;
+		case WATER: return water;
+		case ROADS: return roads;
+		default: return housing;
+		}
+	}
+
+	/**
+	 * @return weighting of 1 for every map type
+	 */
+	public static Map<MapUtil.MapTypes, Double> weightings() {
+		Map<MapUtil.MapTypes, Double> weightings = new EnumMap<MapUtil.MapTypes, Double>(MapUtil.MapTypes.class);
+		for(MapUtil.MapTypes type : MapUtil.MapTypes.values()) {
+			weightings.put(type, 1.0);
+		}
+		return weightings;
+	}
+
+	private static int clamp(double value) {
+		return (int) Math.max(0, Math.min(255, value));
+	}
+}
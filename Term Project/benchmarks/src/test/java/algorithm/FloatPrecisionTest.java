@@ -0,0 +1,188 @@
+package algorithm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import algorithm.MapUtil.Pair;
+import benchmarks.Benchmarks;
+import benchmarks.SyntheticTerrain;
+
+/**
+ * Single precision analyses against double precision ones on a synthetic terrain, within the error bounds documented at MapUtil.Precisions,
+ * and POINT_TO_POINT routing against FULL_SURFACE routing in both precisions: the same least cost of the start and paths of that cost
+ */
+public class FloatPrecisionTest {
+	private static final int SIZE = 256;
+	// 2^-24, the relative rounding error of a float
+	private static final double UNIT_ROUNDOFF = Math.scalb(1.0, -24);
+	// 2^-53, the relative rounding error of a double
+	private static final double DOUBLE_ROUNDOFF = Math.scalb(1.0, -53);
+
+	private static Map<MapUtil.MapTypes, Grid> layers;
+	private static Map<MapUtil.MapTypes, Double> weightings;
+	private static IntRaster source;
+	private static Pair<Integer, Integer> start;
+
+	@BeforeClass
+	public static void setUp() {
+		SyntheticTerrain terrain = SyntheticTerrain.generate(SIZE);
+		layers = terrain.layers();
+		weightings = SyntheticTerrain.weightings();
+		source = new IntRaster(SIZE, SIZE);
+		source.set(SIZE - 1, SIZE - 1, 1);
+		start = new Pair<Integer, Integer>(0, 0);
+	}
+
+	@Test
+	public void discreteCostIsWithinOneRoundingOfDouble() {
+		MapAnalysis doubleAnalysis = analyze(MapUtil.Precisions.DOUBLE, MapUtil.RoutingModes.FULL_SURFACE);
+		MapAnalysis floatAnalysis = analyze(MapUtil.Precisions.FLOAT, MapUtil.RoutingModes.FULL_SURFACE);
+		assertTrue(floatAnalysis.discreteCost instanceof FloatRaster);
+
+		for(int y = 0; y < SIZE; y++) {
+			for(int x = 0; x < SIZE; x++) {
+				double expected = doubleAnalysis.discreteCost.get(x, y);
+				double actual = floatAnalysis.discreteCost.get(x, y);
+				assertTrue("discrete cost at " + x + ", " + y + ": " + actual + " for " + expected,
+						Math.abs(actual - expected) <= UNIT_ROUNDOFF*Math.abs(expected));
+			}
+		}
+	}
+
+	@Test
+	public void accumulatedCostIsWithinBoundOfDouble() {
+		MapAnalysis doubleAnalysis = analyze(MapUtil.Precisions.DOUBLE, MapUtil.RoutingModes.FULL_SURFACE);
+		MapAnalysis floatAnalysis = analyze(MapUtil.Precisions.FLOAT, MapUtil.RoutingModes.FULL_SURFACE);
+		assertTrue(floatAnalysis.accumulatedCost instanceof FloatRaster);
+
+		// the two surfaces may reach a cell through different paths, so the bound takes the longer of the two
+		int[] doubleSteps = steps(doubleAnalysis.predecessors);
+		int[] floatSteps = steps(floatAnalysis.predecessors);
+		int reached = 0;
+		for(int y = 0; y < SIZE; y++) {
+			for(int x = 0; x < SIZE; x++) {
+				double expected = doubleAnalysis.accumulatedCost.get(x, y);
+				double actual = floatAnalysis.accumulatedCost.get(x, y);
+				if(expected == Double.POSITIVE_INFINITY) {
+					assertEquals(Double.POSITIVE_INFINITY, actual, 0);
+					continue;
+				}
+				int k = Math.max(doubleSteps[y*SIZE + x], floatSteps[y*SIZE + x]);
+				assertTrue("accumulated cost at " + x + ", " + y + " (" + k + " steps): " + actual + " for " + expected,
+						Math.abs(actual - expected) <= (k + 1)*UNIT_ROUNDOFF*expected);
+				reached++;
+			}
+		}
+		assertEquals(SIZE*SIZE, reached);
+	}
+
+	@Test
+	public void pointToPointMatchesFullSurfaceInDouble() {
+		MapAnalysis full = analyze(MapUtil.Precisions.DOUBLE, MapUtil.RoutingModes.FULL_SURFACE);
+		MapAnalysis pointToPoint = analyze(MapUtil.Precisions.DOUBLE, MapUtil.RoutingModes.POINT_TO_POINT);
+		assertEquivalentRoutes(full.discreteCost, source, 0, 0, full.path, full.accumulatedCost.get(0, 0),
+				pointToPoint.path, pointToPoint.accumulatedCost.get(0, 0), DOUBLE_ROUNDOFF);
+	}
+
+	@Test
+	public void pointToPointMatchesFullSurfaceInFloat() {
+		MapAnalysis full = analyze(MapUtil.Precisions.FLOAT, MapUtil.RoutingModes.FULL_SURFACE);
+		MapAnalysis pointToPoint = analyze(MapUtil.Precisions.FLOAT, MapUtil.RoutingModes.POINT_TO_POINT);
+		assertEquivalentRoutes(full.discreteCost, source, 0, 0, full.path, full.accumulatedCost.get(0, 0),
+				pointToPoint.path, pointToPoint.accumulatedCost.get(0, 0), UNIT_ROUNDOFF);
+	}
+
+	/**
+	 * Uniform terrain is full of equally cheap paths, which the two searches may break differently
+	 */
+	@Test
+	public void pointToPointMatchesFullSurfaceOnFlatTerrain() {
+		Random random = new Random(SyntheticTerrain.SEED);
+		for(int run = 0; run < 40; run++) {
+			int width = 8 + random.nextInt(89);
+			int height = 8 + random.nextInt(89);
+			Raster discrete = new Raster(width, height);
+			for(int y = 0; y < height; y++) {
+				for(int x = 0; x < width; x++) {
+					discrete.set(x, y, 1);
+				}
+			}
+			IntRaster flatSource = new IntRaster(width, height);
+			flatSource.set(random.nextInt(width), random.nextInt(height), 1);
+			int startX = random.nextInt(width);
+			int startY = random.nextInt(height);
+
+			ByteRaster fullPredecessors = new ByteRaster(width, height, MapUtil.NO_PREDECESSOR);
+			ByteRaster pointPredecessors = new ByteRaster(width, height, MapUtil.NO_PREDECESSOR);
+			Raster full = AccumulatedCostAnalysis.generateAccumulatedCostMap(flatSource, discrete, Benchmarks.COST_DISTANCE, new AnalysisSettings(), fullPredecessors);
+			Raster pointToPoint = AccumulatedCostAnalysis.generatePointToPointCostMap(flatSource, discrete, Benchmarks.COST_DISTANCE, startX, startY, pointPredecessors);
+			assertEquivalentRoutes(discrete, flatSource, startX, startY, CellPath.fromPredecessors(fullPredecessors, startX, startY), full.get(startX, startY),
+					CellPath.fromPredecessors(pointPredecessors, startX, startY), pointToPoint.get(startX, startY), DOUBLE_ROUNDOFF);
+
+			FloatRaster floatDiscrete = FloatRaster.fromRaster(discrete);
+			FloatRaster floatFull = AccumulatedCostAnalysis.generateAccumulatedCostMap(flatSource, floatDiscrete, Benchmarks.COST_DISTANCE, fullPredecessors, null);
+			FloatRaster floatPointToPoint = AccumulatedCostAnalysis.generatePointToPointCostMap(flatSource, floatDiscrete, Benchmarks.COST_DISTANCE, startX, startY,
+					pointPredecessors, null);
+			assertEquivalentRoutes(floatDiscrete, flatSource, startX, startY, CellPath.fromPredecessors(fullPredecessors, startX, startY), floatFull.get(startX, startY),
+					CellPath.fromPredecessors(pointPredecessors, startX, startY), floatPointToPoint.get(startX, startY), UNIT_ROUNDOFF);
+		}
+	}
+
+	private static MapAnalysis analyze(MapUtil.Precisions precision, MapUtil.RoutingModes routing) {
+		AnalysisSettings settings = new AnalysisSettings();
+		settings.precision = precision;
+		settings.routing = routing;
+		return new MapAnalysis(source, start, layers, Benchmarks.CELL_SIZE, Benchmarks.ALTITUDE_SCALE, Benchmarks.COST_DISTANCE, weightings, settings);
+	}
+
+	/**
+	 * Asserts that both searches found the least cost of the start, within the rounding of a path of their length, and that both paths lead
+	 * from the start to a source one neighbor at a time and cost what their search found (equally cheap paths may take different cells)
+	 * @param roundoff relative rounding error of the precision of the surfaces
+	 */
+	private static void assertEquivalentRoutes(Grid discrete, IntRaster source, int startX, int startY, CellPath fullPath, double fullCost,
+			CellPath pointToPointPath, double pointToPointCost, double roundoff) {
+		int k = Math.max(fullPath.size(), pointToPointPath.size()) - 1;
+		double tolerance = 2*(k + 1)*roundoff*fullCost;
+		assertEquals("cost of the start", fullCost, pointToPointCost, tolerance);
+		assertEquals("walked cost of the full surface path", fullCost, walkedCost(discrete, source, startX, startY, fullPath), tolerance);
+		assertEquals("walked cost of the point to point path", pointToPointCost, walkedCost(discrete, source, startX, startY, pointToPointPath), tolerance);
+	}
+
+	/**
+	 * @return cost of following the path: the discrete cost of every cell but the source plus the distance of every step
+	 */
+	private static double walkedCost(Grid discrete, IntRaster source, int startX, int startY, CellPath path) {
+		assertEquals("x of the start", startX, path.getX(0));
+		assertEquals("y of the start", startY, path.getY(0));
+		int last = path.size() - 1;
+		assertTrue("path ends at a source", source.get(path.getX(last), path.getY(last)) != 0);
+		double cost = 0;
+		for(int i = 0; i < last; i++) {
+			int dx = Math.abs(path.getX(i + 1) - path.getX(i));
+			int dy = Math.abs(path.getY(i + 1) - path.getY(i));
+			assertTrue("step " + i + " is to a neighbor", dx <= 1 && dy <= 1 && dx + dy > 0);
+			cost += discrete.get(path.getX(i), path.getY(i)) + (dx + dy == 2 ? Math.sqrt(2) : 1)*Benchmarks.COST_DISTANCE;
+		}
+		return cost;
+	}
+
+	/**
+	 * @return number of steps from every cell (y * width + x) to its source along the predecessors
+	 */
+	private static int[] steps(ByteRaster predecessors) {
+		int[] steps = new int[SIZE*SIZE];
+		for(int y = 0; y < SIZE; y++) {
+			for(int x = 0; x < SIZE; x++) {
+				steps[y*SIZE + x] = CellPath.fromPredecessors(predecessors, x, y).size() - 1;
+			}
+		}
+		return steps;
+	}
+}
@@ -0,0 +1,183 @@
+package UI;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+
+import algorithm.FloatRaster;
+import algorithm.Grid;
+import algorithm.Raster;
+import algorithm.RowBands;
+
+/**
+ * Renders cost surfaces to images through a Palette. Every finite value is mapped linearly from a range of values onto the entries of the
+ * palette and its colour written straight into the int ARGB pixels of the image; cells without a finite value get the no data colour.
+ * Scanning for the range and filling the image run in parallel row bands.
+ */
+public class CostRenderer {
+
+	/**
+	 * @param grid cost surface
+	 * @param parallelism number of threads (1 runs serially on the calling thread)
+	 * @return {lowest, highest} finite value of grid, or {POSITIVE_INFINITY, NEGATIVE_INFINITY} if it has none
+	 * @throws IllegalArgumentException if grid is null
+	 */
+	public static double[] range(Grid grid, int parallelism) {
+		if(grid == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		ForkJoinPool pool = RowBands.newPool(parallelism);
+		try {
+			return range(grid, pool);
+		} finally {
+			if(pool != null) pool.shutdown();
+		}
+	}
+
+	private static double[] range(final Grid grid, ForkJoinPool pool) {
+		final int width = grid.getWidth();
+		int height = grid.getHeight();
+		// Range of every row, reduced once the bands are done so that no band waits for another
+		final double[] rowLowest = new double[height];
+		final double[] rowHighest = new double[height];
+		RowBands.run(pool, height, new RowBands.Kernel() {
+			@Override
+			public void run(int fromY, int toY) {
+				for(int y = fromY; y < toY; y++) {
+					double lowest = Double.POSITIVE_INFINITY;
+					double highest = Double.NEGATIVE_INFINITY;
+					if(grid instanceof Raster) {
+						Raster raster = (Raster) grid;
+						double[] data = raster.getData();
+						for(int i = raster.index(0, y), end = i + width; i < end; i++) {
+							double value = data[i];
+							// false for NaN and infinities (value - value is NaN for them)
+							if(value - value == 0) {
+								if(value < lowest) lowest = value;
+								if(value > highest) highest = value;
+							}
+						}
+					} else if(grid instanceof FloatRaster) {
+						FloatRaster raster = (FloatRaster) grid;
+						float[] data = raster.getData();
+						for(int i = raster.index(0, y), end = i + width; i < end; i++) {
+							float value = data[i];
+							if(value - value == 0) {
+								if(value < lowest) lowest = value;
+								if(value > highest) highest = value;
+							}
+						}
+					} else {
+						for(int x = 0; x < width; x++) {
+							double value = grid.get(x, y);
+							if(value - value == 0) {
+								if(value < lowest) lowest = value;
+								if(value > highest) highest = value;
+							}
+						}
+					}
+					rowLowest[y] = lowest;
+					rowHighest[y] = highest;
+				}
+			}
+		});
+
+		double[] range = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		for(int y = 0; y < height; y++) {
+			range[0] = Math.min(range[0], rowLowest[y]);
+			range[1] = Math.max(range[1], rowHighest[y]);
+		}
+		return range;
+	}
+
+	/**
+	 * Renders a cost surface from 0 (or its lowest value, if negative) to its highest finite value (at least 1), the range the panel
+	 * has always shown costs in
+	 * @param grid cost surface
+	 * @param palette colours of the image
+	 * @param parallelism number of threads (1 runs serially on the calling thread)
+	 * @return image of the surface
+	 * @throws IllegalArgumentException if an argument is null
+	 */
+	public static BufferedImage render(Grid grid, Palette palette, int parallelism) {
+		if(grid == null || palette == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		// one pool for both the range scan and the fill
+		ForkJoinPool pool = RowBands.newPool(parallelism);
+		try {
+			double[] range = range(grid, pool);
+			return render(grid, palette, Math.min(0, range[0]), Math.max(1, range[1]), pool);
+		} finally {
+			if(pool != null) pool.shutdown();
+		}
+	}
+
+	/**
+	 * @param grid cost surface
+	 * @param palette colours of the image
+	 * @param low value of the first colour of the palette (lower values get it too)
+	 * @param high value of the last colour of the palette (higher values get it too)
+	 * @param parallelism number of threads (1 runs serially on the calling thread)
+	 * @return image of the surface, TYPE_INT_ARGB if the palette has transparent colours, otherwise TYPE_INT_RGB
+	 * @throws IllegalArgumentException if an argument is null, or low and high are not finite with low < high
+	 */
+	public static BufferedImage render(Grid grid, Palette palette, double low, double high, int parallelism) {
+		if(grid == null || palette == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(!(low < high) || Double.isInfinite(low) || Double.isInfinite(high)) {
+			throw new IllegalArgumentException("Illegal range.");
+		}
+		ForkJoinPool pool = RowBands.newPool(parallelism);
+		try {
+			return render(grid, palette, low, high, pool);
+		} finally {
+			if(pool != null) pool.shutdown();
+		}
+	}
+
+	private static BufferedImage render(final Grid grid, Palette palette, final double low, double high, ForkJoinPool pool) {
+		final int width = grid.getWidth();
+		int height = grid.getHeight();
+		BufferedImage image = new BufferedImage(width, height, palette.hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		final int[] table = palette.table();
+		final int noDataColor = palette.getNoDataColor();
+		final double span = high - low;
+
+		RowBands.run(pool, height, new RowBands.Kernel() {
+			@Override
+			public void run(int fromY, int toY) {
+				for(int y = fromY; y < toY; y++) {
+					int pixel = y * width;
+					if(grid instanceof Raster) {
+						Raster raster = (Raster) grid;
+						double[] data = raster.getData();
+						for(int i = raster.index(0, y), end = i + width; i < end; i++) {
+							pixels[pixel++] = color(data[i], low, span, table, noDataColor);
+						}
+					} else if(grid instanceof FloatRaster) {
+						FloatRaster raster = (FloatRaster) grid;
+						float[] data = raster.getData();
+						for(int i = raster.index(0, y), end = i + width; i < end; i++) {
+							pixels[pixel++] = color(data[i], low, span, table, noDataColor);
+						}
+					} else {
+						for(int x = 0; x < width; x++) {
+							pixels[pixel++] = color(grid.get(x, y), low, span, table, noDataColor);
+						}
+					}
+				}
+			}
+		});
+
+		return image;
+	}
+
+	private static int color(double value, double low, double span, int[] table, int noDataColor) {
+		if(!(value - value == 0)) return noDataColor;
+		int index = (int)((value - low) * (Palette.SIZE - 1) / span);
+		return table[index < 0 ? 0 : index >= Palette.SIZE ? Palette.SIZE - 1 : index];
+	}
+}
@@ -0,0 +1,43 @@
+package UI;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import algorithm.FlowField;
+
+/**
+ * Draws a flow field as vectors (a small circle at each sample and a line to the end of its flow vector) on a white image
+ */
+public class FlowFieldRenderer {
+
+	/**
+	 * @param field flow field to draw
+	 * @param width width of the image (width of the accumulated cost surface)
+	 * @param height height of the image (height of the accumulated cost surface)
+	 * @return resulting BufferedImage
+	 */
+	public static BufferedImage render(FlowField field, int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D graphics = image.createGraphics();
+		try {
+			//fill white
+			graphics.setPaint(Color.WHITE);
+			graphics.fillRect(0, 0, width, height);
+			
+			//draw vectors
+			graphics.setPaint(Color.BLACK);
+			for(int row = 0; row < field.getRows(); row++) {
+				int y = field.getSampleY(row);
+				for(int column = 0; column < field.getColumns(); column++) {
+					int x = field.getSampleX(column);
+					graphics.drawOval(x - 1, y - 1, 2, 2);
+					graphics.drawLine(x, y, x + field.getOffsetX(column, row), y + field.getOffsetY(column, row));
+				}
+			}
+		} finally {
+			graphics.dispose();
+		}
+		return image;
+	}
+}
@@ -0,0 +1,186 @@
+package UI;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mipmap pyramid of an image, for drawing it quickly at any scale. Level 0 is the image itself and each further level is half the size
+ * of the previous one, averaging blocks of 2x2 pixels (or, for sparse overlays, keeping the most opaque pixel of each block so that thin
+ * lines do not fade away). Levels are built the first time they are drawn, and only the tiles of a level that are inside the clip are drawn.
+ */
+public class ImagePyramid {
+	// Width and height in pixels of the tiles a level is drawn in
+	static final int TILE_SIZE = 256;
+	// Number of pixels converted at a time when halving a level
+	private static final int STRIP_PIXELS = 1 << 20;
+
+	private final List<BufferedImage> levels = new ArrayList<BufferedImage>();
+	private final boolean sparse;
+
+	/**
+	 * @param image image at full resolution
+	 * @param sparse true to keep the most opaque pixel of each block when halving instead of averaging (for overlays of thin lines)
+	 * @throws IllegalArgumentException if image is null
+	 */
+	public ImagePyramid(BufferedImage image, boolean sparse) {
+		if(image == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		levels.add(image);
+		this.sparse = sparse;
+	}
+
+	/**
+	 * @return image at full resolution (level 0)
+	 */
+	public BufferedImage getImage() { return levels.get(0); }
+	public int getWidth() { return levels.get(0).getWidth(); }
+	public int getHeight() { return levels.get(0).getHeight(); }
+
+	/**
+	 * @param scale screen pixels per image pixel
+	 * @return smallest level with at least one pixel per screen pixel, so that drawing it shrinks it by less than half
+	 */
+	static int levelFor(double scale) {
+		int level = 0;
+		while(scale * (2L << level) <= 1 && level < 30) {
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Draws the tiles of the image that are inside the clip of graphics, from the level nearest to the scale
+	 * @param graphics graphics to draw on
+	 * @param scale screen pixels per image pixel
+	 * @param originX screen x of the left edge of the image
+	 * @param originY screen y of the top edge of the image
+	 */
+	public synchronized void draw(Graphics2D graphics, double scale, double originX, double originY) {
+		int index = level(levelFor(scale));
+		BufferedImage level = levels.get(index);
+		// A pixel of level index covers 2^index pixels of the image (the last row and column partly, for odd dimensions)
+		double levelScale = scale * (1L << index);
+		int width = level.getWidth();
+		int height = level.getHeight();
+		// Range of level pixels inside the clip
+		int left = 0, top = 0, right = width, bottom = height;
+		Rectangle clip = graphics.getClipBounds();
+		if(clip != null) {
+			left = Math.max(0, (int) Math.floor((clip.x - originX) / levelScale));
+			top = Math.max(0, (int) Math.floor((clip.y - originY) / levelScale));
+			right = Math.min(width, (int) Math.ceil((clip.x + clip.width - originX) / levelScale));
+			bottom = Math.min(height, (int) Math.ceil((clip.y + clip.height - originY) / levelScale));
+		}
+		if(left >= right || top >= bottom) return;
+
+		Graphics2D tiles = (Graphics2D) graphics.create();
+		try {
+			// Smooth when shrinking, sharp cells when enlarging (and sparse lines always sharp, interpolating them with transparent pixels fades them)
+			tiles.setRenderingHint(RenderingHints.KEY_INTERPOLATION, levelScale < 1 && !sparse
+					? RenderingHints.VALUE_INTERPOLATION_BILINEAR : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+			for(int tileY = top / TILE_SIZE * TILE_SIZE; tileY < bottom; tileY += TILE_SIZE) {
+				int tileBottom = Math.min(tileY + TILE_SIZE, height);
+				int screenTop = screen(originY, tileY, levelScale);
+				int screenBottom = screen(originY, tileBottom, levelScale);
+				for(int tileX = left / TILE_SIZE * TILE_SIZE; tileX < right; tileX += TILE_SIZE) {
+					int tileRight = Math.min(tileX + TILE_SIZE, width);
+					// Neighbouring tiles share their screen edges, so there are no seams
+					tiles.drawImage(level, screen(originX, tileX, levelScale), screenTop, screen(originX, tileRight, levelScale), screenBottom,
+							tileX, tileY, tileRight, tileBottom, null);
+				}
+			}
+		} finally {
+			tiles.dispose();
+		}
+	}
+
+	private static int screen(double origin, int pixel, double scale) {
+		return (int) Math.round(origin + pixel * scale);
+	}
+
+	/**
+	 * @param index level wanted
+	 * @return index, or the index of the last level (one pixel wide or high) if index is beyond it, after building the levels up to it
+	 */
+	private int level(int index) {
+		while(levels.size() <= index) {
+			BufferedImage last = levels.get(levels.size() - 1);
+			if(last.getWidth() == 1 || last.getHeight() == 1) break;
+			levels.add(halve(last));
+		}
+		return Math.min(index, levels.size() - 1);
+	}
+
+	/**
+	 * @param image image to halve
+	 * @return image of half the width and height (rounded up), each pixel reducing a block of 2x2 pixels of image
+	 */
+	private BufferedImage halve(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int halfWidth = (width + 1) / 2;
+		BufferedImage half = new BufferedImage(halfWidth, (height + 1) / 2,
+				image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		int[] halfPixels = ((DataBufferInt) half.getRaster().getDataBuffer()).getData();
+		// Java2D converts image to ARGB a strip of rows at a time, much faster than getRGB (an even number of rows, so blocks are not split)
+		int stripHeight = Math.min(height + 1, Math.max(2, STRIP_PIXELS / width)) & ~1;
+		BufferedImage strip = new BufferedImage(width, stripHeight, BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+		Graphics2D graphics = strip.createGraphics();
+		try {
+			graphics.setComposite(AlphaComposite.Src);
+			for(int stripTop = 0; stripTop < height; stripTop += stripHeight) {
+				graphics.drawImage(image, 0, -stripTop, null);
+				int rows = Math.min(stripHeight, height - stripTop);
+				for(int row = 0; row < rows; row += 2) {
+					// Odd dimensions repeat the last row and column
+					int upper = row * width;
+					int lower = Math.min(row + 1, rows - 1) * width;
+					int out = (stripTop + row) / 2 * halfWidth;
+					for(int x = 0; x < halfWidth; x++) {
+						int left = 2 * x;
+						int right = Math.min(left + 1, width - 1);
+						halfPixels[out + x] = sparse ? mostOpaque(pixels[upper + left], pixels[upper + right], pixels[lower + left], pixels[lower + right])
+								: average(pixels[upper + left], pixels[upper + right], pixels[lower + left], pixels[lower + right]);
+					}
+				}
+			}
+		} finally {
+			graphics.dispose();
+		}
+		return half;
+	}
+
+	/**
+	 * @return ARGB average of four ARGB pixels, with colours weighted by their alpha so that transparent pixels do not darken the edges
+	 */
+	private static int average(int a, int b, int c, int d) {
+		int alpha = (a >>> 24) + (b >>> 24) + (c >>> 24) + (d >>> 24);
+		if(alpha == 0) return 0;
+		int argb = (alpha + 2) / 4 << 24;
+		for(int shift = 0; shift < 24; shift += 8) {
+			int sum = (a >> shift & 255) * (a >>> 24) + (b >> shift & 255) * (b >>> 24)
+					+ (c >> shift & 255) * (c >>> 24) + (d >> shift & 255) * (d >>> 24);
+			argb |= (sum + alpha / 2) / alpha << shift;
+		}
+		return argb;
+	}
+
+	/**
+	 * @return the first of four ARGB pixels with the highest alpha
+	 */
+	private static int mostOpaque(int a, int b, int c, int d) {
+		int most = a;
+		if(b >>> 24 > most >>> 24) most = b;
+		if(c >>> 24 > most >>> 24) most = c;
+		if(d >>> 24 > most >>> 24) most = d;
+		return most;
+	}
+}
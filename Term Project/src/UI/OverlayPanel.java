@@ -1,36 +1,175 @@
 package UI;
 
 import java.awt.Graphics;
-import java.awt.Image;
+import java.awt.Graphics2D;
 import java.awt.LayoutManager;
+import java.awt.Point;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
 
+/**
+ * Panel that draws a background image with an optional overlay (such as a path) on top of it, scaled to fit the panel.
+ * The mouse wheel zooms around the cursor, dragging pans and a double click shows the whole image again.
+ * Images are drawn from mipmap pyramids (see ImagePyramid), so painting only draws the visible tiles of the nearest level and
+ * resizing the panel never rescales whole images. A panel builds the levels it needs when it is first painted, so hidden tabs cost nothing.
+ */
 public class OverlayPanel extends JPanel {
 	private static final long serialVersionUID = 1L;
-	
-	private Image background = null;
-	private Image overlay = null;
-	
+
+	// Largest zoom, in screen pixels per image pixel (unless the fitted view is already larger)
+	private static final double MAX_SCALE = 32;
+	// Zoom factor of one notch of the mouse wheel
+	private static final double WHEEL_ZOOM = 1.25;
+
+	private ImagePyramid background = null;
+	private ImagePyramid overlay = null;
+
+	// Zoom relative to the scale that fits the image in the panel (1 shows the whole image)
+	private double zoom = 1;
+	// Image coordinates of the top left corner of the panel
+	private double viewX = 0, viewY = 0;
+	// Last mouse position of a drag
+	private Point dragPoint;
+
 	public OverlayPanel(LayoutManager manager) {
 		super(manager);
+		MouseAdapter mouse = new MouseAdapter() {
+			@Override
+			public void mousePressed(MouseEvent e) {
+				dragPoint = e.getPoint();
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				if(dragPoint == null) return;
+				double scale = scale();
+				if(scale > 0) {
+					setView(zoom, viewX - (e.getX() - dragPoint.x) / scale, viewY - (e.getY() - dragPoint.y) / scale);
+				}
+				dragPoint = e.getPoint();
+			}
+
+			@Override
+			public void mouseReleased(MouseEvent e) {
+				dragPoint = null;
+			}
+
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if(e.getClickCount() == 2) resetView();
+			}
+
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				double scale = scale();
+				if(scale <= 0) return;
+				// Keep the image point under the cursor in place
+				double imageX = viewX + e.getX() / scale;
+				double imageY = viewY + e.getY() / scale;
+				double newZoom = Math.max(1, Math.min(zoom * Math.pow(WHEEL_ZOOM, -e.getPreciseWheelRotation()), maxZoom()));
+				double newScale = scale * newZoom / zoom;
+				setView(newZoom, imageX - e.getX() / newScale, imageY - e.getY() / newScale);
+			}
+		};
+		addMouseListener(mouse);
+		addMouseMotionListener(mouse);
+		addMouseWheelListener(mouse);
 	}
-	
-	public void setBackgroundImage(Image background) {
-		this.background = background;
+
+	/**
+	 * @param background image to draw, or null. Its mipmaps are kept while the same image is set again.
+	 */
+	public void setBackgroundImage(BufferedImage background) {
+		this.background = pyramid(this.background, background);
 	}
-	
-	public void setOverlayImage(Image overlay) {
+
+	/**
+	 * @param overlay mipmaps of the image drawn over the background (see ImagePyramid sparse), or null.
+	 * Panels can share them, so that they are built only once.
+	 */
+	public void setOverlay(ImagePyramid overlay) {
 		this.overlay = overlay;
 	}
-	
+
+	/**
+	 * Shows the same part of the image as another panel (for switching between layers of the same map)
+	 * @param other panel to copy the zoom and position from
+	 */
+	public void copyView(OverlayPanel other) {
+		setView(other.zoom, other.viewX, other.viewY);
+	}
+
+	/**
+	 * Shows the whole image
+	 */
+	public void resetView() {
+		setView(1, 0, 0);
+	}
+
 	@Override
 	public void paintComponent(Graphics g) {
 		super.paintComponent(g);
+		double scale = scale();
+		if(scale <= 0) return;
+		clampView(scale);
+		Graphics2D graphics = (Graphics2D) g;
 		if (background != null)
-			g.drawImage(background, 0, 0, this);
+			background.draw(graphics, scale, -viewX * scale, -viewY * scale);
 		if (overlay != null)
-			g.drawImage(overlay, 0, 0, this);
+			overlay.draw(graphics, scale, -viewX * scale, -viewY * scale);
 	}
-	
+
+	private static ImagePyramid pyramid(ImagePyramid current, BufferedImage image) {
+		if(image == null) return null;
+		if(current != null && current.getImage() == image) return current;
+		return new ImagePyramid(image, false);
+	}
+
+	/**
+	 * @return the image that sets the extent of the view (the background, or the overlay when there is no background), or null
+	 */
+	private ImagePyramid extent() {
+		return background != null ? background : overlay;
+	}
+
+	/**
+	 * @return screen pixels per image pixel, or 0 if there is nothing to draw
+	 */
+	private double scale() {
+		ImagePyramid extent = extent();
+		if(extent == null || getWidth() <= 0 || getHeight() <= 0) return 0;
+		return fitScale(extent) * zoom;
+	}
+
+	private double fitScale(ImagePyramid extent) {
+		return Math.min((double) getWidth() / extent.getWidth(), (double) getHeight() / extent.getHeight());
+	}
+
+	private double maxZoom() {
+		ImagePyramid extent = extent();
+		return extent == null ? 1 : Math.max(1, MAX_SCALE / fitScale(extent));
+	}
+
+	private void setView(double zoom, double viewX, double viewY) {
+		this.zoom = zoom;
+		this.viewX = viewX;
+		this.viewY = viewY;
+		double scale = scale();
+		if(scale > 0) clampView(scale);
+		repaint();
+	}
+
+	/**
+	 * Keeps the view inside the image: an image smaller than the panel stays at the top left corner
+	 */
+	private void clampView(double scale) {
+		ImagePyramid extent = extent();
+		viewX = Math.max(0, Math.min(viewX, extent.getWidth() - getWidth() / scale));
+		viewY = Math.max(0, Math.min(viewY, extent.getHeight() - getHeight() / scale));
+	}
+
 }
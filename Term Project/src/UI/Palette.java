@@ -0,0 +1,106 @@
+package UI;
+
+import java.awt.Color;
+
+/**
+ * Colours of a rendered cost surface (see CostRenderer): a lookup table of 256 ARGB colours from the lowest value (entry 0) to the highest
+ * (entry 255), and the colour of cells without a finite value (such as the cells a partial accumulated cost surface did not reach).
+ */
+public class Palette {
+	// Number of colours of the lookup table
+	public static final int SIZE = 256;
+
+	private final int[] colors;
+	private final int noDataColor;
+
+	/**
+	 * @param colors SIZE ARGB colours, from the lowest value to the highest (copied)
+	 * @param noDataColor ARGB colour of cells without a finite value
+	 * @throws IllegalArgumentException if colors is null or does not hold SIZE colours
+	 */
+	public Palette(int[] colors, int noDataColor) {
+		if(colors == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(colors.length != SIZE) {
+			throw new IllegalArgumentException("A palette needs " + SIZE + " colors.");
+		}
+		this.colors = colors.clone();
+		this.noDataColor = noDataColor;
+	}
+
+	/**
+	 * @param index entry of the lookup table, 0 to SIZE - 1
+	 * @return ARGB colour of the entry
+	 */
+	public int getColor(int index) { return colors[index]; }
+	public int getNoDataColor() { return noDataColor; }
+
+	/**
+	 * @return the lookup table (shared, not copied, for the renderer)
+	 */
+	int[] table() { return colors; }
+
+	/**
+	 * @return true if a colour of the palette is not fully opaque
+	 */
+	public boolean hasAlpha() {
+		if(noDataColor >>> 24 != 255) return true;
+		for(int color : colors) {
+			if(color >>> 24 != 255) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the palette cost surfaces have always been shown in: low costs green, medium yellow and high red. Cells without a cost are transparent.
+	 */
+	public static Palette cost() {
+		int[] colors = new int[SIZE];
+		for(int i = 0; i < SIZE; i++) {
+			colors[i] = new Color(Math.min(255, (int)(255*(i/127.0))), Math.min(255, 255 - (int)(255*((i - 128)/128.0))), 0).getRGB();
+		}
+		return new Palette(colors, 0);
+	}
+
+	/**
+	 * @return low values black and high values white. Cells without a value are transparent.
+	 */
+	public static Palette grayscale() {
+		int[] colors = new int[SIZE];
+		for(int i = 0; i < SIZE; i++) {
+			colors[i] = 255 << 24 | i << 16 | i << 8 | i;
+		}
+		return new Palette(colors, 0);
+	}
+
+	/**
+	 * @param noData colour of cells without a finite value
+	 * @param stops colours at evenly spaced values from the lowest to the highest, at least two, blended linearly in between
+	 * @return palette of the gradient
+	 * @throws IllegalArgumentException if an argument is null or there are fewer than two stops
+	 */
+	public static Palette gradient(Color noData, Color... stops) {
+		if(noData == null || stops == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(stops.length < 2) {
+			throw new IllegalArgumentException("A gradient needs at least two colors.");
+		}
+		int[] colors = new int[SIZE];
+		for(int i = 0; i < SIZE; i++) {
+			double position = i * (stops.length - 1) / (SIZE - 1.0);
+			int stop = Math.min((int) position, stops.length - 2);
+			double fraction = position - stop;
+			int from = stops[stop].getRGB();
+			int to = stops[stop + 1].getRGB();
+			int color = 0;
+			for(int shift = 0; shift < 32; shift += 8) {
+				int channel = (int) Math.round((from >>> shift & 255) * (1 - fraction) + (to >>> shift & 255) * fraction);
+				color |= channel << shift;
+			}
+			colors[i] = color;
+		}
+		return new Palette(colors, noData.getRGB());
+	}
+}
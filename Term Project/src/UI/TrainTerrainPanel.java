@@ -1,43 +1,57 @@
 package UI;
 
 import java.awt.BorderLayout;
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.Image;
+import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.event.ComponentEvent;
-import java.awt.event.ComponentListener;
 import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import javax.imageio.ImageIO;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextField;
+import javax.swing.SwingWorker;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
+import algorithm.AnalysisMetrics;
+import algorithm.AnalysisSettings;
+import algorithm.ByteLayer;
+import algorithm.CellPath;
+import algorithm.FlowField;
+import algorithm.Grid;
+import algorithm.IntRaster;
+import algorithm.LayerCostCache;
 import algorithm.MapAnalysis;
 import algorithm.MapUtil;
 import algorithm.MapUtil.Pair;
+import algorithm.Raster;
+import fileUtils.ExportPipeline;
 import fileUtils.FileUtil;
 
 public class TrainTerrainPanel extends JPanel {
@@ -47,6 +61,10 @@ public class TrainTerrainPanel extends JPanel {
 	private OverlayPanel altitudePanel, waterPanel, roadsPanel, housingPanel, discretePanel, accumulatedPanel, vectorFieldPanel;
 	private BufferedImage altitudeImage, waterImage, roadsImage, housingImage, discreteImage, accumulatedImage, vectorFieldImage;
 	private BufferedImage pathOverlay;
+	// Mipmaps of pathOverlay shared by every panel
+	private ImagePyramid pathOverlayPyramid;
+	// Panel of the selected tab
+	private OverlayPanel shownPanel;
 	
 	HashSet<JTextField> weightingEntries;
 	
@@ -56,17 +74,34 @@ public class TrainTerrainPanel extends JPanel {
 	JTextField maxAltitudeEntry;
 	
 	JCheckBox doSave, doOverlay;
+	JComboBox<FileUtil.ImageFormats> saveFormat;
 	
 	boolean noWarning = false;
 	
 
 	private MapAnalysis analysis;
+	// Layers and constants the current analysis was performed with (when only weightings change, the analysis is updated instead of redone)
+	private Grid[] analysisLayers;
+	private double analysisPixelSize, analysisAltitudeScale;
+	// Analysis settings, with a cache of layer costs so that changing weightings does not recompute the roads and altitude costs.
+	// Only changed on the event dispatch thread; their monitor is the one of the running AnalysisWorker, or null.
+	private AnalysisSettings analysisSettings;
+	// Analysis running in the background, or null
+	private AnalysisWorker analysisWorker;
+	
+	private JButton analysisButton;
+	// Controls that change the layers, disabled while an analysis is running
+	private JButton[] layerButtons;
+	private JProgressBar analysisProgress;
+	private JLabel analysisStatus;
+	// Status bar with the time and search metrics of each phase of the last analysis (details in its tool tip)
+	private JLabel metricsStatus;
 
-	// Map layers used in analyis
-	private double[][] altitudeLayer;
-	private double[][] waterLayer;
-	private double[][] roadsLayer;
-	private double[][] housingLayer;
+	// Map layers used in analyis (8-bit layers when read from images)
+	private Grid altitudeLayer;
+	private Grid waterLayer;
+	private Grid roadsLayer;
+	private Grid housingLayer;
 	
 	// Dimensions of a cell in meters
 	private double pixelSize;
@@ -90,6 +125,12 @@ public class TrainTerrainPanel extends JPanel {
 		// Set layout of panel to BorderLayout 
 		super(new BorderLayout());
 		
+		// Keep up to 256 MB of layer costs between analyses
+		analysisSettings = new AnalysisSettings();
+		analysisSettings.layerCostCache = new LayerCostCache(256L << 20);
+		// Discrete cost layers, rendering and the flow field run on every processor
+		analysisSettings.parallelism = Runtime.getRuntime().availableProcessors();
+		
 		// Add a JTabbedPane
 		tabbedPane = new JTabbedPane(JTabbedPane.BOTTOM);
 		add(tabbedPane, BorderLayout.CENTER);
@@ -302,6 +343,7 @@ public class TrainTerrainPanel extends JPanel {
 		final JFileChooser fileChooser = new JFileChooser();
 		fileChooser.setAcceptAllFileFilterUsed(false);
 		fileChooser.addChoosableFileFilter(new FileNameExtensionFilter("Image files", ImageIO.getReaderFileSuffixes()));
+		fileChooser.addChoosableFileFilter(new FileNameExtensionFilter("Raster files", FileUtil.RASTER_EXTENSION));
 		
 		// Add buttons
 		final JButton altitudeMapButton = new JButton("Load Altitude Map");
@@ -318,10 +360,23 @@ public class TrainTerrainPanel extends JPanel {
 		JPanel analysisPanel =  new JPanel();
 		inputAndOptionsPanel.add(analysisPanel);
 		
-		final JButton analysisButton = new JButton("Perform Analysis");
+		analysisButton = new JButton("Perform Analysis");
 		analysisPanel.add(analysisButton);
 		final JButton resetButton = new JButton("Reset");
 		analysisPanel.add(resetButton);
+		layerButtons = new JButton[] {altitudeMapButton, waterMapButton, waterLevelButton, roadsMapButton, housingMapButton, resetButton};
+		
+		// Add progress of the running analysis
+		analysisProgress = new JProgressBar(0, 100);
+		analysisPanel.add(analysisProgress);
+		analysisStatus = new JLabel(" ");
+		analysisPanel.add(analysisStatus);
+		
+		// Add status bar for the metrics of the last analysis
+		JPanel statusBar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		inputAndOptionsPanel.add(statusBar);
+		metricsStatus = new JLabel(" ");
+		statusBar.add(metricsStatus);
 		
 		// Add overlay enable
 		JPanel doOverlayPanel = new JPanel();
@@ -339,6 +394,9 @@ public class TrainTerrainPanel extends JPanel {
 		doSave = new JCheckBox();
 		doSavePanel.add(doSaveLabel);
 		doSavePanel.add(doSave);
+		// Image format of saved files: PNG is the smallest, FAST_PNG and RAW (raster files) are faster to write
+		saveFormat = new JComboBox<FileUtil.ImageFormats>(FileUtil.ImageFormats.values());
+		doSavePanel.add(saveFormat);
 		
 		
 		// Add ActionListeners for buttons
@@ -351,8 +409,9 @@ public class TrainTerrainPanel extends JPanel {
 				if (returnVal == JFileChooser.APPROVE_OPTION) {
 					clearAnalysisImages();
 					try {
-						altitudeImage = ImageIO.read(fileChooser.getSelectedFile());
-						altitudeLayer = FileUtil.imageToMap(altitudeImage); // Interpreting black as low altitude and white as high altitude
+						Pair<BufferedImage, Grid> loaded = readLayer(fileChooser.getSelectedFile());
+						altitudeImage = loaded.getFirst();
+						altitudeLayer = loaded.getSecond(); // Interpreting black as low altitude and white as high altitude
 					} catch (IOException e) {
 						altitudeImage = null;
 						altitudeLayer = null;
@@ -373,8 +432,9 @@ public class TrainTerrainPanel extends JPanel {
 				if (returnVal == JFileChooser.APPROVE_OPTION) {
 					clearAnalysisImages();
 					try {
-						waterImage = ImageIO.read(fileChooser.getSelectedFile());
-						waterLayer = FileUtil.imageToMap(waterImage); // Interpreting black as no water and white as the deepest water
+						Pair<BufferedImage, Grid> loaded = readLayer(fileChooser.getSelectedFile());
+						waterImage = loaded.getFirst();
+						waterLayer = loaded.getSecond(); // Interpreting black as no water and white as the deepest water
 					} catch (IOException e) {
 						waterImage = null;
 						waterLayer = null;
@@ -426,8 +486,9 @@ public class TrainTerrainPanel extends JPanel {
 				if (returnVal == JFileChooser.APPROVE_OPTION) {
 					clearAnalysisImages();
 					try {
-						roadsImage = ImageIO.read(fileChooser.getSelectedFile());
-						roadsLayer = invertGraph(FileUtil.imageToMap(roadsImage)); // Interpreting white as no road, otherwise road
+						Pair<BufferedImage, Grid> loaded = readLayer(fileChooser.getSelectedFile());
+						roadsImage = loaded.getFirst();
+						roadsLayer = invertLayer(loaded.getSecond()); // Interpreting white as no road, otherwise road
 					} catch (IOException e) {
 						roadsImage = null;
 						roadsLayer = null;
@@ -448,8 +509,9 @@ public class TrainTerrainPanel extends JPanel {
 				if (returnVal == JFileChooser.APPROVE_OPTION) {
 					clearAnalysisImages();
 					try {
-						housingImage = ImageIO.read(fileChooser.getSelectedFile());
-						housingLayer = invertGraph(FileUtil.imageToMap(housingImage)); // Interpreting white as no houses and darker as housing density increases
+						Pair<BufferedImage, Grid> loaded = readLayer(fileChooser.getSelectedFile());
+						housingImage = loaded.getFirst();
+						housingLayer = invertLayer(loaded.getSecond()); // Interpreting white as no houses and darker as housing density increases
 					} catch (IOException e) {
 						housingImage = null;
 						housingLayer = null;
@@ -464,56 +526,48 @@ public class TrainTerrainPanel extends JPanel {
 		analysisButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent arg0) {
-				if(altitudeLayer == null) { // If an altitude map has not been set
+				if(analysisWorker != null) { // An analysis is running, so the button cancels it
+					analysisWorker.monitor.cancel();
+					analysisButton.setEnabled(false);
+					analysisStatus.setText("Cancelling...");
+				} else if(altitudeLayer == null) { // If an altitude map has not been set
 					JOptionPane.showMessageDialog(null, "Altitude Map is not Set");
-				} else if(waterLayer != null && (altitudeLayer.length != waterLayer.length || altitudeLayer[0].length != waterLayer[0].length)) {
+				} else if(waterLayer != null && (altitudeLayer.getWidth() != waterLayer.getWidth() || altitudeLayer.getHeight() != waterLayer.getHeight())) {
 					JOptionPane.showMessageDialog(null, "Altitude and Water Map dimensions do not match");
-				} else if(roadsLayer != null && (altitudeLayer.length != roadsLayer.length || altitudeLayer[0].length != roadsLayer[0].length)) {
+				} else if(roadsLayer != null && (altitudeLayer.getWidth() != roadsLayer.getWidth() || altitudeLayer.getHeight() != roadsLayer.getHeight())) {
 					JOptionPane.showMessageDialog(null, "Altitude and roads Map dimensions do not match");
-				} else if(housingLayer != null && (altitudeLayer.length != housingLayer.length || altitudeLayer[0].length != housingLayer[0].length)) {
+				} else if(housingLayer != null && (altitudeLayer.getWidth() != housingLayer.getWidth() || altitudeLayer.getHeight() != housingLayer.getHeight())) {
 					JOptionPane.showMessageDialog(null, "Altitude and housing density Map dimensions do not match");
 				} else {
 					// Set mapping of map type to map data
-					Map<MapUtil.MapTypes, double[][]> layers = new HashMap<MapUtil.MapTypes, double[][]>();
+					Map<MapUtil.MapTypes, Grid> layers = new HashMap<MapUtil.MapTypes, Grid>();
 					layers.put(MapUtil.MapTypes.ALTITUDE, altitudeLayer);
 					if(waterLayer != null) layers.put(MapUtil.MapTypes.WATER, waterLayer);
 					if(roadsLayer != null) layers.put(MapUtil.MapTypes.ROADS, roadsLayer);
 					if(housingLayer != null) layers.put(MapUtil.MapTypes.HOUSINGDENSITY, housingLayer);
 					
-					// Set source for path
-					int[][] source = new int[altitudeLayer.length][altitudeLayer[0].length];
-					source[source.length - 1][source[0].length - 1] = 1;
-					// Set start for path
-					Pair<Integer, Integer> start = new Pair<Integer, Integer>(0, 0);
-					
-					//TODO add UI control for this
-					double costDistance = 1.0;
-					
-					// Perform analysis
-					double altitudeScale = (maxAltitude - minAltitude)/255.0;
-					analysis = new MapAnalysis(source, start, layers, pixelSize, altitudeScale, costDistance, weightings);
-					
-					// Update Images
-					discreteImage = mapToBufferedImageColor(analysis.discreteCost);
-					accumulatedImage = mapToBufferedImageColor(analysis.accumulatedCost);
-					vectorFieldImage = generateVectorFieldImage(analysis.accumulatedCost);
-					pathOverlay = pathOverlayImage(analysis.path);
-					updateImages();
-					
-					// Save analysis data if doSave is checked
+					// Input images to be saved with the analysis data
+					HashMap<String, BufferedImage> inputImages = null;
 					if(doSave.isSelected()) {
-						HashMap<String, BufferedImage> analysisData = new HashMap<String, BufferedImage>();
-						analysisData.put("discreteMap", discreteImage);
-						analysisData.put("accumulatedMap", accumulatedImage);
-						analysisData.put("vectorField", vectorFieldImage);
-						analysisData.put("pathMap", pathAndAltitudeToBufferedImage(analysis.path, altitudeLayer)); //generate image on demand
-						// Add input files to be saved as well
-						analysisData.put("altitudeMap", altitudeImage);
-						if(waterLayer != null) analysisData.put("waterMap", waterImage);
-						if(roadsLayer != null) analysisData.put("waterMap", roadsImage);
-						if(housingLayer != null) analysisData.put("waterMap", housingImage);
-						saveAnalysisData(analysisData);
+						inputImages = new HashMap<String, BufferedImage>();
+						inputImages.put("altitudeMap", altitudeImage);
+						if(waterLayer != null) inputImages.put("waterMap", waterImage);
+						if(roadsLayer != null) inputImages.put("roadsMap", roadsImage);
+						if(housingLayer != null) inputImages.put("housingMap", housingImage);
 					}
+					
+					// Perform analysis in the background, updating the current one if only the weightings changed
+					double altitudeScale = (maxAltitude - minAltitude)/255.0;
+					Grid[] currentLayers = new Grid[] {altitudeLayer, waterLayer, roadsLayer, housingLayer};
+					boolean update = analysis != null && Arrays.equals(currentLayers, analysisLayers) && pixelSize == analysisPixelSize && altitudeScale == analysisAltitudeScale;
+					analysisWorker = new AnalysisWorker(update ? analysis : null, layers, currentLayers, pixelSize, altitudeScale,
+							new HashMap<MapUtil.MapTypes, Double>(weightings), inputImages, (FileUtil.ImageFormats) saveFormat.getSelectedItem());
+					// The analysis is replaced when the worker is done (an update that does not finish leaves it inconsistent)
+					analysis = null;
+					setAnalysisRunning(true);
+					// The settings are only changed here and in done, on the event dispatch thread, never while a worker runs
+					analysisSettings.monitor = analysisWorker.monitor;
+					analysisWorker.execute();
 				}
 			}
 		});		
@@ -570,39 +624,68 @@ public class TrainTerrainPanel extends JPanel {
 				updateImages();
 			}
 		});
-		//Add listener for window resizing
-		tabbedPane.addComponentListener(new ComponentListener() {
+		//Add listener for tab changes, showing the same part of the map on the new tab
+		shownPanel = altitudePanel;
+		tabbedPane.addChangeListener(new ChangeListener() {
 			@Override
-			public void componentResized(ComponentEvent e) {
-				updateImages();
+			public void stateChanged(ChangeEvent e) {
+				OverlayPanel selected = (OverlayPanel) tabbedPane.getSelectedComponent();
+				selected.copyView(shownPanel);
+				shownPanel = selected;
 			}
-
-			@Override
-			public void componentHidden(ComponentEvent arg0) { /*nothing*/ }
-
-			@Override
-			public void componentMoved(ComponentEvent arg0) { /*nothing*/ }
-
-			@Override
-			public void componentShown(ComponentEvent arg0) { /*nothing*/ }
 		});
 
 	}
 	
 	/**
-	 * Inverts the colors of an image graph.
-	 * @param graph 2D array to be inverted
-	 * @return a graph where all the values are inverted using value = 255 - value for each cell
+	 * Reads a layer from an image file, or from a raster file (see FileUtil.writeRaster) without the loss of converting it to an image
+	 * @param file image or raster file
+	 * @return image of the layer to display and the layer interpreted from the file (an 8-bit layer for image files)
+	 * @throws IOException if there is a problem reading the file
+	 */
+	private Pair<BufferedImage, Grid> readLayer(File file) throws IOException {
+		if(FileUtil.isRasterFile(file)) {
+			Raster layer = FileUtil.readRaster(file);
+			return new Pair<BufferedImage, Grid>(FileUtil.rasterToImage(layer), layer);
+		}
+		BufferedImage image = ImageIO.read(file);
+		return new Pair<BufferedImage, Grid>(image, FileUtil.imageToByteLayer(image));
+	}
+	
+	/**
+	 * Inverts the values of a layer.
+	 * @param layer layer to be inverted
+	 * @return a layer where all the values are inverted using value = 255 - value for each cell
 	 */
-	private double[][] invertGraph(double[][] graph) {
-		double[][] inverted = new double[graph.length][graph[0].length];
-		for(int i = 0; i < graph.length; i++) {
-			for(int j = 0; j < graph[0].length; j++) {
-				inverted[i][j] = 255 - graph[i][j]; 
+	private Grid invertLayer(Grid layer) {
+		if(layer instanceof ByteLayer) {
+			return ((ByteLayer) layer).inverted();
+		}
+		Raster inverted = new Raster(layer.getWidth(), layer.getHeight());
+		for(int j = 0; j < layer.getHeight(); j++) {
+			for(int i = 0; i < layer.getWidth(); i++) {
+				inverted.set(i, j, 255 - layer.get(i, j));
 			}
 		}
 		return inverted;
 	}
+	
+	/**
+	 * Switches the analysis button between performing and cancelling an analysis and locks the controls that change the layers while one runs
+	 * @param running true if an analysis is starting, false if it is done
+	 */
+	private void setAnalysisRunning(boolean running) {
+		analysisButton.setText(running ? "Cancel Analysis" : "Perform Analysis");
+		analysisButton.setEnabled(true);
+		for(JButton button : layerButtons) {
+			button.setEnabled(!running);
+		}
+		if(running) {
+			analysisProgress.setValue(0);
+			analysisStatus.setText("Starting analysis");
+		}
+	}
+	
 	/**
 	 * Clears all the images that are generated from map analysis
 	 */
@@ -611,72 +694,29 @@ public class TrainTerrainPanel extends JPanel {
 	}
 	
 	/**
-	 * updates displayed images, scaled to fit window
+	 * Updates displayed images. Panels scale their images when they are painted (see OverlayPanel), so this only hands them the images,
+	 * keeping the mipmaps of images that did not change, and only the selected tab is painted.
 	 */
 	private void updateImages() {
-		//find size of our images, if possible
-		int imageWidth, imageHeight;
-		if (altitudeImage != null) {
-			imageWidth = altitudeImage.getWidth();
-			imageHeight = altitudeImage.getHeight();
-		} else if (waterImage != null) {
-			imageWidth = waterImage.getWidth();
-			imageHeight = waterImage.getHeight();
-		} else if (roadsImage != null) {
-			imageWidth = roadsImage.getWidth();
-			imageHeight = roadsImage.getHeight();
-		} else if (housingImage != null) {
-			imageWidth = housingImage.getWidth();
-			imageHeight = housingImage.getHeight();
-		} else {
-			altitudePanel.setBackgroundImage(null);
-			waterPanel.setBackgroundImage(null);
-			roadsPanel.setBackgroundImage(null);
-			housingPanel.setBackgroundImage(null);
-			discretePanel.setBackgroundImage(null);
-			accumulatedPanel.setBackgroundImage(null);
-			vectorFieldPanel.setBackgroundImage(null);
-			return;
-		}
-		int paneWidth = altitudePanel.getWidth();
-		int paneHeight = altitudePanel.getHeight();
-		//calculate desired display dimensions
-		int width, height;
-		if ((double)paneWidth/paneHeight < (double)imageWidth/imageHeight) { //comparing aspect ratios (must be floating point)
-			//match pane width
-			width = paneWidth;
-			height = paneWidth * imageHeight / imageWidth;
-		} else {
-			//match pane height
-			width = paneHeight * imageWidth / imageHeight;
-			height = paneHeight;
-		}
-		
-		Image scaleOverlay;
-		if (pathOverlay != null && doOverlay.isSelected()) {
-			scaleOverlay = pathOverlay.getScaledInstance(width, height, Image.SCALE_DEFAULT);
-		} else {
-			scaleOverlay = null;
+		if (pathOverlay == null || (altitudeImage == null && waterImage == null && roadsImage == null && housingImage == null)) {
+			pathOverlayPyramid = null;
+		} else if (pathOverlayPyramid == null || pathOverlayPyramid.getImage() != pathOverlay) {
+			pathOverlayPyramid = new ImagePyramid(pathOverlay, true);
 		}
+		ImagePyramid overlay = doOverlay.isSelected() ? pathOverlayPyramid : null;
 		
-		updateImage(altitudePanel, altitudeImage, scaleOverlay, width, height);
-		updateImage(waterPanel, waterImage, scaleOverlay, width, height);
-		updateImage(roadsPanel, roadsImage, scaleOverlay, width, height);
-		updateImage(housingPanel, housingImage, scaleOverlay, width, height);
-		updateImage(discretePanel, discreteImage, scaleOverlay, width, height);
-		updateImage(accumulatedPanel, accumulatedImage, scaleOverlay, width, height);
-		updateImage(vectorFieldPanel, vectorFieldImage, scaleOverlay, width, height);
-		
-		altitudePanel.setOverlayImage(scaleOverlay);
+		updateImage(altitudePanel, altitudeImage, overlay);
+		updateImage(waterPanel, waterImage, overlay);
+		updateImage(roadsPanel, roadsImage, overlay);
+		updateImage(housingPanel, housingImage, overlay);
+		updateImage(discretePanel, discreteImage, overlay);
+		updateImage(accumulatedPanel, accumulatedImage, overlay);
+		updateImage(vectorFieldPanel, vectorFieldImage, overlay);
 	}
 	//a helper function
-	private void updateImage(OverlayPanel panel, BufferedImage image, Image overlay, int width, int height) {
-		if (image != null) {
-			panel.setBackgroundImage(image.getScaledInstance(width, height, Image.SCALE_DEFAULT));
-		} else {
-			panel.setBackgroundImage(null);
-		}
-		panel.setOverlayImage(overlay);
+	private void updateImage(OverlayPanel panel, BufferedImage image, ImagePyramid overlay) {
+		panel.setBackgroundImage(image);
+		panel.setOverlay(overlay);
 		panel.repaint();
 	}
 
@@ -684,23 +724,24 @@ public class TrainTerrainPanel extends JPanel {
 	private void generateWaterMap() {
 		if (waterLevel > 0) {
 			//generate water map
-			int width = altitudeLayer.length;
-			int height = altitudeLayer[0].length;
-			waterLayer = new double[width][height];
+			int width = altitudeLayer.getWidth();
+			int height = altitudeLayer.getHeight();
+			Raster water = new Raster(width, height);
 			double altitudeScale = (maxAltitude - minAltitude)/255.0;
 			for(int i = 0; i < width; i++) {
 				for(int j = 0; j < height; j ++) {
-					double altitude = altitudeLayer[i][j]*altitudeScale + minAltitude; // Convert altitudeLayer value to altitude using scale and min value
+					double altitude = altitudeLayer.get(i, j)*altitudeScale + minAltitude; // Convert altitudeLayer value to altitude using scale and min value
 					if (altitude < waterLevel) {
-						waterLayer[i][j] = waterLevel - altitude;
+						water.set(i, j, waterLevel - altitude);
 					} else {
-						waterLayer[i][j] = 0;
+						water.set(i, j, 0);
 					}
 					
 				}
 			}
+			waterLayer = water;
 			//create image
-			waterImage = FileUtil.mapToImage(waterLayer);
+			waterImage = FileUtil.rasterToImage(water);
 			// Update Images
 			updateImages();
 		}
@@ -728,216 +769,266 @@ public class TrainTerrainPanel extends JPanel {
 	}
 	
 	/**
-	 * Converts 2D array to a color BufferedImage where high values are red, medium are yellow and low are green
-	 * @param dataMap 2D array to be converted to BufferedImage
-	 * @return converted BufferedImage
+	 * Converts path to a BUfferedImage that will show the path as a red line on transparent background
+	 * @param path path that will be overlaid on the image
+	 * @param width width of the image
+	 * @param height height of the image
+	 * @return BufferedImage
 	 */
-	private BufferedImage mapToBufferedImageColor(double[][] dataMap) {
-		BufferedImage colorImage = FileUtil.mapToImage(invertGraph(dataMap));
-		double max = 1;
-		for(int i = 0; i < dataMap.length; i++) {
-			for(int j = 0; j < dataMap[0].length; j++) {
-				if(dataMap[i][j] > max) max = dataMap[i][j]; 
-			}
-		}
-		for(int i = 0; i < dataMap.length; i++) {
-			for(int j = 0; j < dataMap[0].length; j++) {
-				int scaledValue = (int)(dataMap[i][j]*255/max);
-				Color color = new Color(Math.min(255, (int)(255*((scaledValue)/127.0))), Math.min(255, 255 - (int)(255*((scaledValue - 128)/128.0))), 0);
-				colorImage.setRGB(i, j, color.getRGB());
-			}
+	private BufferedImage pathOverlayImage(CellPath path, int width, int height) {
+		// a new image is fully transparent
+		BufferedImage pathImage = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+		for(int i = 0; i < path.size(); i++) {
+			pathImage.setRGB(path.getX(i), path.getY(i), 255<<24 | 255); //opaque, blue
 		}
-		return colorImage;
+		return pathImage;
 	}
-	
+
 	/**
-	 * Converts 2D array to a black and white vector field image
-	 * @param dataMap 2D array representing accumulated cost values
-	 * @return resulting BufferedImage
+	 * Converts path and altitudeMap to a BUfferedImage that will show the path as a red line on the altitudeMap
+	 * @param path path that will be overlaid on the image
+	 * @param altitudeMap layer that represents the altitude data
+	 * @return converted BufferedImage
 	 */
-	private BufferedImage generateVectorFieldImage(double[][] dataMap) {
-		int spacing = 15; //grid size in pixels
-		Integer vLength = 5; //vector length in pixels
-		
-		int width = dataMap.length;
-		int height = dataMap[0].length;
-		BufferedImage pathImage = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-		Graphics2D graphics = pathImage.createGraphics();
-		
-		//fill white
-		graphics.setPaint(Color.WHITE);
-		graphics.fillRect(0, 0, width, height);
-		
-		//draw vectors
-		graphics.setPaint(Color.BLACK);
-		for(int j = spacing/2; j < height; j+=spacing) {
-			for(int i = spacing/2; i < width; i+=spacing) {
-				//TODO draw a vector
-				List<Pair<Integer, Integer>> path = steepestCostPath(new Pair<Integer, Integer>(i, j), dataMap, vLength);
-				Pair<Integer, Integer> start = path.get(0);
-				Pair<Integer, Integer> end = path.get(path.size()-1);
-				graphics.drawOval(start.getFirst()-1, start.getSecond()-1, 2, 2);
-				graphics.drawLine(start.getFirst(), start.getSecond(), end.getFirst(), end.getSecond());
-			}
+	private BufferedImage pathAndAltitudeToBufferedImage(CellPath path, Grid altitudeMap) {
+		BufferedImage pathImage = FileUtil.gridToImage(altitudeMap);
+		for(int i = 0; i < path.size(); i++) {
+			pathImage.setRGB(path.getX(i), path.getY(i), 255<<16); //red
 		}
 		return pathImage;
 	}
-	private static List<Pair<Integer, Integer>> steepestCostPath(Pair<Integer, Integer> start, double[][] accumulatedCost, Integer lengthLimit) {
-		int x = start.getFirst();
-		int y = start.getSecond();
-		
-		// Initialize path
-		List<Pair<Integer, Integer>> path = new ArrayList<Pair<Integer, Integer>>(lengthLimit);
-		
-		double currValue = accumulatedCost[x][y];
-		path.add(new Pair<Integer, Integer>(x, y));
-		
-		// Until the path has reached the source (where the source cells have values of 0)
-		while(currValue != 0 && (lengthLimit==null || lengthLimit > 0)) {
-			lengthLimit--;
-			// Determine the next path segment by finding the neighbor with the least cost
-			Pair<Integer, Integer> nextCell = null;
-			double smallestValue = -1;
-			// Down
-			if(y + 1 < accumulatedCost[0].length) {
-				if(smallestValue == -1 || accumulatedCost[x][y + 1] < smallestValue) {
-					smallestValue = accumulatedCost[x][y + 1];
-					nextCell = new Pair<Integer, Integer>(x, y + 1);
-				}
-			}
-			// Up
-			if(y - 1 >= 0) {
-				if(smallestValue == -1 || accumulatedCost[x][y - 1] < smallestValue) {
-					smallestValue = accumulatedCost[x][y - 1];
-					nextCell = new Pair<Integer, Integer>(x, y - 1);
-				}
-			}
-			// Right
-			if((x + 1 < accumulatedCost.length)) {
-				if(smallestValue == -1 || accumulatedCost[x + 1][y] < smallestValue) {
-					smallestValue = accumulatedCost[x + 1][y];
-					nextCell = new Pair<Integer, Integer>(x + 1, y);
-				}
-			}
-			// Left
-			if((x - 1 >= 0)) {
-				if(smallestValue == -1 || accumulatedCost[x - 1][y] < smallestValue) {
-					smallestValue = accumulatedCost[x - 1][y];
-					nextCell = new Pair<Integer, Integer>(x - 1, y);
-				}
-			}
-			// Down-Right
-			if(y + 1 < accumulatedCost[0].length && (x + 1 < accumulatedCost.length)) {
-				if(smallestValue == -1 || accumulatedCost[x + 1][y + 1] < smallestValue) {
-					smallestValue = accumulatedCost[x + 1][y + 1];
-					nextCell = new Pair<Integer, Integer>(x + 1, y + 1);
-				}
-			}
-			// Down-Left
-			if(y + 1 < accumulatedCost[0].length && (x - 1 >= 0)) {
-				if(smallestValue == -1 || accumulatedCost[x - 1][y + 1] < smallestValue) {
-					smallestValue = accumulatedCost[x - 1][y + 1];
-					nextCell = new Pair<Integer, Integer>(x - 1, y + 1);
-				}
+	
+	private class AnalysisWorker extends SwingWorker<MapAnalysis, MapUtil.AnalysisPhases> {
+		private final MapAnalysis previous;
+		private final Map<MapUtil.MapTypes, Grid> layers;
+		private final Grid[] currentLayers;
+		private final double pixelSize, altitudeScale;
+		private final Map<MapUtil.MapTypes, Double> weightings;
+		private final Map<String, BufferedImage> inputImages;
+		private final FileUtil.ImageFormats saveFormat;
+		private final int phaseCount;
+		
+		// Images generated in the background, published by done
+		private BufferedImage discreteImage, accumulatedImage, vectorFieldImage, pathOverlay;
+		
+		// Reports the phases to the progress bar and status label, records their metrics for the status bar, and cancels the analysis
+		final AnalysisMetrics monitor = new AnalysisMetrics() {
+			private int phase = 0;
+			
+			@Override
+			public void phaseStarted(MapUtil.AnalysisPhases analysisPhase) {
+				super.phaseStarted(analysisPhase);
+				phase = analysisPhase.ordinal();
+				publish(analysisPhase);
+				progress(0);
 			}
-			// Up-Right
-			if(y - 1 >= 0 && (x + 1 < accumulatedCost.length)) {
-				if(smallestValue == -1 || accumulatedCost[x + 1][y - 1] < smallestValue) {
-					smallestValue = accumulatedCost[x + 1][y - 1];
-					nextCell = new Pair<Integer, Integer>(x + 1, y - 1);
-				}
+			
+			@Override
+			public void progress(double fraction) {
+				setProgress((int) Math.min(100, 100*(phase + fraction)/phaseCount));
 			}
-			// Up-Left
-			if(y - 1 >= 0 && (x - 1 >= 0)) {
-				if(smallestValue == -1 || accumulatedCost[x - 1][y - 1] < smallestValue) {
-					smallestValue = accumulatedCost[x - 1][y - 1];
-					nextCell = new Pair<Integer, Integer>(x - 1, y - 1);
+		};
+		
+		/**
+		 * @param previous analysis to update with new weightings, or null to perform a new analysis
+		 * @param layers mapping of a map type to the map information
+		 * @param currentLayers layers the analysis is performed with, in the order of analysisLayers
+		 * @param pixelSize dimensions of a cell in meters
+		 * @param altitudeScale scale factor for altitude
+		 * @param weightings mapping of a map type to a weighting (not changed while the analysis runs)
+		 * @param inputImages input images to save with the analysis data once it is done (see ExportWorker), or null to not save
+		 * @param saveFormat format of the saved images
+		 */
+		AnalysisWorker(MapAnalysis previous, Map<MapUtil.MapTypes, Grid> layers, Grid[] currentLayers, double pixelSize, double altitudeScale,
+				Map<MapUtil.MapTypes, Double> weightings, Map<String, BufferedImage> inputImages, FileUtil.ImageFormats saveFormat) {
+			this.previous = previous;
+			this.layers = layers;
+			this.currentLayers = currentLayers;
+			this.pixelSize = pixelSize;
+			this.altitudeScale = altitudeScale;
+			this.weightings = weightings;
+			this.inputImages = inputImages;
+			this.saveFormat = saveFormat;
+			// Saving is done by an ExportWorker after the analysis
+			phaseCount = MapUtil.AnalysisPhases.SAVING.ordinal();
+			
+			addPropertyChangeListener(new PropertyChangeListener() {
+				@Override
+				public void propertyChange(PropertyChangeEvent event) {
+					if("progress".equals(event.getPropertyName())) {
+						analysisProgress.setValue((Integer) event.getNewValue());
+					}
 				}
+			});
+		}
+		
+		@Override
+		protected MapAnalysis doInBackground() {
+			Grid altitudeLayer = layers.get(MapUtil.MapTypes.ALTITUDE);
+			int width = altitudeLayer.getWidth();
+			int height = altitudeLayer.getHeight();
+			MapAnalysis result;
+			if(previous != null) {
+				previous.updateWeightings(weightings);
+				result = previous;
+			} else {
+				// Set source for path
+				IntRaster source = new IntRaster(width, height);
+				source.set(width - 1, height - 1, 1);
+				// Set start for path
+				Pair<Integer, Integer> start = new Pair<Integer, Integer>(0, 0);
+				
+				//TODO add UI control for this
+				double costDistance = 1.0;
+				
+				result = new MapAnalysis(source, start, layers, pixelSize, altitudeScale, costDistance, weightings, analysisSettings);
 			}
 			
-			// Adds path segment to the path
-			x = nextCell.getFirst();
-			y = nextCell.getSecond();
-			path.add(new Pair<Integer, Integer>(x, y));
-			currValue = accumulatedCost[x][y];
+			// Generate images
+			monitor.checkCancelled();
+			monitor.phaseStarted(MapUtil.AnalysisPhases.RENDERING);
+			CellPath path = result.path;
+			Palette palette = Palette.cost();
+			discreteImage = CostRenderer.render(result.discreteCost, palette, analysisSettings.parallelism);
+			monitor.progress(0.25);
+			accumulatedImage = CostRenderer.render(result.accumulatedCost, palette, analysisSettings.parallelism);
+			monitor.progress(0.5);
+			vectorFieldImage = FlowFieldRenderer.render(FlowField.generate(Raster.fromGrid(result.accumulatedCost), 15, 5, analysisSettings.parallelism), width, height);
+			monitor.progress(0.75);
+			pathOverlay = pathOverlayImage(path, width, height);
+			monitor.phaseFinished(MapUtil.AnalysisPhases.RENDERING);
+			
+			setProgress(100);
+			return result;
 		}
 		
-		return path;
-	}
-
-	/**
-	 * Converts path to a BUfferedImage that will show the path as a red line on transparent background
-	 * @param path 2D path array that represents a path that will be overlaid on the image
-	 * @return BufferedImage
-	 */
-	private BufferedImage pathOverlayImage(int[][] path) {
-		int width = path.length;
-		int height = path[0].length;
-		BufferedImage pathImage = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
-		for (int j = 0; j < height; j++) {
-			for (int i = 0; i < width; i++) {
-				if (path[i][j] == 1) {
-					pathImage.setRGB(i, j, 255<<24 | 255); //opaque, blue
-				} else {
-					pathImage.setRGB(i, j, 0); //transparent
-				}
+		@Override
+		protected void process(List<MapUtil.AnalysisPhases> phases) {
+			switch(phases.get(phases.size() - 1)) {
+			case DISCRETE_COST: analysisStatus.setText("Calculating discrete cost"); break;
+			case ACCUMULATED_COST: analysisStatus.setText("Calculating accumulated cost"); break;
+			case PATH: analysisStatus.setText("Finding path"); break;
+			case RENDERING: analysisStatus.setText("Rendering images"); break;
+			case SAVING: analysisStatus.setText("Saving images"); break;
 			}
 		}
-		return pathImage;
-	}
-
-	/**
-	 * Converts path and altitudeMap to a BUfferedImage that will show the path as a red line on the altitudeMap
-	 * @param path 2D path array that represents a path that will be overlaid on the image
-	 * @param altitudeMap 2D altitudeMap array that represents the altitude data
-	 * @return converted BufferedImage
-	 */
-	private BufferedImage pathAndAltitudeToBufferedImage(int[][] path, double[][] altitudeMap) {
-		BufferedImage pathImage = FileUtil.mapToImage(altitudeMap);
-		for(int i = 0; i < path.length; i++) {
-			for(int j = 0; j < path[0].length; j++) {
-				if(path[i][j] == 1) {
-					pathImage.setRGB(i, j, 255<<16); //red
+		
+		@Override
+		protected void done() {
+			analysisWorker = null;
+			// The next analysis gets its own monitor
+			analysisSettings.monitor = null;
+			setAnalysisRunning(false);
+			try {
+				analysis = get();
+				analysisLayers = currentLayers;
+				analysisPixelSize = pixelSize;
+				analysisAltitudeScale = altitudeScale;
+				
+				// Update Images
+				TrainTerrainPanel.this.discreteImage = discreteImage;
+				TrainTerrainPanel.this.accumulatedImage = accumulatedImage;
+				TrainTerrainPanel.this.vectorFieldImage = vectorFieldImage;
+				TrainTerrainPanel.this.pathOverlay = pathOverlay;
+				updateImages();
+				analysisStatus.setText("Analysis done");
+				metricsStatus.setText(monitor.summary());
+				metricsStatus.setToolTipText("<html>" + monitor.toString().replace("\n", "<br>") + "</html>");
+				
+				// Save analysis data in the background if doSave was checked
+				if(inputImages != null) {
+					HashMap<String, BufferedImage> analysisData = new HashMap<String, BufferedImage>(inputImages);
+					analysisData.put("discreteMap", discreteImage);
+					analysisData.put("accumulatedMap", accumulatedImage);
+					analysisData.put("vectorField", vectorFieldImage);
+					// Costs are also saved as raster files, which keep their full precision
+					HashMap<String, Grid> analysisRasters = new HashMap<String, Grid>();
+					analysisRasters.put("discreteCost", analysis.discreteCost);
+					analysisRasters.put("accumulatedCost", analysis.accumulatedCost);
+					analysisStatus.setText("Analysis done, saving");
+					new ExportWorker(analysisData, analysisRasters, analysis.path, layers.get(MapUtil.MapTypes.ALTITUDE), saveFormat).execute();
+				}
+			} catch(InterruptedException e) {
+				analysisStatus.setText("Analysis interrupted");
+			} catch(ExecutionException e) {
+				if(e.getCause() instanceof CancellationException) {
+					analysisStatus.setText("Analysis cancelled");
+				} else {
+					analysisStatus.setText("Analysis failed");
+					e.getCause().printStackTrace();
+					JOptionPane.showMessageDialog(null, "Analysis failed: " + e.getCause(), "Error Message", JOptionPane.ERROR_MESSAGE);
 				}
 			}
 		}
-		return pathImage;
 	}
 	
 	/**
-	 * Saves images from analysis data to separate files inside of a directory names based off of current date and time.
-	 * @param mapImages mapping of names to images for analysis data
+	 * Saves images and rasters from analysis data to separate files inside of a directory named after the current date and time,
+	 * several files at a time (see ExportPipeline), and reports the files and bytes written or the files that could not be written
 	 */
-	private void saveAnalysisData(Map<String, BufferedImage> mapImages) {
-		// Create folder for data using current date/time
-		Date date = new Date() ;
-		SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss") ;
-		String dirName = dateFormat.format(date); // directory name based on date and time
-		File dir = new File(dirName);
-		try {
-			dir.mkdir();
-			// Save images to files inside of directory
-			for(String mapName : mapImages.keySet()) {
-				File mapFile = new File(dir, mapName + ".png");
-				mapFile.createNewFile();
-				saveImageToFile(mapFile, mapImages.get(mapName));
+	private class ExportWorker extends SwingWorker<ExportPipeline.Report, Void> {
+		private final Map<String, BufferedImage> mapImages;
+		private final Map<String, Grid> rasters;
+		private final CellPath path;
+		private final Grid altitudeLayer;
+		private final FileUtil.ImageFormats format;
+		
+		/**
+		 * @param mapImages mapping of names to images for analysis data
+		 * @param rasters mapping of names to rasters for analysis data, saved as raster files (see FileUtil.writeRaster)
+		 * @param path path drawn on the altitude layer in the path map, generated while saving
+		 * @param altitudeLayer layer that represents the altitude data
+		 * @param format format of the image files
+		 */
+		ExportWorker(Map<String, BufferedImage> mapImages, Map<String, Grid> rasters, CellPath path, Grid altitudeLayer, FileUtil.ImageFormats format) {
+			this.mapImages = mapImages;
+			this.rasters = rasters;
+			this.path = path;
+			this.altitudeLayer = altitudeLayer;
+			this.format = format;
+		}
+		
+		@Override
+		protected ExportPipeline.Report doInBackground() throws IOException, InterruptedException {
+			// Create folder for data using current date/time
+			Date date = new Date() ;
+			SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss") ;
+			String dirName = dateFormat.format(date); // directory name based on date and time
+			ExportPipeline export = new ExportPipeline(new File(dirName), format, Runtime.getRuntime().availableProcessors());
+			for(Map.Entry<String, BufferedImage> image : mapImages.entrySet()) {
+				if(image.getValue() != null) export.addImage(image.getKey(), image.getValue());
+			}
+			export.addImage("pathMap", new Callable<BufferedImage>() {
+				@Override
+				public BufferedImage call() {
+					return pathAndAltitudeToBufferedImage(path, altitudeLayer); //generate image on demand
+				}
+			});
+			for(Map.Entry<String, Grid> raster : rasters.entrySet()) {
+				export.addRaster(raster.getKey(), raster.getValue());
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
+			return export.finish();
 		}
 		
+		@Override
+		protected void done() {
+			try {
+				ExportPipeline.Report report = get();
+				analysisStatus.setText("Saved " + report);
+				if(!report.failures.isEmpty()) {
+					StringBuilder message = new StringBuilder("Could not save to " + report.directory + ":");
+					for(Map.Entry<String, Throwable> failure : report.failures.entrySet()) {
+						message.append("\n").append(failure.getKey()).append(": ").append(failure.getValue());
+					}
+					JOptionPane.showMessageDialog(null, message.toString(), "Error Message", JOptionPane.ERROR_MESSAGE);
+				}
+			} catch(InterruptedException e) {
+				analysisStatus.setText("Saving interrupted");
+			} catch(ExecutionException e) {
+				analysisStatus.setText("Saving failed");
+				e.getCause().printStackTrace();
+				JOptionPane.showMessageDialog(null, "Saving failed: " + e.getCause(), "Error Message", JOptionPane.ERROR_MESSAGE);
+			}
+		}
 	}
-	
-	/**
-	 * Writes image to a file.
-	 * @param file file to be written to
-	 * @param image image to write to file
-	 */
-	private void saveImageToFile(File file, BufferedImage image) {
-		try {
-			ImageIO.write(image, "png", file);
-		} catch(IOException e) {}
-	}
-	
-	
 }
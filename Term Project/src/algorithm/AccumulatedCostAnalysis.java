@@ -1,122 +1,774 @@
 package algorithm;
 
-import algorithm.MapUtil.Pair;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import algorithm.MapUtil.Pair;
 
-public class AccumulatedCostAnalysis { 
+public class AccumulatedCostAnalysis {
+	// Number of cells settled between two checks of the AnalysisMonitor
+	private static final int MONITOR_INTERVAL = 1 << 14;
 
 	/**
 	 * Calculates the accumulated cost map
 	 * @param source 2D array representing the source to which the least cost path from each cell is calculated, where the source cells are given a non-zero value and all others cells are 0.
-	 * @param discreteCost 2D representation of discrete cost map 
+	 * @param discreteCost 2D representation of discrete cost map
 	 * @param costDistance cost to travel from one cell to the next
 	 * @returns 2D array representation of accumulated cost map
 	 * @throws IllegalArgumentException if arguments are null or the dimensions of discreteCost and source are not the same (assumes that all columns have the same length) or dimensions are 0
-	 */ 
+	 */
 	public static double[][] generateAccumulatedCostMap( int[][] source, double[][] discreteCost, double costDistance)
 	{
 		if(discreteCost == null || source == null) {
 			throw new IllegalArgumentException("Null arguments.");
 		}
-		
+
 	    if(discreteCost.length == 0 || discreteCost[0].length == 0 || discreteCost.length != source.length || discreteCost[0].length != source[0].length) {
 	        throw new IllegalArgumentException("Illegal dimensions of discreteCost and source.");
 	    }
-	    int width = discreteCost.length;
-	    int height = discreteCost[0].length;
-
-	    // where:
-	    //      0 means that the cell hasn't been added to toEvaluate yet
-	    //      1 means that the cell has been added to toEvaluate but hasn't been evaluated yet
-	    //      2 means that the cell has been evaluated
-	    int DISCOVERED = 1;
-	    int EVALUATED = 2;
-	    int[][] status = new int[width][height];
-	   
-	    SortedCellList toEvaluate = new SortedCellList();
-	    
-	    // add all source cells to toEvaluate
-	    for(int i = 0; i < source.length; i++) {
-	        for(int j = 0; j < source[i].length; j++) {
-	            if(source[i][j] != 0) {
-	                toEvaluate.add(0, i, j);
-	            }
+
+	    return generateAccumulatedCostMap(IntRaster.fromArray(source), Raster.fromArray(discreteCost), costDistance).toArray();
+	}
+
+	/**
+	 * Calculates the accumulated cost map
+	 * @param source raster representing the source to which the least cost path from each cell is calculated, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @returns accumulated cost raster
+	 * @throws IllegalArgumentException if arguments are null or the dimensions of discreteCost and source are not the same or dimensions are 0
+	 */
+	public static Raster generateAccumulatedCostMap(IntRaster source, Raster discreteCost, double costDistance)
+	{
+		checkArguments(source, discreteCost, null);
+	    return search(source, discreteCost, costDistance, -1, -1, null, null, null, null);
+	}
+
+	/**
+	 * Calculates the accumulated cost map with the engine chosen in settings
+	 * @param source raster representing the source to which the least cost path from each cell is calculated, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param settings analysis settings (accumulatedCostEngine, and delta and parallelism for DELTA_STEPPING)
+	 * @returns accumulated cost raster
+	 * @throws IllegalArgumentException if arguments are null or the dimensions of discreteCost and source are not the same or dimensions are 0
+	 */
+	public static Raster generateAccumulatedCostMap(IntRaster source, Raster discreteCost, double costDistance, AnalysisSettings settings)
+	{
+		return generateAccumulatedCostMap(source, discreteCost, costDistance, settings, null);
+	}
+
+	/**
+	 * Calculates the accumulated cost map with the engine chosen in settings, recording the predecessor of every cell
+	 * @param source raster representing the source to which the least cost path from each cell is calculated, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param settings analysis settings (accumulatedCostEngine and monitor, and delta and parallelism for DELTA_STEPPING)
+	 * @param predecessors raster that is filled with the direction (index into MapUtil.NEIGHBOR_DX/NEIGHBOR_DY) from every cell to the neighbor its
+	 * accumulated cost is reached through, MapUtil.NO_PREDECESSOR for source cells and cells that were not reached, or null
+	 * @returns accumulated cost raster
+	 * @throws IllegalArgumentException if arguments other than predecessors are null or the dimensions of discreteCost, source and predecessors are not the same or dimensions are 0
+	 * @throws java.util.concurrent.CancellationException if settings.monitor is cancelled
+	 */
+	public static Raster generateAccumulatedCostMap(IntRaster source, Raster discreteCost, double costDistance, AnalysisSettings settings, ByteRaster predecessors)
+	{
+		if(settings == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(settings.accumulatedCostEngine == MapUtil.AccumulatedCostEngines.DELTA_STEPPING) {
+			return DeltaSteppingAnalysis.generateAccumulatedCostMap(source, discreteCost, costDistance, settings.delta, settings.parallelism, predecessors, settings.monitor);
+		}
+		checkArguments(source, discreteCost, predecessors);
+		return search(source, discreteCost, costDistance, -1, -1, null, null, predecessors, settings.monitor);
+	}
+
+	/**
+	 * Calculates the accumulated cost map in single precision (see MapUtil.Precisions), recording the predecessor of every cell.
+	 * Every step is added in double precision and the sum is rounded to a float once, so the accumulated cost of a cell reached in k steps
+	 * is within a relative (k + 1) * 2^-24 of the double precision cost of the same path.
+	 * @param source raster representing the source, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost single precision discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param predecessors raster that is filled with the predecessor directions (see generateAccumulatedCostMap), or null
+	 * @param monitor progress and cancellation of the search, or null
+	 * @returns single precision accumulated cost raster
+	 * @throws IllegalArgumentException if arguments other than predecessors and monitor are null or the dimensions of discreteCost, source and predecessors are not the same or dimensions are 0
+	 * @throws java.util.concurrent.CancellationException if monitor is cancelled
+	 */
+	public static FloatRaster generateAccumulatedCostMap(IntRaster source, FloatRaster discreteCost, double costDistance, ByteRaster predecessors, AnalysisMonitor monitor)
+	{
+		checkArguments(source, discreteCost, predecessors);
+		return floatSearch(source, discreteCost, costDistance, -1, -1, null, null, predecessors, monitor);
+	}
+
+	/**
+	 * Calculates the accumulated cost from the source to a single start cell with A* in single precision (see generateAccumulatedCostMap above)
+	 * @param source raster representing the source, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost single precision discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param startX column of the start cell
+	 * @param startY row of the start cell
+	 * @param predecessors raster that is filled with the predecessor directions (see generateAccumulatedCostMap), or null
+	 * @param monitor progress and cancellation of the search, or null
+	 * @returns partial single precision accumulated cost raster: settled cells (including the start and the cells of its least cost path), Float.POSITIVE_INFINITY for all other cells
+	 * @throws IllegalArgumentException if arguments other than predecessors and monitor are null, the dimensions of discreteCost, source and predecessors are not the same or dimensions are 0, or start is outside the raster
+	 * @throws java.util.concurrent.CancellationException if monitor is cancelled
+	 */
+	public static FloatRaster generatePointToPointCostMap(IntRaster source, FloatRaster discreteCost, double costDistance, int startX, int startY, ByteRaster predecessors, AnalysisMonitor monitor)
+	{
+		checkArguments(source, discreteCost, predecessors);
+	    if(startX < 0 || startX >= discreteCost.getWidth() || startY < 0 || startY >= discreteCost.getHeight()) {
+	    	throw new IllegalArgumentException("Start is outside of the map.");
+	    }
+	    return floatSearch(source, discreteCost, costDistance, startX, startY, null, null, predecessors, monitor);
+	}
+
+	/**
+	 * Calculates the accumulated cost from the source to a single start cell with A*, settling only the cells needed to reach it.
+	 * The search is guided by an admissible octile heuristic: every step costs at least costDistance (or costDistance * sqrt(2)
+	 * diagonally) plus the smallest discrete cost on the map.
+	 * @param source raster representing the source, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param startX column of the start cell
+	 * @param startY row of the start cell
+	 * @returns partial accumulated cost raster: exact for settled cells (including the start and the cells of its least cost path), Double.POSITIVE_INFINITY for all other cells
+	 * @throws IllegalArgumentException if arguments are null, the dimensions of discreteCost and source are not the same or dimensions are 0, or start is outside the raster
+	 */
+	public static Raster generatePointToPointCostMap(IntRaster source, Raster discreteCost, double costDistance, int startX, int startY)
+	{
+		return generatePointToPointCostMap(source, discreteCost, costDistance, startX, startY, null);
+	}
+
+	/**
+	 * Calculates the accumulated cost from the source to a single start cell with A*, recording the predecessor of every settled cell
+	 * @param source raster representing the source, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param startX column of the start cell
+	 * @param startY row of the start cell
+	 * @param predecessors raster that is filled with the predecessor directions (see generateAccumulatedCostMap), or null
+	 * @returns partial accumulated cost raster: exact for settled cells (including the start and the cells of its least cost path), Double.POSITIVE_INFINITY for all other cells
+	 * @throws IllegalArgumentException if arguments other than predecessors are null, the dimensions of discreteCost, source and predecessors are not the same or dimensions are 0, or start is outside the raster
+	 */
+	public static Raster generatePointToPointCostMap(IntRaster source, Raster discreteCost, double costDistance, int startX, int startY, ByteRaster predecessors)
+	{
+		return generatePointToPointCostMap(source, discreteCost, costDistance, startX, startY, predecessors, null);
+	}
+
+	/**
+	 * Calculates the accumulated cost from the source to a single start cell with A*, recording the predecessor of every settled cell
+	 * @param source raster representing the source, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param startX column of the start cell
+	 * @param startY row of the start cell
+	 * @param predecessors raster that is filled with the predecessor directions (see generateAccumulatedCostMap), or null
+	 * @param monitor progress and cancellation of the search, or null
+	 * @returns partial accumulated cost raster: exact for settled cells (including the start and the cells of its least cost path), Double.POSITIVE_INFINITY for all other cells
+	 * @throws IllegalArgumentException if arguments other than predecessors and monitor are null, the dimensions of discreteCost, source and predecessors are not the same or dimensions are 0, or start is outside the raster
+	 * @throws java.util.concurrent.CancellationException if monitor is cancelled
+	 */
+	public static Raster generatePointToPointCostMap(IntRaster source, Raster discreteCost, double costDistance, int startX, int startY, ByteRaster predecessors, AnalysisMonitor monitor)
+	{
+		checkArguments(source, discreteCost, predecessors);
+	    if(startX < 0 || startX >= discreteCost.getWidth() || startY < 0 || startY >= discreteCost.getHeight()) {
+	    	throw new IllegalArgumentException("Start is outside of the map.");
+	    }
+	    return search(source, discreteCost, costDistance, startX, startY, null, null, predecessors, monitor);
+	}
+
+	/**
+	 * Calculates the accumulated cost map using only the cells inside a corridor (paths may not leave it)
+	 * @param source raster representing the source, where the source cells are given a non-zero value and all others cells are 0 (source cells outside the corridor are ignored)
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param corridor row-major flags (index y * width + x) that are true for the cells that may be used
+	 * @returns accumulated cost raster within the corridor, Double.POSITIVE_INFINITY outside of it
+	 * @throws IllegalArgumentException if arguments are null, the dimensions of discreteCost and source are not the same or dimensions are 0, or corridor does not match the dimensions
+	 */
+	public static Raster generateCorridorCostMap(IntRaster source, Raster discreteCost, double costDistance, boolean[] corridor)
+	{
+		return generateCorridorCostMap(source, discreteCost, costDistance, corridor, null);
+	}
+
+	/**
+	 * Calculates the accumulated cost map using only the cells inside a corridor, recording the predecessor of every cell
+	 * @param source raster representing the source, where the source cells are given a non-zero value and all others cells are 0 (source cells outside the corridor are ignored)
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param corridor row-major flags (index y * width + x) that are true for the cells that may be used
+	 * @param predecessors raster that is filled with the predecessor directions (see generateAccumulatedCostMap), or null
+	 * @returns accumulated cost raster within the corridor, Double.POSITIVE_INFINITY outside of it
+	 * @throws IllegalArgumentException if arguments other than predecessors are null, the dimensions of discreteCost, source and predecessors are not the same or dimensions are 0, or corridor does not match the dimensions
+	 */
+	public static Raster generateCorridorCostMap(IntRaster source, Raster discreteCost, double costDistance, boolean[] corridor, ByteRaster predecessors)
+	{
+		return generateCorridorCostMap(source, discreteCost, costDistance, corridor, predecessors, null);
+	}
+
+	/**
+	 * Calculates the accumulated cost map using only the cells inside a corridor, recording the predecessor of every cell
+	 * @param source raster representing the source, where the source cells are given a non-zero value and all others cells are 0 (source cells outside the corridor are ignored)
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param corridor row-major flags (index y * width + x) that are true for the cells that may be used
+	 * @param predecessors raster that is filled with the predecessor directions (see generateAccumulatedCostMap), or null
+	 * @param monitor progress and cancellation of the search, or null
+	 * @returns accumulated cost raster within the corridor, Double.POSITIVE_INFINITY outside of it
+	 * @throws IllegalArgumentException if arguments other than predecessors and monitor are null, the dimensions of discreteCost, source and predecessors are not the same or dimensions are 0, or corridor does not match the dimensions
+	 * @throws java.util.concurrent.CancellationException if monitor is cancelled
+	 */
+	public static Raster generateCorridorCostMap(IntRaster source, Raster discreteCost, double costDistance, boolean[] corridor, ByteRaster predecessors, AnalysisMonitor monitor)
+	{
+		checkArguments(source, discreteCost, predecessors);
+		if(corridor == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+	    if(corridor.length != discreteCost.getWidth()*discreteCost.getHeight()) {
+	        throw new IllegalArgumentException("Illegal dimensions of corridor.");
+	    }
+	    return search(source, discreteCost, costDistance, -1, -1, null, corridor, predecessors, monitor);
+	}
+
+	/**
+	 * Calculates the accumulated cost from the source until every target cell is settled (Dijkstra, stopping early), recording the predecessor of every settled cell
+	 * @param source raster representing the source, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost discrete cost raster (only read, so concurrent searches can share it)
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param targets cells to settle, as (x, y) pairs (an empty list settles every cell)
+	 * @param predecessors raster that is filled with the predecessor directions (see generateAccumulatedCostMap), or null
+	 * @param monitor progress and cancellation of the search, or null
+	 * @returns partial accumulated cost raster: exact for settled cells (including every target that can be reached), Double.POSITIVE_INFINITY for all other cells
+	 * @throws IllegalArgumentException if arguments other than predecessors and monitor are null, the dimensions of discreteCost, source and predecessors are not the same or dimensions are 0, or a target is outside the raster
+	 * @throws java.util.concurrent.CancellationException if monitor is cancelled
+	 */
+	public static Raster generateMultiTargetCostMap(IntRaster source, Raster discreteCost, double costDistance, List<Pair<Integer, Integer>> targets, ByteRaster predecessors, AnalysisMonitor monitor)
+	{
+		checkArguments(source, discreteCost, predecessors);
+		if(targets == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		int width = discreteCost.getWidth();
+		int height = discreteCost.getHeight();
+		// distinct sorted cells, so that settling one is found by binary search
+		int[] stopCells = new int[targets.size()];
+		for(int i = 0; i < stopCells.length; i++) {
+			Pair<Integer, Integer> target = targets.get(i);
+			if(target == null || target.getFirst() == null || target.getSecond() == null) {
+				throw new IllegalArgumentException("Null arguments.");
+			}
+			int x = target.getFirst();
+			int y = target.getSecond();
+			if(x < 0 || x >= width || y < 0 || y >= height) {
+				throw new IllegalArgumentException("Target is outside of the map.");
+			}
+			stopCells[i] = y*width + x;
+		}
+		Arrays.sort(stopCells);
+		int distinct = 0;
+		for(int i = 0; i < stopCells.length; i++) {
+			if(i == 0 || stopCells[i] != stopCells[i - 1]) stopCells[distinct++] = stopCells[i];
+		}
+		return search(source, discreteCost, costDistance, -1, -1, distinct > 0 ? Arrays.copyOf(stopCells, distinct) : null, null, predecessors, monitor);
+	}
+
+	/**
+	 * Derives the predecessor direction of every cell from an accumulated cost map: the first neighbor (in MapUtil.NEIGHBOR_DX/NEIGHBOR_DY order)
+	 * whose accumulated cost plus the step to the cell gives exactly the accumulated cost of the cell
+	 * @param source raster representing the source the accumulated cost map was calculated for
+	 * @param discreteCost discrete cost raster the accumulated cost map was calculated with
+	 * @param accumulatedCost accumulated cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param predecessors raster that is filled with the predecessor directions (see generateAccumulatedCostMap)
+	 * @throws IllegalArgumentException if arguments are null or the dimensions of the rasters are not the same or dimensions are 0
+	 */
+	public static void generatePredecessors(IntRaster source, Raster discreteCost, Raster accumulatedCost, double costDistance, ByteRaster predecessors)
+	{
+		if(predecessors == null || accumulatedCost == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		checkArguments(source, discreteCost, predecessors);
+		if(!discreteCost.sameDimensions(accumulatedCost)) {
+			throw new IllegalArgumentException("Illegal dimensions of accumulatedCost.");
+		}
+		derivePredecessors(source, discreteCost.compact().getData(), accumulatedCost.compact().getData(), costDistance, predecessors, null);
+	}
+
+	/**
+	 * Derives predecessor directions (see generatePredecessors) in parallel row bands if pool is not null
+	 * @param discrete compact discrete costs
+	 * @param accumulated compact accumulated costs
+	 */
+	static void derivePredecessors(final IntRaster source, final double[] discrete, final double[] accumulated, final double costDistance,
+			final ByteRaster predecessors, ForkJoinPool pool) {
+		final int width = source.getWidth();
+		final int height = source.getHeight();
+		final double diagonalDistance = costDistance*Math.sqrt(2);
+		final int[] sourceData = source.getData();
+		final byte[] predecessorData = predecessors.getData();
+		RowBands.run(pool, height, new RowBands.Kernel() {
+			@Override
+			public void run(int fromY, int toY) {
+				for(int y = fromY; y < toY; y++) {
+					for(int x = 0; x < width; x++) {
+						int cell = y*width + x;
+						byte direction = MapUtil.NO_PREDECESSOR;
+						if(sourceData[source.index(x, y)] == 0 && accumulated[cell] < Double.POSITIVE_INFINITY) {
+							for(int n = 0; n < MapUtil.NEIGHBOR_COUNT; n++) {
+								int nx = x + MapUtil.NEIGHBOR_DX[n];
+								int ny = y + MapUtil.NEIGHBOR_DY[n];
+								if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+								double distance = MapUtil.isDiagonal(n) ? diagonalDistance : costDistance;
+								if(accumulated[ny*width + nx] + distance + discrete[cell] == accumulated[cell]) {
+									direction = (byte) n;
+									break;
+								}
+							}
+						}
+						predecessorData[predecessors.index(x, y)] = direction;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * @throws IllegalArgumentException if source or discreteCost is null or the dimensions of discreteCost, source and predecessors (if not null) are not the same or are 0
+	 */
+	private static void checkArguments(IntRaster source, Grid discreteCost, ByteRaster predecessors) {
+		if(discreteCost == null || source == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+	    if(discreteCost.getWidth() == 0 || discreteCost.getHeight() == 0 || discreteCost.getWidth() != source.getWidth() || discreteCost.getHeight() != source.getHeight()) {
+	        throw new IllegalArgumentException("Illegal dimensions of discreteCost and source.");
+	    }
+	    if(predecessors != null && (predecessors.getWidth() != discreteCost.getWidth() || predecessors.getHeight() != discreteCost.getHeight())) {
+	    	throw new IllegalArgumentException("Illegal dimensions of predecessors.");
+	    }
+	}
+
+	/**
+	 * Repairs an accumulated cost map after some cells of the discrete cost map changed, instead of recalculating it.
+	 * Cells whose previous cost depended on a cell that became more expensive are invalidated and re-seeded from their valid neighbors,
+	 * cells that became cheaper are lowered, and the changes are propagated in order of accumulated cost, so only the affected region is searched.
+	 * Falls back to generateAccumulatedCostMap when more than maxRepairFraction of the cells would have to be repaired.
+	 * @param source raster representing the source (the same as for previousAccumulatedCost)
+	 * @param previousDiscreteCost discrete cost raster previousAccumulatedCost was calculated with
+	 * @param previousAccumulatedCost accumulated cost raster of every cell (as returned by generateAccumulatedCostMap)
+	 * @param discreteCost new discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next (the same as for previousAccumulatedCost)
+	 * @param changedCells cells (y * width + x) whose discrete cost differs between previousDiscreteCost and discreteCost
+	 * @param maxRepairFraction largest fraction of the cells worth repairing
+	 * @returns accumulated cost raster for discreteCost (previousAccumulatedCost is not modified)
+	 * @throws IllegalArgumentException if arguments are null, the dimensions of the rasters are not the same or dimensions are 0, or a changed cell is outside the map
+	 */
+	public static Raster repairAccumulatedCostMap(IntRaster source, Raster previousDiscreteCost, Raster previousAccumulatedCost, Raster discreteCost,
+			double costDistance, int[] changedCells, double maxRepairFraction)
+	{
+		return repairAccumulatedCostMap(source, previousDiscreteCost, previousAccumulatedCost, discreteCost, costDistance, changedCells, maxRepairFraction, null);
+	}
+
+	/**
+	 * Repairs an accumulated cost map after some cells of the discrete cost map changed (see repairAccumulatedCostMap above), reporting to a monitor
+	 * @param source raster representing the source (the same as for previousAccumulatedCost)
+	 * @param previousDiscreteCost discrete cost raster previousAccumulatedCost was calculated with
+	 * @param previousAccumulatedCost accumulated cost raster of every cell (as returned by generateAccumulatedCostMap)
+	 * @param discreteCost new discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next (the same as for previousAccumulatedCost)
+	 * @param changedCells cells (y * width + x) whose discrete cost differs between previousDiscreteCost and discreteCost
+	 * @param maxRepairFraction largest fraction of the cells worth repairing
+	 * @param monitor progress and cancellation of the repair, or null
+	 * @returns accumulated cost raster for discreteCost (previousAccumulatedCost is not modified)
+	 * @throws IllegalArgumentException if arguments other than monitor are null, the dimensions of the rasters are not the same or dimensions are 0, or a changed cell is outside the map
+	 * @throws java.util.concurrent.CancellationException if monitor is cancelled
+	 */
+	public static Raster repairAccumulatedCostMap(IntRaster source, Raster previousDiscreteCost, Raster previousAccumulatedCost, Raster discreteCost,
+			double costDistance, int[] changedCells, double maxRepairFraction, AnalysisMonitor monitor)
+	{
+		if(discreteCost == null || source == null || previousDiscreteCost == null || previousAccumulatedCost == null || changedCells == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+
+	    if(discreteCost.getWidth() == 0 || discreteCost.getHeight() == 0 || discreteCost.getWidth() != source.getWidth() || discreteCost.getHeight() != source.getHeight()
+	    		|| !discreteCost.sameDimensions(previousDiscreteCost) || !discreteCost.sameDimensions(previousAccumulatedCost)) {
+	        throw new IllegalArgumentException("Illegal dimensions of discreteCost, previous rasters and source.");
+	    }
+	    int width = discreteCost.getWidth();
+	    int height = discreteCost.getHeight();
+	    int cellCount = width*height;
+	    for(int cell : changedCells) {
+	    	if(cell < 0 || cell >= cellCount) {
+	    		throw new IllegalArgumentException("Changed cell is outside of the map.");
+	    	}
+	    }
+	    long repairLimit = (long) (maxRepairFraction*cellCount);
+	    if(changedCells.length > repairLimit) {
+	    	return fullSearch(source, discreteCost, costDistance, monitor);
+	    }
+
+	    double diagonalDistance = costDistance*Math.sqrt(2);
+	    double[] previousDiscrete = previousDiscreteCost.compact().getData();
+	    double[] discrete = discreteCost.compact().getData();
+
+	    // start from a copy of the previous surface
+	    Raster accumulatedCost = new Raster(width, height);
+	    double[] accumulated = accumulatedCost.getData();
+	    Raster previous = previousAccumulatedCost.compact();
+	    System.arraycopy(previous.getData(), 0, accumulated, 0, cellCount);
+
+	    boolean[] isSource = new boolean[cellCount];
+	    int[] sourceData = source.getData();
+	    for(int y = 0; y < height; y++) {
+	    	int row = source.index(0, y);
+	        for(int x = 0; x < width; x++) {
+	        	isSource[y*width + x] = sourceData[row + x] != 0;
 	        }
 	    }
-	    
-	    double[][] accumulatedCost = new double[width][height];
-	    
+
+	    // invalidate the cells that became more expensive and every cell whose previous cost was reached through an invalid cell
+	    boolean[] invalid = new boolean[cellCount];
+	    IntList invalidCells = new IntList();
+	    for(int cell : changedCells) {
+	    	if(!isSource[cell] && !invalid[cell] && discrete[cell] > previousDiscrete[cell]) {
+	    		invalid[cell] = true;
+	    		invalidCells.add(cell);
+	    	}
+	    }
+	    for(int i = 0; i < invalidCells.size(); i++) {
+	    	int cell = invalidCells.get(i);
+	    	int x = cell % width;
+	        int y = cell / width;
+	    	for(int n = 0; n < MapUtil.NEIGHBOR_COUNT; n++) {
+	        	int nx = x + MapUtil.NEIGHBOR_DX[n];
+	        	int ny = y + MapUtil.NEIGHBOR_DY[n];
+	        	if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+	        	int neighbor = ny*width + nx;
+	        	if(invalid[neighbor] || isSource[neighbor] || accumulated[neighbor] == Double.POSITIVE_INFINITY) continue;
+	        	double distance = MapUtil.isDiagonal(n) ? diagonalDistance : costDistance;
+	        	// the previous cost of neighbor was reached through cell
+	        	if(accumulated[neighbor] == accumulated[cell] + distance + previousDiscrete[neighbor]) {
+	        		invalid[neighbor] = true;
+	        		invalidCells.add(neighbor);
+	        	}
+	    	}
+	    	if(invalidCells.size() > repairLimit) {
+	    		return fullSearch(source, discreteCost, costDistance, monitor);
+	    	}
+	    }
+	    for(int i = 0; i < invalidCells.size(); i++) {
+	    	accumulated[invalidCells.get(i)] = Double.POSITIVE_INFINITY;
+	    }
+
+	    // seed the invalid cells from their valid neighbors and lower the cells that became cheaper
+	    IndexedCellHeap toEvaluate = new IndexedCellHeap(cellCount);
+	    for(int i = 0; i < invalidCells.size(); i++) {
+	    	int cell = invalidCells.get(i);
+	    	accumulated[cell] = cheapestFromNeighbors(cell, accumulated, discrete, width, height, costDistance, diagonalDistance);
+	    	if(accumulated[cell] < Double.POSITIVE_INFINITY) toEvaluate.push(cell, accumulated[cell]);
+	    }
+	    for(int cell : changedCells) {
+	    	if(isSource[cell] || invalid[cell] || !(discrete[cell] < previousDiscrete[cell])) continue;
+	    	double cellCost = cheapestFromNeighbors(cell, accumulated, discrete, width, height, costDistance, diagonalDistance);
+	    	if(cellCost < accumulated[cell]) {
+	    		accumulated[cell] = cellCost;
+	    		toEvaluate.push(cell, cellCost);
+	    	}
+	    }
+
+	    // propagate in order of accumulated cost, as in search
+	    long repairedCount = 0;
 	    while(!toEvaluate.isEmpty()) {
-	    	Pair<Double, Pair<Integer, Integer>> eval = toEvaluate.removeFirst();
-	        Pair<Integer, Integer> evalCoor = eval.getSecond();
-	        
-	        // Check that this cell has not been evaluated yet
-	        if(status[evalCoor.getFirst()][evalCoor.getSecond()] == EVALUATED) continue;
-	        
-	        double accumulatedCellCost;
-	        
-	        // if source cell
-	        if(source[evalCoor.getFirst()][evalCoor.getSecond()] != 0) {
-	            accumulatedCellCost = 0;
-	        }
-	        else {
-	        	// Accumulated Cost = (accumulated cost of neighbor + distance cost of cell) + cost of traversing a cell
-	        	double neighborCostPlusDistance = eval.getFirst();
-	        	accumulatedCellCost = neighborCostPlusDistance + discreteCost[evalCoor.getFirst()][evalCoor.getSecond()];
-	        }
-	        
-	        
-	        // update accumulatedCost
-	        accumulatedCost[evalCoor.getFirst()][evalCoor.getSecond()] = accumulatedCellCost;
-	        
-	        // update status of eval to evaluated
-	        status[evalCoor.getFirst()][evalCoor.getSecond()] = EVALUATED;
-	        
-	        // add neighbor coordinate the accumulated cost of the current cell to toEvalute if that cell does not have the status of 2 yet
-	        // add down
-	        if(evalCoor.getSecond() + 1 < height && status[evalCoor.getFirst()][evalCoor.getSecond() + 1] != EVALUATED) {
-	            toEvaluate.add(accumulatedCellCost + costDistance, evalCoor.getFirst(), evalCoor.getSecond() + 1);
-	            status[evalCoor.getFirst()][evalCoor.getSecond() +  1] = DISCOVERED;
-	        }
-	        // add up
-	        if(evalCoor.getSecond() - 1 >= 0 && status[evalCoor.getFirst()][evalCoor.getSecond() -  1] != EVALUATED) {
-	            toEvaluate.add(accumulatedCellCost + costDistance, evalCoor.getFirst(), evalCoor.getSecond() - 1);
-	            status[evalCoor.getFirst()][evalCoor.getSecond() -  1] = DISCOVERED;
+	    	int cell = toEvaluate.removeFirst();
+	    	repairedCount++;
+	    	if(monitor != null && repairedCount % MONITOR_INTERVAL == 0) {
+	    		monitor.checkCancelled();
+	    		// the repair settles at most repairLimit cells in most cases
+	    		monitor.progress(Math.min(1, (double) repairedCount/Math.max(1, repairLimit)));
+	    	}
+	    	double accumulatedCellCost = accumulated[cell];
+	        int x = cell % width;
+	        int y = cell / width;
+	        for(int n = 0; n < MapUtil.NEIGHBOR_COUNT; n++) {
+	        	int nx = x + MapUtil.NEIGHBOR_DX[n];
+	        	int ny = y + MapUtil.NEIGHBOR_DY[n];
+	        	if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+	        	int neighbor = ny*width + nx;
+	        	if(isSource[neighbor]) continue;
+	        	double distance = MapUtil.isDiagonal(n) ? diagonalDistance : costDistance;
+	        	double neighborCost = accumulatedCellCost + distance + discrete[neighbor];
+	        	if(neighborCost < accumulated[neighbor]) {
+	        		accumulated[neighbor] = neighborCost;
+	        		toEvaluate.push(neighbor, neighborCost);
+	        	}
 	        }
-	        // add right
-	        if(evalCoor.getFirst() + 1 < width && status[evalCoor.getFirst() + 1][evalCoor.getSecond()] != EVALUATED) {
-	            toEvaluate.add(accumulatedCellCost + costDistance, evalCoor.getFirst() + 1, evalCoor.getSecond());
-	            status[evalCoor.getFirst() + 1][evalCoor.getSecond()] = DISCOVERED;
+	    }
+	    if(monitor != null) monitor.searchFinished(repairedCount, toEvaluate.getPushCount(), toEvaluate.getDecreaseKeyCount(), 0, toEvaluate.getPeakSize());
+	    return accumulatedCost;
+	}
+
+	/**
+	 * Full Dijkstra search, for when a repair would touch too many cells
+	 */
+	private static Raster fullSearch(IntRaster source, Raster discreteCost, double costDistance, AnalysisMonitor monitor) {
+		return search(source, discreteCost, costDistance, -1, -1, null, null, null, monitor);
+	}
+
+	/**
+	 * @return the least accumulated cost of cell through any of its neighbors
+	 */
+	private static double cheapestFromNeighbors(int cell, double[] accumulated, double[] discrete, int width, int height, double costDistance, double diagonalDistance) {
+		int x = cell % width;
+		int y = cell / width;
+		double cheapest = Double.POSITIVE_INFINITY;
+		for(int n = 0; n < MapUtil.NEIGHBOR_COUNT; n++) {
+        	int nx = x + MapUtil.NEIGHBOR_DX[n];
+        	int ny = y + MapUtil.NEIGHBOR_DY[n];
+        	if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+        	double distance = MapUtil.isDiagonal(n) ? diagonalDistance : costDistance;
+        	double cost = accumulated[ny*width + nx] + distance + discrete[cell];
+        	if(cost < cheapest) cheapest = cost;
+		}
+		return cheapest;
+	}
+
+	/**
+	 * Least cost search from the source cells (Dijkstra, or A* towards a target cell).
+	 * floatSearch is the same loop in single precision: any change to the loop that does not depend on the precision is made in both.
+	 * @param targetX column of the target cell, or -1 to settle every cell
+	 * @param targetY row of the target cell, or -1 to settle every cell
+	 * @param stopCells sorted cells (y * width + x) to stop after settling all of, or null to settle every cell (without a target)
+	 * @param corridor flags of the cells that may be used, or null to use every cell
+	 * @param predecessors raster to fill with predecessor directions, or null
+	 * @param monitor checked for cancellation and told the fraction of cells settled every MONITOR_INTERVAL cells, or null
+	 * @return accumulated cost raster, Double.POSITIVE_INFINITY for cells that were not settled
+	 */
+	private static Raster search(IntRaster source, Raster discreteCost, double costDistance, int targetX, int targetY, int[] stopCells, boolean[] corridor,
+			ByteRaster predecessors, AnalysisMonitor monitor) {
+	    int width = discreteCost.getWidth();
+	    int height = discreteCost.getHeight();
+	    double diagonalDistance = costDistance*Math.sqrt(2);
+	    boolean toTarget = targetX >= 0;
+
+	    // work on contiguous rows so that a cell index is y * width + x in every array
+	    double[] discrete = discreteCost.compact().getData();
+
+	    // the heuristic needs the cheapest discrete cost on the map
+	    double minDiscreteCost = 0;
+	    if(toTarget) {
+	    	minDiscreteCost = Double.POSITIVE_INFINITY;
+	    	for(int cell = 0; cell < discrete.length; cell++) {
+	    		if(discrete[cell] < minDiscreteCost) minDiscreteCost = discrete[cell];
+	    	}
+	    	minDiscreteCost = Math.max(0, minDiscreteCost);
+	    }
+	    int target = toTarget ? targetY*width + targetX : -1;
+	    int stopsLeft = stopCells != null ? stopCells.length : 0;
+
+	    boolean[] evaluated = new boolean[width*height];
+	    IndexedCellHeap toEvaluate = new IndexedCellHeap(width*height);
+
+	    Raster accumulatedCost = new Raster(width, height);
+	    double[] accumulated = accumulatedCost.getData();
+	    Arrays.fill(accumulated, Double.POSITIVE_INFINITY);
+	    byte[] predecessor = predecessors != null ? predecessors.getData() : null;
+	    if(predecessors != null) {
+	    	for(int y = 0; y < height; y++) {
+	    		Arrays.fill(predecessor, predecessors.index(0, y), predecessors.index(width, y), MapUtil.NO_PREDECESSOR);
+	    	}
+	    }
+
+	    // add all source cells to toEvaluate
+	    int[] sourceData = source.getData();
+	    for(int y = 0; y < height; y++) {
+	    	int row = source.index(0, y);
+	        for(int x = 0; x < width; x++) {
+	            int cell = y*width + x;
+	            if(sourceData[row + x] != 0 && (corridor == null || corridor[cell])) {
+	            	accumulated[cell] = 0;
+	                toEvaluate.push(cell, toTarget ? heuristic(x, y, targetX, targetY, costDistance, diagonalDistance, minDiscreteCost) : 0);
+	            }
 	        }
-	        // add left
-	        if(evalCoor.getFirst() - 1 >= 0 && status[evalCoor.getFirst() - 1][evalCoor.getSecond()] != EVALUATED) {
-	            toEvaluate.add(accumulatedCellCost + costDistance, evalCoor.getFirst() -  1, evalCoor.getSecond());
-	            status[evalCoor.getFirst() - 1][evalCoor.getSecond()] = DISCOVERED;
+	    }
+
+	    if(monitor != null) monitor.checkCancelled();
+	    long evaluatedCount = 0;
+	    while(!toEvaluate.isEmpty()) {
+	    	// the first cell in toEvaluate has the least accumulated cost (plus heuristic), so its accumulated cost is final
+	    	int cell = toEvaluate.removeFirst();
+	    	double accumulatedCellCost = accumulated[cell];
+	        int x = cell % width;
+	        int y = cell / width;
+
+	        // update status of cell to evaluated
+	        evaluated[cell] = true;
+	        evaluatedCount++;
+	        if(cell == target) break;
+	        if(stopsLeft > 0 && Arrays.binarySearch(stopCells, cell) >= 0 && --stopsLeft == 0) break;
+	        if(monitor != null && evaluatedCount % MONITOR_INTERVAL == 0) {
+	        	monitor.checkCancelled();
+	        	monitor.progress((double) evaluatedCount/accumulated.length);
 	        }
-	        // add right-up
-	        if((evalCoor.getFirst() + 1 < width && evalCoor.getSecond() - 1 >= 0) && status[evalCoor.getFirst() + 1][evalCoor.getSecond() -  1] != EVALUATED) {
-	        	toEvaluate.add(accumulatedCellCost + costDistance*Math.sqrt(2), evalCoor.getFirst() + 1, evalCoor.getSecond() - 1);
-	            status[evalCoor.getFirst() + 1][evalCoor.getSecond() -  1] = DISCOVERED;
+
+	        // add (or lower) neighbors that have not been evaluated yet, where
+	        // Accumulated Cost = (accumulated cost of neighbor + distance cost of cell) + cost of traversing a cell
+	        for(int n = 0; n < MapUtil.NEIGHBOR_COUNT; n++) {
+	        	int nx = x + MapUtil.NEIGHBOR_DX[n];
+	        	int ny = y + MapUtil.NEIGHBOR_DY[n];
+	        	if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+	        	int neighbor = ny*width + nx;
+	        	if(evaluated[neighbor] || (corridor != null && !corridor[neighbor])) continue;
+	        	double distance = MapUtil.isDiagonal(n) ? diagonalDistance : costDistance;
+	        	double neighborCost = accumulatedCellCost + distance + discrete[neighbor];
+	        	if(neighborCost < accumulated[neighbor]) {
+	        		accumulated[neighbor] = neighborCost;
+	        		if(predecessor != null) predecessor[predecessors.index(nx, ny)] = (byte) MapUtil.NEIGHBOR_OPPOSITE[n];
+	        		toEvaluate.push(neighbor, toTarget ? neighborCost + heuristic(nx, ny, targetX, targetY, costDistance, diagonalDistance, minDiscreteCost) : neighborCost);
+	        	}
 	        }
-	        // add left-up
-	        if((evalCoor.getFirst() - 1 >= 0 && evalCoor.getSecond() - 1 >= 0)&& status[evalCoor.getFirst() - 1][evalCoor.getSecond() -  1] != EVALUATED) {
-	            toEvaluate.add(accumulatedCellCost + costDistance*Math.sqrt(2), evalCoor.getFirst() - 1, evalCoor.getSecond() - 1);
-	            status[evalCoor.getFirst() - 1][evalCoor.getSecond() -  1] = DISCOVERED;
+	    }
+
+	    // cells still waiting in toEvaluate only have a tentative cost
+	    if(toTarget || stopCells != null) {
+	    	for(int cell = 0; cell < accumulated.length; cell++) {
+	    		if(!evaluated[cell]) {
+	    			accumulated[cell] = Double.POSITIVE_INFINITY;
+	    			if(predecessor != null) predecessor[predecessors.index(cell % width, cell / width)] = MapUtil.NO_PREDECESSOR;
+	    		}
+	    	}
+	    }
+
+	    if(monitor != null) monitor.searchFinished(evaluatedCount, toEvaluate.getPushCount(), toEvaluate.getDecreaseKeyCount(), 0, toEvaluate.getPeakSize());
+
+	    // Return generated accumulatedCost map
+	    return accumulatedCost;
+	}
+
+	/**
+	 * search with single precision costs: the same loop, line for line, on float discrete and accumulated costs (including stopCells and
+	 * corridor). Each step is summed in double precision and rounded to a float once, when it is stored.
+	 * Any change to the loop that does not depend on the precision is made in both.
+	 * @param targetX column of the target cell, or -1 to settle every cell
+	 * @param targetY row of the target cell, or -1 to settle every cell
+	 * @param stopCells sorted cells (y * width + x) to stop after settling all of, or null to settle every cell (without a target)
+	 * @param corridor flags of the cells that may be used, or null to use every cell
+	 * @param predecessors raster to fill with predecessor directions, or null
+	 * @param monitor checked for cancellation and told the fraction of cells settled every MONITOR_INTERVAL cells, or null
+	 * @return accumulated cost raster, Float.POSITIVE_INFINITY for cells that were not settled
+	 */
+	private static FloatRaster floatSearch(IntRaster source, FloatRaster discreteCost, double costDistance, int targetX, int targetY, int[] stopCells,
+			boolean[] corridor, ByteRaster predecessors, AnalysisMonitor monitor) {
+	    int width = discreteCost.getWidth();
+	    int height = discreteCost.getHeight();
+	    double diagonalDistance = costDistance*Math.sqrt(2);
+	    boolean toTarget = targetX >= 0;
+
+	    // work on contiguous rows so that a cell index is y * width + x in every array
+	    float[] discrete = discreteCost.compact().getData();
+
+	    // the heuristic needs the cheapest discrete cost on the map
+	    double minDiscreteCost = 0;
+	    if(toTarget) {
+	    	minDiscreteCost = Double.POSITIVE_INFINITY;
+	    	for(int cell = 0; cell < discrete.length; cell++) {
+	    		if(discrete[cell] < minDiscreteCost) minDiscreteCost = discrete[cell];
+	    	}
+	    	minDiscreteCost = Math.max(0, minDiscreteCost);
+	    }
+	    int target = toTarget ? targetY*width + targetX : -1;
+	    int stopsLeft = stopCells != null ? stopCells.length : 0;
+
+	    boolean[] evaluated = new boolean[width*height];
+	    IndexedCellHeap toEvaluate = new IndexedCellHeap(width*height);
+
+	    FloatRaster accumulatedCost = new FloatRaster(width, height);
+	    float[] accumulated = accumulatedCost.getData();
+	    Arrays.fill(accumulated, Float.POSITIVE_INFINITY);
+	    byte[] predecessor = predecessors != null ? predecessors.getData() : null;
+	    if(predecessors != null) {
+	    	for(int y = 0; y < height; y++) {
+	    		Arrays.fill(predecessor, predecessors.index(0, y), predecessors.index(width, y), MapUtil.NO_PREDECESSOR);
+	    	}
+	    }
+
+	    // add all source cells to toEvaluate
+	    int[] sourceData = source.getData();
+	    for(int y = 0; y < height; y++) {
+	    	int row = source.index(0, y);
+	        for(int x = 0; x < width; x++) {
+	            int cell = y*width + x;
+	            if(sourceData[row + x] != 0 && (corridor == null || corridor[cell])) {
+	            	accumulated[cell] = 0;
+	                toEvaluate.push(cell, toTarget ? heuristic(x, y, targetX, targetY, costDistance, diagonalDistance, minDiscreteCost) : 0);
+	            }
 	        }
-	        //add right-down
-	        if((evalCoor.getFirst() + 1 < width && evalCoor.getSecond() + 1 < height) && status[evalCoor.getFirst() + 1][evalCoor.getSecond() + 1] != EVALUATED) {
-	            toEvaluate.add(accumulatedCellCost + costDistance*Math.sqrt(2), evalCoor.getFirst() + 1, evalCoor.getSecond() + 1);
-	            status[evalCoor.getFirst() + 1][evalCoor.getSecond() + 1] = DISCOVERED;
+	    }
+
+	    if(monitor != null) monitor.checkCancelled();
+	    long evaluatedCount = 0;
+	    while(!toEvaluate.isEmpty()) {
+	    	// the first cell in toEvaluate has the least accumulated cost (plus heuristic), so its accumulated cost is final
+	    	int cell = toEvaluate.removeFirst();
+	    	double accumulatedCellCost = accumulated[cell];
+	        int x = cell % width;
+	        int y = cell / width;
+
+	        // update status of cell to evaluated
+	        evaluated[cell] = true;
+	        evaluatedCount++;
+	        if(cell == target) break;
+	        if(stopsLeft > 0 && Arrays.binarySearch(stopCells, cell) >= 0 && --stopsLeft == 0) break;
+	        if(monitor != null && evaluatedCount % MONITOR_INTERVAL == 0) {
+	        	monitor.checkCancelled();
+	        	monitor.progress((double) evaluatedCount/accumulated.length);
 	        }
-	        //add left-down
-	        if((evalCoor.getFirst() - 1 >= 0 && evalCoor.getSecond() + 1 < height) && status[evalCoor.getFirst() - 1][evalCoor.getSecond() + 1] != EVALUATED) {
-	            toEvaluate.add(accumulatedCellCost + costDistance*Math.sqrt(2), evalCoor.getFirst() -  1, evalCoor.getSecond() + 1);
-	            status[evalCoor.getFirst() - 1][evalCoor.getSecond() + 1] = DISCOVERED;
+
+	        // add (or lower) neighbors that have not been evaluated yet, where
+	        // Accumulated Cost = (accumulated cost of neighbor + distance cost of cell) + cost of traversing a cell
+	        for(int n = 0; n < MapUtil.NEIGHBOR_COUNT; n++) {
+	        	int nx = x + MapUtil.NEIGHBOR_DX[n];
+	        	int ny = y + MapUtil.NEIGHBOR_DY[n];
+	        	if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+	        	int neighbor = ny*width + nx;
+	        	if(evaluated[neighbor] || (corridor != null && !corridor[neighbor])) continue;
+	        	double distance = MapUtil.isDiagonal(n) ? diagonalDistance : costDistance;
+	        	// summed in double precision and rounded once, when stored
+	        	float neighborCost = (float) (accumulatedCellCost + distance + discrete[neighbor]);
+	        	if(neighborCost < accumulated[neighbor]) {
+	        		accumulated[neighbor] = neighborCost;
+	        		if(predecessor != null) predecessor[predecessors.index(nx, ny)] = (byte) MapUtil.NEIGHBOR_OPPOSITE[n];
+	        		toEvaluate.push(neighbor, toTarget ? neighborCost + heuristic(nx, ny, targetX, targetY, costDistance, diagonalDistance, minDiscreteCost) : neighborCost);
+	        	}
 	        }
 	    }
-	    
+
+	    // cells still waiting in toEvaluate only have a tentative cost
+	    if(toTarget || stopCells != null) {
+	    	for(int cell = 0; cell < accumulated.length; cell++) {
+	    		if(!evaluated[cell]) {
+	    			accumulated[cell] = Float.POSITIVE_INFINITY;
+	    			if(predecessor != null) predecessor[predecessors.index(cell % width, cell / width)] = MapUtil.NO_PREDECESSOR;
+	    		}
+	    	}
+	    }
+
+	    if(monitor != null) monitor.searchFinished(evaluatedCount, toEvaluate.getPushCount(), toEvaluate.getDecreaseKeyCount(), 0, toEvaluate.getPeakSize());
+
 	    // Return generated accumulatedCost map
 	    return accumulatedCost;
 	}
 
+	/**
+	 * Admissible estimate of the accumulated cost between two cells: the octile distance times costDistance
+	 * plus the cheapest discrete cost for every step of the way
+	 */
+	static double heuristic(int x, int y, int targetX, int targetY, double costDistance, double diagonalDistance, double minDiscreteCost) {
+		int dx = Math.abs(x - targetX);
+		int dy = Math.abs(y - targetY);
+		int diagonalSteps = Math.min(dx, dy);
+		int straightSteps = Math.max(dx, dy) - diagonalSteps;
+		return straightSteps*costDistance + diagonalSteps*diagonalDistance + (straightSteps + diagonalSteps)*minDiscreteCost;
+	}
+
 }
@@ -0,0 +1,170 @@
+package algorithm;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Monitor that records where an analysis spends its time: for every phase the wall time, the bytes allocated by the thread running
+ * the analysis and, for the phases that search, the cells settled, queue pushes, decrease-keys, stale pops and peak frontier size.
+ * Use it as AnalysisSettings.monitor; subclasses that override a hook must call the overridden method to keep recording.
+ * A phase that runs again (after updated weightings) replaces its previous metrics.
+ */
+public class AnalysisMetrics extends AnalysisMonitor {
+	/**
+	 * Metrics of one phase. Search counters are summed over the searches of the phase, except peakFrontier which is their largest.
+	 */
+	public static class PhaseMetrics {
+		public long wallNanos;
+		public long cellsSettled;
+		public long pushes;
+		public long decreaseKeys;
+		public long stalePops;
+		public long peakFrontier;
+		// Bytes allocated by the thread running the phase (not by the threads it runs work on), or -1 if the JVM does not measure it
+		public long allocatedBytes = -1;
+		// Number of searches the phase ran
+		public int searches;
+
+		private PhaseMetrics copy() {
+			PhaseMetrics copy = new PhaseMetrics();
+			copy.wallNanos = wallNanos;
+			copy.cellsSettled = cellsSettled;
+			copy.pushes = pushes;
+			copy.decreaseKeys = decreaseKeys;
+			copy.stalePops = stalePops;
+			copy.peakFrontier = peakFrontier;
+			copy.allocatedBytes = allocatedBytes;
+			copy.searches = searches;
+			return copy;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder();
+			text.append(wallNanos/1000000).append(" ms");
+			if(searches > 0) {
+				text.append(", ").append(cellsSettled).append(" cells settled, ").append(pushes).append(" pushes, ")
+					.append(decreaseKeys).append(" decrease-keys, ").append(stalePops).append(" stale pops, peak frontier ").append(peakFrontier);
+			}
+			if(allocatedBytes >= 0) {
+				text.append(", ").append(allocatedBytes >> 20).append(" MB allocated");
+			}
+			return text.toString();
+		}
+	}
+
+	private final Map<MapUtil.AnalysisPhases, PhaseMetrics> phases = new EnumMap<MapUtil.AnalysisPhases, PhaseMetrics>(MapUtil.AnalysisPhases.class);
+	// Phase being recorded, or null between phases
+	private MapUtil.AnalysisPhases current;
+	private long startNanos;
+	private long startAllocatedBytes;
+
+	@Override
+	public synchronized void phaseStarted(MapUtil.AnalysisPhases phase) {
+		if(current != null) finishCurrent();
+		current = phase;
+		phases.put(phase, new PhaseMetrics());
+		startAllocatedBytes = allocatedBytes();
+		startNanos = System.nanoTime();
+	}
+
+	@Override
+	public synchronized void phaseFinished(MapUtil.AnalysisPhases phase) {
+		if(phase == current) finishCurrent();
+	}
+
+	@Override
+	public synchronized void searchFinished(long cellsSettled, long pushes, long decreaseKeys, long stalePops, long peakFrontier) {
+		if(current == null) return;
+		PhaseMetrics metrics = phases.get(current);
+		metrics.cellsSettled += cellsSettled;
+		metrics.pushes += pushes;
+		metrics.decreaseKeys += decreaseKeys;
+		metrics.stalePops += stalePops;
+		metrics.peakFrontier = Math.max(metrics.peakFrontier, peakFrontier);
+		metrics.searches++;
+	}
+
+	/**
+	 * @param phase phase of the analysis
+	 * @return copy of the metrics of the phase (so far, if it is running), or null if it has not run
+	 */
+	public synchronized PhaseMetrics getPhase(MapUtil.AnalysisPhases phase) {
+		PhaseMetrics metrics = phases.get(phase);
+		if(metrics == null) return null;
+		PhaseMetrics copy = metrics.copy();
+		if(phase == current) {
+			copy.wallNanos = System.nanoTime() - startNanos;
+		}
+		return copy;
+	}
+
+	/**
+	 * @return copies of the metrics of every phase that has run, in phase order
+	 */
+	public synchronized Map<MapUtil.AnalysisPhases, PhaseMetrics> getPhases() {
+		Map<MapUtil.AnalysisPhases, PhaseMetrics> copies = new EnumMap<MapUtil.AnalysisPhases, PhaseMetrics>(MapUtil.AnalysisPhases.class);
+		for(MapUtil.AnalysisPhases phase : phases.keySet()) {
+			copies.put(phase, getPhase(phase));
+		}
+		return copies;
+	}
+
+	/**
+	 * Forgets the metrics of every phase
+	 */
+	public synchronized void clear() {
+		phases.clear();
+		current = null;
+	}
+
+	/**
+	 * @return one line with the wall time of every phase that has run and the search counters of the accumulated cost phase
+	 */
+	public synchronized String summary() {
+		StringBuilder text = new StringBuilder();
+		for(Map.Entry<MapUtil.AnalysisPhases, PhaseMetrics> entry : getPhases().entrySet()) {
+			PhaseMetrics metrics = entry.getValue();
+			if(text.length() > 0) text.append(" | ");
+			text.append(entry.getKey().name().toLowerCase().replace('_', ' ')).append(' ').append(metrics.wallNanos/1000000).append(" ms");
+			if(metrics.searches > 0) {
+				text.append(" (").append(metrics.cellsSettled).append(" settled, ").append(metrics.pushes).append(" pushes, peak ")
+					.append(metrics.peakFrontier).append(')');
+			}
+		}
+		return text.toString();
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder text = new StringBuilder();
+		for(Map.Entry<MapUtil.AnalysisPhases, PhaseMetrics> entry : getPhases().entrySet()) {
+			text.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+		}
+		return text.toString();
+	}
+
+	private void finishCurrent() {
+		PhaseMetrics metrics = phases.get(current);
+		metrics.wallNanos = System.nanoTime() - startNanos;
+		long allocated = allocatedBytes();
+		metrics.allocatedBytes = allocated >= 0 && startAllocatedBytes >= 0 ? allocated - startAllocatedBytes : -1;
+		current = null;
+	}
+
+	/**
+	 * @return bytes allocated so far by the current thread, or -1 if the JVM does not measure it
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean hotSpotThreads = (com.sun.management.ThreadMXBean) threads;
+			if(hotSpotThreads.isThreadAllocatedMemorySupported() && hotSpotThreads.isThreadAllocatedMemoryEnabled()) {
+				return hotSpotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,69 @@
+package algorithm;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Progress and cancellation of a running analysis.
+ * The analysis reports each phase it starts and how far it is within the phase, and checks for cancellation between steps
+ * of its searches, so that cancel stops it with a CancellationException soon after it is called.
+ * Subclasses override phaseStarted and progress to display them; both are called on the thread that runs the analysis,
+ * as are phaseFinished and searchFinished (see AnalysisMetrics, which records them).
+ */
+public class AnalysisMonitor {
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Asks the analysis to stop at its next check (may be called from any thread)
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return true if cancel was called
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @throws CancellationException if cancel was called
+	 */
+	public void checkCancelled() {
+		if(cancelled) {
+			throw new CancellationException("Analysis cancelled.");
+		}
+	}
+
+	/**
+	 * Called when the analysis starts a phase. Does nothing by default.
+	 * @param phase phase that is starting
+	 */
+	public void phaseStarted(MapUtil.AnalysisPhases phase) {
+	}
+
+	/**
+	 * Called when the analysis finishes a phase. Does nothing by default.
+	 * @param phase phase that is finished
+	 */
+	public void phaseFinished(MapUtil.AnalysisPhases phase) {
+	}
+
+	/**
+	 * Called at the end of every accumulated cost search of the current phase (a phase may run several). Does nothing by default.
+	 * @param cellsSettled number of cells whose accumulated cost was settled
+	 * @param pushes number of cells added to the queue (or buckets) of the search
+	 * @param decreaseKeys number of times the key of a queued cell was lowered in place
+	 * @param stalePops number of queue entries that were skipped because the cell had been lowered or settled since
+	 * @param peakFrontier largest number of queued cells (or bucket entries)
+	 */
+	public void searchFinished(long cellsSettled, long pushes, long decreaseKeys, long stalePops, long peakFrontier) {
+	}
+
+	/**
+	 * Called as the current phase advances. Does nothing by default.
+	 * @param fraction estimated fraction of the current phase that is done, between 0 and 1
+	 */
+	public void progress(double fraction) {
+	}
+}
@@ -0,0 +1,45 @@
+package algorithm;
+
+/**
+ * Optional settings for an analysis.
+ * The defaults reproduce the standard analysis, so callers only need to change the fields they care about.
+ */
+public class AnalysisSettings {
+	// Method used to measure the distance from each cell to the nearest road
+	public MapUtil.DistanceMethods roadDistance = MapUtil.DistanceMethods.EUCLIDEAN;
+	
+	// Number of threads used to compute the discrete cost raster and by the DELTA_STEPPING engine (1 runs serially on the calling thread)
+	// The result is bit-identical for every level of parallelism.
+	public int parallelism = 1;
+	
+	// How the accumulated cost and path are found (POINT_TO_POINT leaves cells that were not needed at Double.POSITIVE_INFINITY)
+	public MapUtil.RoutingModes routing = MapUtil.RoutingModes.FULL_SURFACE;
+	
+	// Number of levels of the PYRAMID routing mode, each level halving the resolution of the one below (1 is a full resolution search)
+	public int pyramidLevels = 4;
+	
+	// Buffer in cells kept around the coarser path at each level of the PYRAMID routing mode
+	public int corridorWidth = 16;
+	
+	// How the PYRAMID routing mode combines discrete costs into coarser cells (MIN never overestimates a block, MEAN follows the average terrain)
+	public MapUtil.Aggregations pyramidAggregation = MapUtil.Aggregations.MEAN;
+	
+	// Engine for the full accumulated cost surface (both give the same surface)
+	public MapUtil.AccumulatedCostEngines accumulatedCostEngine = MapUtil.AccumulatedCostEngines.DIJKSTRA;
+	
+	// Bucket width of the DELTA_STEPPING engine, 0 or less picks one from the average edge weight
+	public double delta = 0;
+	
+	// Largest fraction of the cells that MapAnalysis.updateWeightings repairs before recalculating the accumulated cost from scratch
+	public double maxRepairFraction = 0.25;
+	
+	// Cache of the roads and altitude layer costs shared between analyses, so that new weightings only recombine the layers (null to not cache)
+	public LayerCostCache layerCostCache = null;
+	
+	// Precision of the discrete and accumulated cost surfaces (see MapUtil.Precisions for the error bounds of FLOAT)
+	public MapUtil.Precisions precision = MapUtil.Precisions.DOUBLE;
+	
+	// Progress and cancellation of the analysis, checked by the accumulated cost searches (null to not report progress).
+	// An AnalysisMetrics also records the time and search counters of every phase.
+	public AnalysisMonitor monitor = null;
+}
@@ -0,0 +1,106 @@
+package algorithm;
+
+/**
+ * Two dimensional grid of whole values from 0 to 255 stored row-major as unsigned bytes in a single flat array,
+ * for map layers read from 8-bit images in an eighth of the memory of a Raster.
+ * The value of cell (x, y) is data[y * stride + x] & 255, where stride >= width.
+ */
+public class ByteLayer implements Grid {
+	private final int width;
+	private final int height;
+	private final int stride;
+	private final byte[] data;
+
+	/**
+	 * Creates a zero filled layer
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @throws IllegalArgumentException if a dimension is negative
+	 */
+	public ByteLayer(int width, int height) {
+		this(width, height, width, new byte[Raster.checkedSize(width, height)]);
+	}
+
+	/**
+	 * Wraps an existing row-major array of unsigned bytes
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param stride distance in the array between the start of two consecutive rows
+	 * @param data row-major cell values
+	 * @throws IllegalArgumentException if the dimensions do not fit the data array
+	 */
+	public ByteLayer(int width, int height, int stride, byte[] data) {
+		if(data == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(width < 0 || height < 0 || stride < width || (height > 0 && (long) (height - 1) * stride + width > data.length)) {
+			throw new IllegalArgumentException("Illegal raster dimensions.");
+		}
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+		this.data = data;
+	}
+
+	@Override
+	public int getWidth() { return width; }
+	@Override
+	public int getHeight() { return height; }
+	public int getStride() { return stride; }
+	/**
+	 * @return the backing array of unsigned bytes (shared, not copied)
+	 */
+	public byte[] getData() { return data; }
+
+	/**
+	 * @return index into getData() of cell (x, y)
+	 */
+	public int index(int x, int y) {
+		return y * stride + x;
+	}
+
+	@Override
+	public double get(int x, int y) {
+		return data[y * stride + x] & 255;
+	}
+
+	/**
+	 * @param value new value of the cell, from 0 to 255
+	 * @throws IllegalArgumentException if value is not from 0 to 255
+	 */
+	public void set(int x, int y, int value) {
+		if(value < 0 || value > 255) {
+			throw new IllegalArgumentException("Illegal value.");
+		}
+		data[y * stride + x] = (byte) value;
+	}
+
+	/**
+	 * @return a new layer where every value is 255 - value
+	 */
+	public ByteLayer inverted() {
+		ByteLayer inverted = new ByteLayer(width, height);
+		for(int y = 0; y < height; y++) {
+			int row = y * stride;
+			for(int x = 0; x < width; x++) {
+				inverted.data[y * width + x] = (byte) ~data[row + x];
+			}
+		}
+		return inverted;
+	}
+
+	/**
+	 * @return copy of the layer as a raster
+	 */
+	public Raster toRaster() {
+		Raster raster = new Raster(width, height);
+		double[] values = raster.getData();
+		for(int y = 0; y < height; y++) {
+			int row = y * stride;
+			for(int x = 0; x < width; x++) {
+				values[y * width + x] = data[row + x] & 255;
+			}
+		}
+		return raster;
+	}
+}
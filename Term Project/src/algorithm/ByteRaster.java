@@ -0,0 +1,70 @@
+package algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Two dimensional grid of bytes stored row-major in a single flat array (used for predecessor directions).
+ * The value of cell (x, y) is stored at data[y * stride + x], where stride >= width.
+ */
+public class ByteRaster {
+	private final int width;
+	private final int height;
+	private final int stride;
+	private final byte[] data;
+
+	/**
+	 * Creates a raster with every cell set to value
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param value initial value of every cell
+	 * @throws IllegalArgumentException if a dimension is negative
+	 */
+	public ByteRaster(int width, int height, byte value) {
+		this(width, height, width, new byte[Raster.checkedSize(width, height)]);
+		if(value != 0) Arrays.fill(data, value);
+	}
+
+	/**
+	 * Wraps an existing row-major array
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param stride distance in the array between the start of two consecutive rows
+	 * @param data row-major cell values
+	 * @throws IllegalArgumentException if the dimensions do not fit the data array
+	 */
+	public ByteRaster(int width, int height, int stride, byte[] data) {
+		if(data == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(width < 0 || height < 0 || stride < width || (height > 0 && (long) (height - 1) * stride + width > data.length)) {
+			throw new IllegalArgumentException("Illegal raster dimensions.");
+		}
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+		this.data = data;
+	}
+
+	public int getWidth() { return width; }
+	public int getHeight() { return height; }
+	public int getStride() { return stride; }
+	/**
+	 * @return the backing array (shared, not copied)
+	 */
+	public byte[] getData() { return data; }
+
+	/**
+	 * @return index into getData() of cell (x, y)
+	 */
+	public int index(int x, int y) {
+		return y * stride + x;
+	}
+
+	public byte get(int x, int y) {
+		return data[y * stride + x];
+	}
+
+	public void set(int x, int y, byte value) {
+		data[y * stride + x] = value;
+	}
+}
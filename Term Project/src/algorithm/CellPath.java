@@ -0,0 +1,99 @@
+package algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Path as a compact list of cell coordinates, from the start to a source cell
+ */
+public class CellPath {
+	private int[] xs;
+	private int[] ys;
+	private int size;
+
+	private CellPath(int capacity) {
+		xs = new int[Math.max(1, capacity)];
+		ys = new int[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Follows the predecessor directions from the start until a cell without a predecessor (a source cell)
+	 * @param predecessors predecessor direction of every cell (index into MapUtil.NEIGHBOR_DX/NEIGHBOR_DY, or MapUtil.NO_PREDECESSOR)
+	 * @param startX column of the start cell
+	 * @param startY row of the start cell
+	 * @return path from the start, which is only the start if it has no predecessor
+	 * @throws IllegalArgumentException if predecessors is null, start is outside of it, or the directions lead outside of it or into a cycle
+	 */
+	public static CellPath fromPredecessors(ByteRaster predecessors, int startX, int startY) {
+		if(predecessors == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		int width = predecessors.getWidth();
+		int height = predecessors.getHeight();
+		if(startX < 0 || startX >= width || startY < 0 || startY >= height) {
+			throw new IllegalArgumentException("Start is outside of the map.");
+		}
+		byte[] data = predecessors.getData();
+		long cellCount = (long) width*height;
+
+		CellPath path = new CellPath(64);
+		int x = startX;
+		int y = startY;
+		path.add(x, y);
+		int direction;
+		while((direction = data[predecessors.index(x, y)]) != MapUtil.NO_PREDECESSOR) {
+			x += MapUtil.NEIGHBOR_DX[direction];
+			y += MapUtil.NEIGHBOR_DY[direction];
+			if(x < 0 || x >= width || y < 0 || y >= height || path.size >= cellCount) {
+				throw new IllegalArgumentException("Predecessors do not lead to a source.");
+			}
+			path.add(x, y);
+		}
+		return path;
+	}
+
+	private void add(int x, int y) {
+		if(size == xs.length) {
+			xs = Arrays.copyOf(xs, size*2);
+			ys = Arrays.copyOf(ys, size*2);
+		}
+		xs[size] = x;
+		ys[size] = y;
+		size++;
+	}
+
+	/**
+	 * @return number of cells in the path
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return column of the i-th cell of the path (0 is the start)
+	 */
+	public int getX(int i) {
+		if(i < 0 || i >= size) throw new IndexOutOfBoundsException();
+		return xs[i];
+	}
+
+	/**
+	 * @return row of the i-th cell of the path (0 is the start)
+	 */
+	public int getY(int i) {
+		if(i < 0 || i >= size) throw new IndexOutOfBoundsException();
+		return ys[i];
+	}
+
+	/**
+	 * @param width number of columns of the raster
+	 * @param height number of rows of the raster
+	 * @return the path represented as a raster where a 1 represents a path segment
+	 */
+	public IntRaster toRaster(int width, int height) {
+		IntRaster raster = new IntRaster(width, height);
+		for(int i = 0; i < size; i++) {
+			raster.set(xs[i], ys[i], 1);
+		}
+		return raster;
+	}
+}
@@ -0,0 +1,277 @@
+package algorithm;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Parallel accumulated cost engine based on delta-stepping (Meyer and Sanders, "Delta-stepping: a parallelizable shortest path algorithm").
+ * Cells are kept in buckets of width delta by tentative accumulated cost. The lowest non-empty bucket is emptied by relaxing
+ * its light edges (weight <= delta) in parallel until no cell falls back into it, then the heavy edges of every cell it settled
+ * are relaxed in parallel. Tentative costs live in one shared array and are lowered with an atomic compare-and-set minimum.
+ *
+ * Every relaxation uses the same expression as the Dijkstra engine, (accumulated cost of neighbor + distance cost) + discrete cost,
+ * and the final cost of a cell is the smallest of these over its neighbors, so the surface matches AccumulatedCostAnalysis.
+ */
+public class DeltaSteppingAnalysis {
+	// Smallest number of frontier cells worth handing to a separate task
+	private static final int MIN_CHUNK = 256;
+	// Upper bound on the number of buckets alive at once (a smaller delta is raised to respect it)
+	private static final int MAX_BUCKETS = 1 << 16;
+
+	/**
+	 * Calculates the accumulated cost map
+	 * @param source raster representing the source to which the least cost path from each cell is calculated, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param delta bucket width, or 0 or less to pick one from the average edge weight
+	 * @param parallelism number of threads (1 runs serially on the calling thread)
+	 * @returns accumulated cost raster
+	 * @throws IllegalArgumentException if arguments are null or the dimensions of discreteCost and source are not the same or dimensions are 0
+	 */
+	public static Raster generateAccumulatedCostMap(IntRaster source, Raster discreteCost, double costDistance, double delta, int parallelism) {
+		return generateAccumulatedCostMap(source, discreteCost, costDistance, delta, parallelism, null);
+	}
+
+	/**
+	 * Calculates the accumulated cost map and the predecessor of every cell.
+	 * Predecessors are derived from the finished surface in parallel (see AccumulatedCostAnalysis.generatePredecessors), since
+	 * the relaxations of a cell race each other.
+	 * @param source raster representing the source to which the least cost path from each cell is calculated, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param delta bucket width, or 0 or less to pick one from the average edge weight
+	 * @param parallelism number of threads (1 runs serially on the calling thread)
+	 * @param predecessors raster that is filled with the predecessor directions (see AccumulatedCostAnalysis.generateAccumulatedCostMap), or null
+	 * @returns accumulated cost raster
+	 * @throws IllegalArgumentException if arguments other than predecessors are null or the dimensions of discreteCost, source and predecessors are not the same or dimensions are 0
+	 */
+	public static Raster generateAccumulatedCostMap(IntRaster source, Raster discreteCost, double costDistance, double delta, int parallelism, ByteRaster predecessors) {
+		return generateAccumulatedCostMap(source, discreteCost, costDistance, delta, parallelism, predecessors, null);
+	}
+
+	/**
+	 * Calculates the accumulated cost map and the predecessor of every cell, reporting to a monitor between buckets
+	 * @param source raster representing the source to which the least cost path from each cell is calculated, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param delta bucket width, or 0 or less to pick one from the average edge weight
+	 * @param parallelism number of threads (1 runs serially on the calling thread)
+	 * @param predecessors raster that is filled with the predecessor directions (see AccumulatedCostAnalysis.generateAccumulatedCostMap), or null
+	 * @param monitor progress and cancellation of the search, or null
+	 * @returns accumulated cost raster
+	 * @throws IllegalArgumentException if arguments other than predecessors and monitor are null or the dimensions of discreteCost, source and predecessors are not the same or dimensions are 0
+	 * @throws java.util.concurrent.CancellationException if monitor is cancelled
+	 */
+	public static Raster generateAccumulatedCostMap(IntRaster source, Raster discreteCost, double costDistance, double delta, int parallelism, ByteRaster predecessors, AnalysisMonitor monitor) {
+		if(discreteCost == null || source == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(discreteCost.getWidth() == 0 || discreteCost.getHeight() == 0 || discreteCost.getWidth() != source.getWidth() || discreteCost.getHeight() != source.getHeight()) {
+			throw new IllegalArgumentException("Illegal dimensions of discreteCost and source.");
+		}
+		if(predecessors != null && (predecessors.getWidth() != discreteCost.getWidth() || predecessors.getHeight() != discreteCost.getHeight())) {
+			throw new IllegalArgumentException("Illegal dimensions of predecessors.");
+		}
+
+		ForkJoinPool pool = RowBands.newPool(parallelism);
+		try {
+			Raster accumulatedCost = search(source, discreteCost, costDistance, delta, pool, monitor);
+			if(predecessors != null) {
+				AccumulatedCostAnalysis.derivePredecessors(source, discreteCost.compact().getData(), accumulatedCost.getData(), costDistance, predecessors, pool);
+			}
+			return accumulatedCost;
+		} finally {
+			if(pool != null) pool.shutdown();
+		}
+	}
+
+	private static Raster search(IntRaster source, Raster discreteCost, double costDistance, double delta, ForkJoinPool pool, AnalysisMonitor monitor) {
+		final int width = discreteCost.getWidth();
+		final int height = discreteCost.getHeight();
+		final double[] discrete = discreteCost.compact().getData();
+		final double diagonalDistance = costDistance*Math.sqrt(2);
+
+		// heaviest finite edge, which bounds how far ahead of the current bucket a cell can be queued
+		double maxDiscrete = 0;
+		double sumDiscrete = 0;
+		int finiteCount = 0;
+		for(int cell = 0; cell < discrete.length; cell++) {
+			double cost = discrete[cell];
+			if(cost >= 0 && cost < Double.POSITIVE_INFINITY) {
+				if(cost > maxDiscrete) maxDiscrete = cost;
+				sumDiscrete += cost;
+				finiteCount++;
+			}
+		}
+		double maxEdge = Math.max(costDistance, diagonalDistance) + maxDiscrete;
+		if(!(delta > 0)) {
+			// average edge weight: half of the moves are straight and half diagonal
+			delta = (costDistance + diagonalDistance)/2 + (finiteCount > 0 ? sumDiscrete/finiteCount : 0);
+		}
+		delta = Math.max(delta, maxEdge/(MAX_BUCKETS - 1));
+		if(!(delta > 0)) delta = 1;
+
+		// buckets are reused cyclically: a queued cell is never more than maxEdge ahead of the current bucket
+		int bucketCount = (int) Math.min(MAX_BUCKETS, Math.ceil(maxEdge/delta) + 1);
+		IntList[] buckets = new IntList[bucketCount];
+		for(int b = 0; b < bucketCount; b++) buckets[b] = new IntList();
+
+		final AtomicLongArray accumulated = new AtomicLongArray(width*height);
+		long infinity = Double.doubleToLongBits(Double.POSITIVE_INFINITY);
+		for(int cell = 0; cell < width*height; cell++) accumulated.lazySet(cell, infinity);
+
+		// queued counts bucket entries, including stale ones; pushes, stalePops and peakQueued are reported to the monitor
+		long queued = 0;
+		long pushes = 0;
+		long stalePops = 0;
+		long peakQueued = 0;
+		int[] sourceData = source.getData();
+		for(int y = 0; y < height; y++) {
+			int row = source.index(0, y);
+			for(int x = 0; x < width; x++) {
+				if(sourceData[row + x] != 0) {
+					int cell = y*width + x;
+					accumulated.set(cell, Double.doubleToLongBits(0));
+					buckets[0].add(cell);
+					queued++;
+				}
+			}
+		}
+		pushes = peakQueued = queued;
+
+		// stamp of the last phase in which a cell was put on the frontier, so that it is relaxed once per phase
+		int[] frontierStamp = new int[width*height];
+		int phase = 0;
+		boolean[] settled = new boolean[width*height];
+		IntList frontier = new IntList();
+		IntList settledCells = new IntList();
+		ConcurrentLinkedQueue<IntList> improved = new ConcurrentLinkedQueue<IntList>();
+		long settledCount = 0;
+
+		for(long current = 0; queued > 0; current++) {
+			IntList bucket = buckets[(int) (current % bucketCount)];
+			if(bucket.isEmpty()) continue;
+			if(monitor != null) {
+				monitor.checkCancelled();
+				monitor.progress((double) settledCount/(width*height));
+			}
+			settledCells.clear();
+
+			// light edges may put cells back into the current bucket, so repeat until it stays empty
+			while(!bucket.isEmpty()) {
+				phase++;
+				frontier.clear();
+				for(int i = 0; i < bucket.size(); i++) {
+					int cell = bucket.get(i);
+					// skip entries left behind when a cell moved to a lower bucket, and duplicates
+					if(frontierStamp[cell] == phase || bucketOf(Double.longBitsToDouble(accumulated.get(cell)), delta) != current) {
+						stalePops++;
+						continue;
+					}
+					frontierStamp[cell] = phase;
+					frontier.add(cell);
+					if(!settled[cell]) {
+						settled[cell] = true;
+						settledCells.add(cell);
+					}
+				}
+				queued -= bucket.size();
+				bucket.clear();
+
+				relax(frontier, true, accumulated, discrete, width, height, costDistance, diagonalDistance, delta, pool, improved);
+				int requeued = requeue(improved, buckets, accumulated, delta);
+				queued += requeued;
+				pushes += requeued;
+				peakQueued = Math.max(peakQueued, queued);
+			}
+
+			// the costs of the settled cells are final, so their heavy edges are relaxed once
+			relax(settledCells, false, accumulated, discrete, width, height, costDistance, diagonalDistance, delta, pool, improved);
+			int requeued = requeue(improved, buckets, accumulated, delta);
+			queued += requeued;
+			pushes += requeued;
+			peakQueued = Math.max(peakQueued, queued);
+			settledCount += settledCells.size();
+		}
+		if(monitor != null) monitor.searchFinished(settledCount, pushes, 0, stalePops, peakQueued);
+
+		Raster accumulatedCost = new Raster(width, height);
+		final double[] result = accumulatedCost.getData();
+		RowBands.run(pool, height, new RowBands.Kernel() {
+			@Override
+			public void run(int fromY, int toY) {
+				for(int cell = fromY*width; cell < toY*width; cell++) {
+					result[cell] = Double.longBitsToDouble(accumulated.get(cell));
+				}
+			}
+		});
+		return accumulatedCost;
+	}
+
+	/**
+	 * Relaxes the light (or heavy) edges of cells in parallel chunks; every chunk adds the cells it lowered to improved
+	 */
+	private static void relax(final IntList cells, final boolean light, final AtomicLongArray accumulated, final double[] discrete,
+			final int width, final int height, final double costDistance, final double diagonalDistance, final double delta,
+			ForkJoinPool pool, final ConcurrentLinkedQueue<IntList> improved) {
+		RowBands.run(pool, cells.size(), MIN_CHUNK, new RowBands.Kernel() {
+			@Override
+			public void run(int from, int to) {
+				IntList lowered = new IntList();
+				for(int i = from; i < to; i++) {
+					int cell = cells.get(i);
+					double accumulatedCellCost = Double.longBitsToDouble(accumulated.get(cell));
+					int x = cell % width;
+					int y = cell / width;
+					for(int n = 0; n < MapUtil.NEIGHBOR_COUNT; n++) {
+						int nx = x + MapUtil.NEIGHBOR_DX[n];
+						int ny = y + MapUtil.NEIGHBOR_DY[n];
+						if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+						int neighbor = ny*width + nx;
+						double distance = MapUtil.isDiagonal(n) ? diagonalDistance : costDistance;
+						if((distance + discrete[neighbor] <= delta) != light) continue;
+						double neighborCost = accumulatedCellCost + distance + discrete[neighbor];
+						if(lowerTo(accumulated, neighbor, neighborCost)) lowered.add(neighbor);
+					}
+				}
+				if(!lowered.isEmpty()) improved.add(lowered);
+			}
+		});
+	}
+
+	/**
+	 * Atomically lowers the accumulated cost of a cell to cost if that is smaller
+	 * @return true if the cost was lowered
+	 */
+	private static boolean lowerTo(AtomicLongArray accumulated, int cell, double cost) {
+		long costBits = Double.doubleToLongBits(cost);
+		while(true) {
+			long currentBits = accumulated.get(cell);
+			if(!(cost < Double.longBitsToDouble(currentBits))) return false;
+			if(accumulated.compareAndSet(cell, currentBits, costBits)) return true;
+		}
+	}
+
+	/**
+	 * Moves the cells lowered by a relaxation round into the buckets of their new cost
+	 * @return number of cells queued
+	 */
+	private static int requeue(ConcurrentLinkedQueue<IntList> improved, IntList[] buckets, AtomicLongArray accumulated, double delta) {
+		int count = 0;
+		IntList lowered;
+		while((lowered = improved.poll()) != null) {
+			for(int i = 0; i < lowered.size(); i++) {
+				int cell = lowered.get(i);
+				long bucket = bucketOf(Double.longBitsToDouble(accumulated.get(cell)), delta);
+				buckets[(int) (bucket % buckets.length)].add(cell);
+			}
+			count += lowered.size();
+		}
+		return count;
+	}
+
+	private static long bucketOf(double cost, double delta) {
+		return (long) Math.floor(cost/delta);
+	}
+}
@@ -1,13 +1,18 @@
 package algorithm;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import algorithm.MapUtil.MapTypes;
-import algorithm.MapUtil.Pair;
 
 public class DiscreteCostAnalysis {
+	// Road preference: most preferred IDEAL_METERS_FROM_ROAD from the nearest road, one preference point less every METERS_PER_PREFERENCE
+	// away from that, down to MAX_ROAD_PREFERENCE
+	//TODO don't hard-code the ideal distance and the meters per preference point
+	private static final double IDEAL_METERS_FROM_ROAD = 50.0;
+	private static final double METERS_PER_PREFERENCE = 10.0;
+	private static final double MAX_ROAD_PREFERENCE = 9.0;
 
 	/**
 	 * Calculates the discrete cost map given a list of of map layers
@@ -18,274 +23,632 @@ public class DiscreteCostAnalysis {
 	 * @throws IllegalArgumentException
 	 */
 	public static double[][] generateDiscreteCostMap(Map<MapUtil.MapTypes, double[][]> layers, double cellSize, double altitudeScale, Map<MapUtil.MapTypes, Double> weightings) {
-		
+		if(layers == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		return generateDiscreteCostRaster(Raster.fromArrays(layers), cellSize, altitudeScale, weightings).toArray();
+	}
+
+	/**
+	 * Calculates the discrete cost raster given a list of of map layers
+	 * @param layers mapping MapTypes to rasters (or 8-bit ByteLayers) representing the map data to be analyzed
+	 * @param cellSize dimensions of cell in meters (length/width of cell square)
+	 * @param altitudeScale scale factor for altitude
+	 * @param weightings mapping of MapTypes to a double weighting
+	 * @throws IllegalArgumentException
+	 */
+	public static Raster generateDiscreteCostRaster(Map<MapUtil.MapTypes, ? extends Grid> layers, double cellSize, double altitudeScale, Map<MapUtil.MapTypes, Double> weightings) {
+		return generateDiscreteCostRaster(layers, cellSize, altitudeScale, weightings, new AnalysisSettings());
+	}
+
+	/**
+	 * Calculates the discrete cost raster given a list of of map layers
+	 * @param layers mapping MapTypes to rasters (or 8-bit ByteLayers, whose costs are looked up in 256-entry tables) representing the map data to be analyzed
+	 * @param cellSize dimensions of cell in meters (length/width of cell square)
+	 * @param altitudeScale scale factor for altitude
+	 * @param weightings mapping of MapTypes to a double weighting
+	 * @param settings analysis settings (road distance method, parallelism, layer cost cache)
+	 * @throws IllegalArgumentException
+	 */
+	public static Raster generateDiscreteCostRaster(Map<MapUtil.MapTypes, ? extends Grid> layers, double cellSize, double altitudeScale, Map<MapUtil.MapTypes, Double> weightings, AnalysisSettings settings) {
+
 		// Check that arguments are valid
 		// Check for null arguments
-		if(layers == null) {
+		if(layers == null || weightings == null || settings == null) {
 			throw new IllegalArgumentException("Null arguments.");
 		}
 		// Check for mismatching dimensions
 		int width = -1;
 		int height = -1;
-		for(double[][] layer : layers.values()) {
+		for(Grid layer : layers.values()) {
 			if(width == -1 || height == -1) {
-				width = layer.length;
+				width = layer.getWidth();
 				if(width == 0) throw new IllegalArgumentException("Illegal dimensions for layers.");
-				height = layer[0].length;
+				height = layer.getHeight();
 				if(height == 0) throw new IllegalArgumentException("Illegal dimensions for layers.");
 			} else {
-				if(layer.length != width || layer[0].length != height) {
+				if(layer.getWidth() != width || layer.getHeight() != height) {
 					throw new IllegalArgumentException("Mismatching layer dimensions.");
 				}
 			}
 		}
+		if(width == -1) {
+			throw new IllegalArgumentException("Illegal dimensions for layers.");
+		}
 		// Checks that all layers have a weighting
 		for(MapUtil.MapTypes layer : layers.keySet()) {
 			if(!weightings.containsKey(layer)) {
 				throw new IllegalArgumentException("Missing later weighting.");
 			}
-				
+
 		}
-		
-		Map<MapUtil.MapTypes, double[][]> layerCosts = new HashMap<MapUtil.MapTypes, double[][]>();
-		// Calculate cost for each layer relative to itself (with each cell valued 1 to 9 inclusive
-		for(MapUtil.MapTypes layer : layers.keySet()) {
-			switch (layer) {
-			case ALTITUDE:
-				layerCosts.put(layer, altitudeLayerCost(layers.get(layer), cellSize, altitudeScale));
-				break;
-			case WATER:
-				layerCosts.put(layer, waterLayerCost(layers.get(layer), altitudeScale));
-				break;
-			case ROADS:
-				layerCosts.put(layer, roadsLayerCost(layers.get(layer), cellSize));
-				break;
-			case HOUSINGDENSITY:
-				layerCosts.put(layer, housingDensityLayerCost(layers.get(layer)));
-				break;
-			default: // do nothing unimplemented map type
-				break;
+
+		// Run in parallel row bands if a parallelism level is set
+		ForkJoinPool pool = RowBands.newPool(settings.parallelism);
+		try {
+			// Roads need the distance to the nearest road over the whole map, so they are the only layer cost computed on its own
+			// (along with altitude when there is a cache to keep the slope stencil for the next weightings)
+			Map<MapUtil.MapTypes, Raster> layerCosts = new EnumMap<MapUtil.MapTypes, Raster>(MapUtil.MapTypes.class);
+			if(layers.containsKey(MapUtil.MapTypes.ROADS)) {
+				layerCosts.put(MapUtil.MapTypes.ROADS, cachedLayerCost(MapUtil.MapTypes.ROADS, layers.get(MapUtil.MapTypes.ROADS), cellSize, altitudeScale, settings, pool));
+			}
+			if(layers.containsKey(MapUtil.MapTypes.ALTITUDE) && settings.layerCostCache != null) {
+				layerCosts.put(MapUtil.MapTypes.ALTITUDE, cachedLayerCost(MapUtil.MapTypes.ALTITUDE, layers.get(MapUtil.MapTypes.ALTITUDE), cellSize, altitudeScale, settings, pool));
 			}
+
+			// Calculate the remaining layer costs and combine them using weightings in a single pass
+			return fusedDiscreteCost(layers, layerCosts, weightings, cellSize, altitudeScale, width, height, pool);
+		} finally {
+			if(pool != null) pool.shutdown();
 		}
-		
-		// Using weightings to combine map layers into discreteCost map (with special logic for water)
-		boolean withWater = layerCosts.containsKey(MapUtil.MapTypes.WATER);
-		double[][] waterLayerCost = (withWater) ? layerCosts.get(MapUtil.MapTypes.WATER) : null;
-		double[][] discreteCost = new double[width][height]; 
-		for (int i = 0; i < width; i ++) {
-			for (int j = 0; j < height; j ++) {
-				for (MapUtil.MapTypes layer : layerCosts.keySet()) {
-					if (withWater && waterLayerCost[i][j] != 0) { // if there is water in this cell
-						if (layer == MapTypes.ALTITUDE) continue; // ignore altitude differences layer
+	}
+
+	/**
+	 * Calculates the cost of a single layer relative to itself (with each cell valued 1 to 9 inclusive)
+	 * @param type map type of the layer
+	 * @param layer raster (or 8-bit ByteLayer) of the map data
+	 * @param cellSize dimensions of cell in meters (length/width of cell square)
+	 * @param altitudeScale scale factor for altitude
+	 * @param settings analysis settings (road distance method, parallelism)
+	 * @return layer cost raster, or null for an unimplemented map type
+	 * @throws IllegalArgumentException if arguments are null
+	 */
+	public static Raster generateLayerCostRaster(MapUtil.MapTypes type, Grid layer, double cellSize, double altitudeScale, AnalysisSettings settings) {
+		if(type == null || layer == null || settings == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		ForkJoinPool pool = RowBands.newPool(settings.parallelism);
+		try {
+			return layerCost(type, layer, cellSize, altitudeScale, settings, pool);
+		} finally {
+			if(pool != null) pool.shutdown();
+		}
+	}
+
+	/**
+	 * Layer cost from settings.layerCostCache, calculated and added to the cache if it is not there (or calculated if there is no cache)
+	 */
+	private static Raster cachedLayerCost(MapUtil.MapTypes type, Grid layer, double cellSize, double altitudeScale, AnalysisSettings settings, ForkJoinPool pool) {
+		LayerCostCache cache = settings.layerCostCache;
+		if(cache == null) {
+			return layerCost(type, layer, cellSize, altitudeScale, settings, pool);
+		}
+		LayerCostCache.Key key = LayerCostCache.keyFor(type, layer, cellSize, altitudeScale, settings.roadDistance, pool);
+		Raster cost = cache.get(key);
+		if(cost == null) {
+			cost = layerCost(type, layer, cellSize, altitudeScale, settings, pool);
+			cache.put(key, cost);
+		}
+		return cost;
+	}
+
+	private static Raster layerCost(MapUtil.MapTypes type, Grid layer, double cellSize, double altitudeScale, AnalysisSettings settings, ForkJoinPool pool) {
+		switch (type) {
+		case ALTITUDE:
+			return altitudeLayerCost(layer, cellSize, altitudeScale, pool);
+		case WATER:
+			return waterLayerCost(layer, altitudeScale, pool);
+		case ROADS:
+			return roadsLayerCost(layer, cellSize, settings.roadDistance, pool);
+		case HOUSINGDENSITY:
+			return housingDensityLayerCost(layer, pool);
+		default: // do nothing unimplemented map type
+			return null;
+		}
+	}
+
+	/**
+	 * Computes the discrete cost of every cell in one streaming pass: point-wise layer costs (altitude, water, housing density)
+	 * are evaluated in place and weighted straight into the output, layers in layerCosts are read from their rasters.
+	 * Layers are summed in MapTypes order and altitude is ignored in cells with water, as when combining separate layer rasters.
+	 * The costs of 8-bit layers are looked up in tables, which hold the same values as the cost functions.
+	 * @param layers mapping MapTypes to rasters (or ByteLayers) of map data
+	 * @param layerCosts precomputed layer cost rasters (contiguous), used instead of evaluating those layers
+	 * @return discrete cost raster
+	 */
+	private static Raster fusedDiscreteCost(Map<MapUtil.MapTypes, ? extends Grid> layers, Map<MapUtil.MapTypes, Raster> layerCosts, Map<MapUtil.MapTypes, Double> weightings,
+			final double cellSize, final double altitudeScale, final int width, final int height, ForkJoinPool pool) {
+		// resolve layers and weightings once, 8-bit layers separately from rasters
+		Grid altitudeGrid = layerCosts.containsKey(MapTypes.ALTITUDE) ? null : layers.get(MapTypes.ALTITUDE);
+		Grid waterGrid = layerCosts.containsKey(MapTypes.WATER) ? null : layers.get(MapTypes.WATER);
+		Grid housingGrid = layerCosts.containsKey(MapTypes.HOUSINGDENSITY) ? null : layers.get(MapTypes.HOUSINGDENSITY);
+		final ByteLayer altitudeBytes = altitudeGrid instanceof ByteLayer ? (ByteLayer) altitudeGrid : null;
+		final ByteLayer waterBytes = waterGrid instanceof ByteLayer ? (ByteLayer) waterGrid : null;
+		final ByteLayer housingBytes = housingGrid instanceof ByteLayer ? (ByteLayer) housingGrid : null;
+		final Raster altitudeLayer = altitudeGrid != null && altitudeBytes == null ? Raster.fromGrid(altitudeGrid) : null;
+		final Raster waterLayer = waterGrid != null && waterBytes == null ? Raster.fromGrid(waterGrid) : null;
+		final Raster housingLayer = housingGrid != null && housingBytes == null ? Raster.fromGrid(housingGrid) : null;
+		final double[] waterTable = waterBytes != null ? waterCostTable(altitudeScale) : null;
+		final double[] housingTable = housingBytes != null ? housingDensityCostTable() : null;
+		final double[] altitudeCost = costData(layerCosts, MapTypes.ALTITUDE);
+		final double[] waterCost = costData(layerCosts, MapTypes.WATER);
+		final double[] housingCost = costData(layerCosts, MapTypes.HOUSINGDENSITY);
+		final double[] roadsCost = costData(layerCosts, MapTypes.ROADS);
+		final boolean withAltitude = altitudeGrid != null || altitudeCost != null;
+		final boolean withWater = waterGrid != null || waterCost != null;
+		final boolean withHousing = housingGrid != null || housingCost != null;
+		final boolean withRoads = roadsCost != null;
+		final SlopePreferenceTable slopeTable = altitudeBytes != null ? new SlopePreferenceTable(cellSize, altitudeScale)
+				: altitudeLayer != null ? slopePreferenceTable(altitudeLayer, cellSize, altitudeScale) : null;
+		final double altitudeWeighting = withAltitude ? weightings.get(MapTypes.ALTITUDE) : 0;
+		final double waterWeighting = withWater ? weightings.get(MapTypes.WATER) : 0;
+		final double housingWeighting = withHousing ? weightings.get(MapTypes.HOUSINGDENSITY) : 0;
+		final double roadsWeighting = withRoads ? weightings.get(MapTypes.ROADS) : 0;
+
+		Raster discreteCost = new Raster(width, height);
+		final double[] discrete = discreteCost.getData();
+		RowBands.run(pool, height, new RowBands.Kernel() {
+			@Override
+			public void run(int fromRow, int toRow) {
+				double[] water = waterLayer != null ? waterLayer.getData() : null;
+				double[] housing = housingLayer != null ? housingLayer.getData() : null;
+				byte[] waterByteData = waterBytes != null ? waterBytes.getData() : null;
+				byte[] housingByteData = housingBytes != null ? housingBytes.getData() : null;
+				double[] neighbors = new double[4];
+				for(int y = fromRow; y < toRow; y++) {
+					int waterRow = waterBytes != null ? waterBytes.index(0, y) : waterLayer != null ? waterLayer.index(0, y) : 0;
+					int housingRow = housingBytes != null ? housingBytes.index(0, y) : housingLayer != null ? housingLayer.index(0, y) : 0;
+					for(int x = 0; x < width; x++) {
+						int cell = y * width + x;
+						double cost = 0;
+						double cellWaterCost = 0;
+						if(withWater) {
+							if(waterBytes != null) cellWaterCost = waterTable[waterByteData[waterRow + x] & 255];
+							else if(waterLayer != null) cellWaterCost = waterCost(water[waterRow + x], altitudeScale);
+							else cellWaterCost = waterCost[cell];
+						}
+						if(withAltitude && cellWaterCost == 0) { // ignore altitude differences layer if there is water in this cell
+							double cellAltitudeCost;
+							if(altitudeBytes != null) cellAltitudeCost = slopeTable.preference(altitudeBytes, x, y);
+							else if(altitudeLayer != null) cellAltitudeCost = altitudeCost(altitudeLayer, x, y, cellSize, altitudeScale, slopeTable, neighbors);
+							else cellAltitudeCost = altitudeCost[cell];
+							cost += altitudeWeighting * cellAltitudeCost;
+						}
+						if(withWater) {
+							cost += waterWeighting * cellWaterCost;
+						}
+						if(withHousing) {
+							double cellHousingCost;
+							if(housingBytes != null) cellHousingCost = housingTable[housingByteData[housingRow + x] & 255];
+							else if(housingLayer != null) cellHousingCost = housingDensityCost(housing[housingRow + x]);
+							else cellHousingCost = housingCost[cell];
+							cost += housingWeighting * cellHousingCost;
+						}
+						if(withRoads) {
+							cost += roadsWeighting * roadsCost[cell];
+						}
+						discrete[cell] = cost;
 					}
-					discreteCost[i][j] += weightings.get(layer) * layerCosts.get(layer)[i][j];
 				}
 			}
-		}
-		
+		});
+
 		return discreteCost;
 	}
-	
+
+	private static double[] costData(Map<MapUtil.MapTypes, Raster> layerCosts, MapUtil.MapTypes type) {
+		Raster cost = layerCosts.get(type);
+		return cost != null ? cost.getData() : null;
+	}
+
 	/**
 	 *  Calculates the discrete cost map for the housing density layer (interprets 0 as low housing density up to 255 for high housing density
 	 * (1 most preferred, 9 least preferred)
-	 * @param housingLayer 2D array representing the housing densities
+	 * @param housingGrid raster (or ByteLayer) representing the housing densities
+	 * @param pool pool for parallel row bands, or null
 	 * @return discrete cost map for housing density
 	 */
-	private static double[][] housingDensityLayerCost(double[][] housingLayer) {
-		double[][] cost = new double[housingLayer.length][housingLayer[0].length];
-		
-		for(int i = 0; i < cost.length; i ++) {
-			for(int j = 0; j < cost[0].length; j ++) {
-				cost[i][j] = 1 + housingLayer[i][j]*8/255;
+	private static Raster housingDensityLayerCost(Grid housingGrid, ForkJoinPool pool) {
+		if(housingGrid instanceof ByteLayer) {
+			return tableLayerCost((ByteLayer) housingGrid, housingDensityCostTable(), pool);
+		}
+		final Raster housingLayer = Raster.fromGrid(housingGrid);
+		final int width = housingLayer.getWidth();
+		int height = housingLayer.getHeight();
+		final double[] housing = housingLayer.getData();
+		Raster cost = new Raster(width, height);
+		final double[] costData = cost.getData();
+
+		RowBands.run(pool, height, new RowBands.Kernel() {
+			@Override
+			public void run(int fromRow, int toRow) {
+				for(int y = fromRow; y < toRow; y ++) {
+					int row = housingLayer.index(0, y);
+					int costRow = y * width;
+					for(int x = 0; x < width; x ++) {
+						costData[costRow + x] = housingDensityCost(housing[row + x]);
+					}
+				}
 			}
+		});
+
+		return cost;
+	}
+
+	/**
+	 * Housing density cost of a single cell (1 most preferred, 9 least preferred)
+	 * @param density housing density from 0 (low) to 255 (high)
+	 */
+	private static double housingDensityCost(double density) {
+		return 1 + density*8/255;
+	}
+
+	/**
+	 * @return housing density cost of each 8-bit density, indexed by density
+	 */
+	private static double[] housingDensityCostTable() {
+		double[] table = new double[256];
+		for(int density = 0; density < 256; density++) {
+			table[density] = housingDensityCost(density);
 		}
-		
+		return table;
+	}
+
+	/**
+	 * Calculates the cost of every cell of an 8-bit layer by looking its value up in a table
+	 * @param layer 8-bit layer
+	 * @param table cost of each value, indexed by value
+	 * @param pool pool for parallel row bands, or null
+	 * @return layer cost raster
+	 */
+	private static Raster tableLayerCost(final ByteLayer layer, final double[] table, ForkJoinPool pool) {
+		final int width = layer.getWidth();
+		int height = layer.getHeight();
+		final byte[] values = layer.getData();
+		Raster cost = new Raster(width, height);
+		final double[] costData = cost.getData();
+
+		RowBands.run(pool, height, new RowBands.Kernel() {
+			@Override
+			public void run(int fromRow, int toRow) {
+				for(int y = fromRow; y < toRow; y++) {
+					int row = layer.index(0, y);
+					int costRow = y * width;
+					for(int x = 0; x < width; x++) {
+						costData[costRow + x] = table[values[row + x] & 255];
+					}
+				}
+			}
+		});
+
 		return cost;
 	}
-	
+
 	/**
 	 * Calculates the discrete cost map for the roads layer (interprets 0 as no road, otherwise road)
 	 * (1 most preferred, 9 least preferred)
-	 * @param roadsLayer 2D array representing the roads on the map
+	 * @param roadsLayer raster (or ByteLayer) representing the roads on the map
 	 * @param cellSize dimensions of cell in meters (length/width of cell square)
+	 * @param method how the distance from a cell to the nearest road is measured
+	 * @param pool pool for parallel row bands, or null (the Dijkstra method always runs serially)
 	 * @return discrete cost map for roads
 	 */
-	private static double[][] roadsLayerCost(double[][] roadsLayer, double cellSize) {
-		int width = roadsLayer.length;
-	    int height = roadsLayer[0].length;
-		
+	private static Raster roadsLayerCost(Grid roadsLayer, final double cellSize, MapUtil.DistanceMethods method, ForkJoinPool pool) {
+		if(method == MapUtil.DistanceMethods.DIJKSTRA) {
+			return roadsLayerCostDijkstra(roadsLayer, cellSize);
+		}
+		final int width = roadsLayer.getWidth();
+		int height = roadsLayer.getHeight();
+
+		// distance is measured from the same cells that seed the Dijkstra version
+		boolean[] seeds = roadCells(roadsLayer, pool);
+		final double[] squaredDistance = DistanceTransform.squaredEuclidean(seeds, width, height, pool);
+
+		Raster cost = new Raster(width, height);
+		final double[] costData = cost.getData();
+		RowBands.run(pool, height, new RowBands.Kernel() {
+			@Override
+			public void run(int fromRow, int toRow) {
+				for(int cell = fromRow * width; cell < toRow * width; cell++) {
+					// cells that cannot reach a road get 0, as the Dijkstra version never evaluates them
+					costData[cell] = squaredDistance[cell] == Double.POSITIVE_INFINITY ? 0 : roadPreference(Math.sqrt(squaredDistance[cell])*cellSize);
+				}
+			}
+		});
+		return cost;
+	}
+
+	/**
+	 * @param roadsLayer raster (or ByteLayer) representing the roads on the map
+	 * @param pool pool for parallel row bands, or null
+	 * @return row-major flags (index y * width + x) that are true for the road cells (any value other than 255)
+	 */
+	private static boolean[] roadCells(Grid roadsLayer, ForkJoinPool pool) {
+		final int width = roadsLayer.getWidth();
+		int height = roadsLayer.getHeight();
+		final boolean[] roadCells = new boolean[width*height];
+		if(roadsLayer instanceof ByteLayer) {
+			final ByteLayer roadBytes = (ByteLayer) roadsLayer;
+			final byte[] roads = roadBytes.getData();
+			RowBands.run(pool, height, new RowBands.Kernel() {
+				@Override
+				public void run(int fromRow, int toRow) {
+					for(int y = fromRow; y < toRow; y++) {
+						int row = roadBytes.index(0, y);
+						for(int x = 0; x < width; x++) {
+							roadCells[y*width + x] = roads[row + x] != (byte) 255;
+						}
+					}
+				}
+			});
+		} else {
+			final Raster roadRaster = Raster.fromGrid(roadsLayer);
+			final double[] roads = roadRaster.getData();
+			RowBands.run(pool, height, new RowBands.Kernel() {
+				@Override
+				public void run(int fromRow, int toRow) {
+					for(int y = fromRow; y < toRow; y++) {
+						int row = roadRaster.index(0, y);
+						for(int x = 0; x < width; x++) {
+							roadCells[y*width + x] = roads[row + x] != 255;
+						}
+					}
+				}
+			});
+		}
+		return roadCells;
+	}
+
+	/**
+	 * Preference cost for the distance to the nearest road, shared by every distance method
+	 * @param distance distance in meters to the nearest road
+	 * @return preference (1 most preferred, MAX_ROAD_PREFERENCE least preferred)
+	 */
+	private static double roadPreference(double distance) {
+		double preference = 1 + Math.abs(IDEAL_METERS_FROM_ROAD - distance) / METERS_PER_PREFERENCE;
+		return Math.min(preference, MAX_ROAD_PREFERENCE);
+	}
+
+	/**
+	 * Calculates the discrete cost map for the roads layer using octile distances found with Dijkstra's algorithm
+	 * (1 most preferred, 9 least preferred)
+	 * @param roadsLayer raster (or ByteLayer) representing the roads on the map
+	 * @param cellSize dimensions of cell in meters (length/width of cell square)
+	 * @return discrete cost map for roads
+	 */
+	private static Raster roadsLayerCostDijkstra(Grid roadsLayer, double cellSize) {
+		int width = roadsLayer.getWidth();
+	    int height = roadsLayer.getHeight();
+	    boolean[] roadCells = roadCells(roadsLayer, null);
+
 		// make road distance map (based on accumulated cost code)
+	    double diagonalSize = cellSize*Math.sqrt(2);
+
+	    // cells are packed as y * width + x
+	    boolean[] evaluated = new boolean[width*height];
+	    IndexedCellHeap toEvaluate = new IndexedCellHeap(width*height);
 
-	    // where:
-	    //      0 means that the cell hasn't been added to toEvaluate yet
-	    //      1 means that the cell has been added to toEvaluate but hasn't been evaluated yet
-	    //      2 means that the cell has been evaluated
-	    int DISCOVERED = 1;
-	    int EVALUATED = 2;
-	    int[][] status = new int[width][height];
-	   
-	    SortedCellList toEvaluate = new SortedCellList();
-	    
 	    // add all source cells to toEvaluate
-	    for(int i = 0; i < width; i++) {
-	        for(int j = 0; j < height; j++) {
-	            if(roadsLayer[i][j] != 255) {
-	                toEvaluate.add(0, i, j);
-	            }
-	        }
+	    for(int cell = 0; cell < width*height; cell++) {
+	    	if(roadCells[cell]) {
+	    		toEvaluate.push(cell, 0);
+	    	}
 	    }
-	    
-	    double[][] cost = new double[width][height];
-	    
+
+	    Raster cost = new Raster(width, height);
+	    double[] costData = cost.getData();
+
 	    while(!toEvaluate.isEmpty()) {
 	    	// get least distance cell from toEvaluate list
-	    	Pair<Double, Pair<Integer, Integer>> eval = toEvaluate.removeFirst();
-	        Pair<Integer, Integer> evalCoor = eval.getSecond();
-	        double distance = eval.getFirst();
-	        int x = evalCoor.getFirst();
-	        int y = evalCoor.getSecond();
-	        
-	        // Check that this cell has not been evaluated yet
-	        if(status[x][y] == EVALUATED) continue;	        
-	        
+	    	double distance = toEvaluate.peekKey();
+	    	int cell = toEvaluate.removeFirst();
+	        int x = cell % width;
+	        int y = cell / width;
+
 	        // update cost
-	        double idealMetersFromRoad = 50.0; //TODO don't hard-code ideal distance (10 meters)
-			double preference = 1 + Math.abs(idealMetersFromRoad - distance) / 10.0; //TODO 1 preference point / 10 meters is another hard-coded value...
-			if (preference > 9.0) {
-				preference = 9.0;
-			}
-	        cost[x][y] = preference;
+	        costData[cell] = roadPreference(distance);
 
 	        // alternate version that simply attracts towards roads (without trying to keep them from overlapping)
-	        //cost[x][y] = Math.min(9.0, (distance/500)*9.0);
-
-	        // update status of eval to evaluated
-	        status[x][y] = EVALUATED;
-	        
-	        // add neighbor coordinate to be evaluated
-	        
-	        // add down
-	        if(y+1 < height && status[x][y+1] != EVALUATED) {
-	            toEvaluate.add(distance + cellSize, x, y+1);
-	            status[x][y+1] = DISCOVERED;
-	        }
-	        // add up
-	        if(y-1 >= 0 && status[x][y-1] != EVALUATED) {
-	            toEvaluate.add(distance + cellSize, x, y-1);
-	            status[x][y-1] = DISCOVERED;
-	        }
-	        // add right
-	        if(x+1 < width && status[x+1][y] != EVALUATED) {
-	            toEvaluate.add(distance + cellSize, x+1, y);
-	            status[x+1][y] = DISCOVERED;
-	        }
-	        // add left
-	        if(x-1 >= 0 && status[x-1][y] != EVALUATED) {
-	            toEvaluate.add(distance + cellSize, x-1, y);
-	            status[x-1][y] = DISCOVERED;
-	        }
-	        // add right-up
-	        if((x+1 < width && y-1 >= 0) && status[x+1][y-1] != EVALUATED) {
-	        	toEvaluate.add(distance + cellSize*Math.sqrt(2), x+1, y-1);
-	            status[x+1][y-1] = DISCOVERED;
-	        }
-	        // add left-up
-	        if((x-1 >= 0 && y-1 >= 0) && status[x-1][y-1] != EVALUATED) {
-	            toEvaluate.add(distance + cellSize*Math.sqrt(2), x-1, y-1);
-	            status[x-1][y-1] = DISCOVERED;
-	        }
-	        //add right-down
-	        if((x+1 < width && y+1 < height) && status[x+1][y+1] != EVALUATED) {
-	            toEvaluate.add(distance + cellSize*Math.sqrt(2), x+1, y+1);
-	            status[x+1][y+1] = DISCOVERED;
-	        }
-	        //add left-down
-	        if((x-1 >= 0 && y+1 < height) && status[x-1][y+1] != EVALUATED) {
-	            toEvaluate.add(distance + cellSize*Math.sqrt(2), x-1, y+1);
-	            status[x-1][y+1] = DISCOVERED;
+	        //costData[cell] = Math.min(9.0, (distance/500)*9.0);
+
+	        // update status of cell to evaluated
+	        evaluated[cell] = true;
+
+	        // add (or lower) neighbor coordinates to be evaluated
+	        for(int n = 0; n < MapUtil.NEIGHBOR_COUNT; n++) {
+	        	int nx = x + MapUtil.NEIGHBOR_DX[n];
+	        	int ny = y + MapUtil.NEIGHBOR_DY[n];
+	        	if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+	        	int neighbor = ny*width + nx;
+	        	if(evaluated[neighbor]) continue;
+	        	toEvaluate.push(neighbor, distance + (MapUtil.isDiagonal(n) ? diagonalSize : cellSize));
 	        }
 	    }
-	    
+
 		return cost;
 	}
-	
+
 	/**
 	 * Calculates the discrete cost map for the water layer (interprets values as the depth of the water)
 	 * (1 most preferred, 9 least preferred)
-	 * @param waterLayer 2D array representing the water bodies on the map
+	 * @param waterGrid raster (or ByteLayer) representing the water bodies on the map
 	 * @param altitudeScale scale factor for altitude
+	 * @param pool pool for parallel row bands, or null
 	 * @return discrete cost map for water bodies
 	 */
-	private static double[][] waterLayerCost(double[][] waterLayer, double altitudeScale) {
-		double[][] cost = new double[waterLayer.length][waterLayer[0].length];
-		
-		for(int i = 0; i < cost.length; i ++) {
-			for(int j = 0; j < cost[0].length; j ++) {
-				if(waterLayer[i][j] != 0) {
-					if(waterLayer[i][j]*altitudeScale > 200) // if the support for the bridge would be greater that 200 meters
-						cost[i][j] = 9;
-					else
-						cost[i][j] = 2 + waterLayer[i][j]*altitudeScale/200*6; // base cost penalty for building bridge + additional cost for depth of supports
+	private static Raster waterLayerCost(Grid waterGrid, final double altitudeScale, ForkJoinPool pool) {
+		if(waterGrid instanceof ByteLayer) {
+			return tableLayerCost((ByteLayer) waterGrid, waterCostTable(altitudeScale), pool);
+		}
+		final Raster waterLayer = Raster.fromGrid(waterGrid);
+		final int width = waterLayer.getWidth();
+		int height = waterLayer.getHeight();
+		final double[] water = waterLayer.getData();
+		Raster cost = new Raster(width, height);
+		final double[] costData = cost.getData();
+
+		RowBands.run(pool, height, new RowBands.Kernel() {
+			@Override
+			public void run(int fromRow, int toRow) {
+				for(int y = fromRow; y < toRow; y ++) {
+					int row = waterLayer.index(0, y);
+					int costRow = y * width;
+					for(int x = 0; x < width; x ++) {
+						costData[costRow + x] = waterCost(water[row + x], altitudeScale);
+					}
 				}
-				else cost[i][j] = 0;
 			}
-		}
-		
+		});
+
 		return cost;
 	}
-	
+
+	/**
+	 * Water cost of a single cell (1 most preferred, 9 least preferred, 0 if there is no water)
+	 * @param depth depth of the water
+	 * @param altitudeScale scale factor for altitude
+	 */
+	private static double waterCost(double depth, double altitudeScale) {
+		if(depth != 0) {
+			if(depth*altitudeScale > 200) // if the support for the bridge would be greater that 200 meters
+				return 9;
+			else
+				return 2 + depth*altitudeScale/200*6; // base cost penalty for building bridge + additional cost for depth of supports
+		}
+		else return 0;
+	}
+
+	/**
+	 * @param altitudeScale scale factor for altitude
+	 * @return water cost of each 8-bit depth, indexed by depth
+	 */
+	private static double[] waterCostTable(double altitudeScale) {
+		double[] table = new double[256];
+		for(int depth = 0; depth < 256; depth++) {
+			table[depth] = waterCost(depth, altitudeScale);
+		}
+		return table;
+	}
+
 	/**
 	 * Calculates the discrete cost map for the altitude layer
 	 * (1 most preferred, 9 least preferred)
-	 * @param altitudeLayer 2D array representing the altitudes of the map
+	 * @param altitudeGrid raster (or ByteLayer) representing the altitudes of the map
 	 * @param cellSize dimensions of cell in meters (length/width of cell square)
 	 * @param altitudeScale scale factor for altitude
+	 * @param pool pool for parallel row bands, or null
 	 * @return discrete cost map for altitude
 	 */
-	private static double[][] altitudeLayerCost(double[][] altitudeLayer, double cellSize, double altitudeScale) 
+	private static Raster altitudeLayerCost(Grid altitudeGrid, final double cellSize, final double altitudeScale, ForkJoinPool pool)
 	{
-		double[][] cost = new double[altitudeLayer.length][altitudeLayer[0].length];
-		
-		for(int i = 0; i < cost.length; i ++) {
-			for(int j = 0; j < cost[0].length; j ++) {
-				// List of altitudes of neighbor cells 
-				ArrayList<Double> neighbors = new ArrayList<Double>();
-				// Up
-				if(j + 1 < cost[0].length) neighbors.add(altitudeLayer[i][j + 1]);
-				// Down
-				if(j - 1 >= 0) neighbors.add(altitudeLayer[i][j - 1]);
-				// Right
-				if(i + 1 < cost.length) neighbors.add(altitudeLayer[i + 1][j]);
-				// Left
-				if(i - 1 >= 0) neighbors.add(altitudeLayer[i - 1][j]);
-				
-				cost[i][j] = slopePreference(altitudeLayer[i][j], neighbors, cellSize, altitudeScale);
-			}
+		final int width = altitudeGrid.getWidth();
+		int height = altitudeGrid.getHeight();
+		Raster cost = new Raster(width, height);
+		final double[] costData = cost.getData();
+
+		if(altitudeGrid instanceof ByteLayer) {
+			// differences of 8-bit altitudes are always in the tables
+			final ByteLayer altitudeBytes = (ByteLayer) altitudeGrid;
+			final SlopePreferenceTable slopeTable = new SlopePreferenceTable(cellSize, altitudeScale);
+			RowBands.run(pool, height, new RowBands.Kernel() {
+				@Override
+				public void run(int fromRow, int toRow) {
+					for(int y = fromRow; y < toRow; y ++) {
+						for(int x = 0; x < width; x ++) {
+							costData[y * width + x] = slopeTable.preference(altitudeBytes, x, y);
+						}
+					}
+				}
+			});
+			return cost;
 		}
-		
+
+		final Raster altitudeLayer = Raster.fromGrid(altitudeGrid);
+		final SlopePreferenceTable slopeTable = slopePreferenceTable(altitudeLayer, cellSize, altitudeScale);
+		RowBands.run(pool, height, new RowBands.Kernel() {
+			@Override
+			public void run(int fromRow, int toRow) {
+				double[] neighbors = new double[4];
+				for(int y = fromRow; y < toRow; y ++) {
+					for(int x = 0; x < width; x ++) {
+						costData[y * width + x] = altitudeCost(altitudeLayer, x, y, cellSize, altitudeScale, slopeTable, neighbors);
+					}
+				}
+			}
+		});
+
 		return cost;
 	}
-	
+
+	/**
+	 * Builds the slope preference table for an altitude layer
+	 * @return the table, or null if the altitudes are not all whole numbers from 0 to 255
+	 */
+	private static SlopePreferenceTable slopePreferenceTable(Raster altitudeLayer, double cellSize, double altitudeScale) {
+		return SlopePreferenceTable.appliesTo(altitudeLayer) ? new SlopePreferenceTable(cellSize, altitudeScale) : null;
+	}
+
+	/**
+	 * Altitude cost of a single cell from the slopes to its 4 neighbors (1 most preferred, 9 least preferred)
+	 * @param altitudeLayer raster representing the altitudes of the map
+	 * @param x column of the cell
+	 * @param y row of the cell
+	 * @param cellSize dimensions of cell in meters (length/width of cell square)
+	 * @param altitudeScale scale factor for altitude
+	 * @param table slope preference table for the layer, or null to use slopePreference
+	 * @param neighbors scratch array of at least 4 entries
+	 */
+	private static double altitudeCost(Raster altitudeLayer, int x, int y, double cellSize, double altitudeScale, SlopePreferenceTable table, double[] neighbors) {
+		if(table != null) return table.preference(altitudeLayer, x, y);
+
+		// Altitudes of neighbor cells
+		int neighborCount = 0;
+		// Up
+		if(y + 1 < altitudeLayer.getHeight()) neighbors[neighborCount++] = altitudeLayer.get(x, y + 1);
+		// Down
+		if(y - 1 >= 0) neighbors[neighborCount++] = altitudeLayer.get(x, y - 1);
+		// Right
+		if(x + 1 < altitudeLayer.getWidth()) neighbors[neighborCount++] = altitudeLayer.get(x + 1, y);
+		// Left
+		if(x - 1 >= 0) neighbors[neighborCount++] = altitudeLayer.get(x - 1, y);
+
+		return slopePreference(altitudeLayer.get(x, y), neighbors, neighborCount, cellSize, altitudeScale);
+	}
+
 	/**
 	 * Preference cost for altitude differences (angle between neighbors) for a single cell.
 	 * (1 most preferred, 9 least preferred):
 	 * 9 -> >=60 degrees or <=-50 degrees
 	 * otherwise given a value using an exponential function with range 1 to 8
+	 * This is the reference implementation, SlopePreferenceTable gives the same results for altitudes read from 8-bit images.
+	 * @param altitudeLayer altitude of the cell
+	 * @param neighbors altitudes of the neighboring cells
+	 * @param neighborCount number of entries used in neighbors
 	 * @param cellSize dimension of cell in meters
 	 * @param altitudeScale scale factor for altitude
 	 * @return the preference of the slope of the cell given the neighboring cells
 	 * @throws IllegalArgumentException neighbors is null or if the number of neighbors is 1 or less
 	 */
-	private static double slopePreference(double altitudeLayer, ArrayList<Double> neighbors, double cellSize, double altitudeScale) {
-		if(neighbors == null || neighbors.size() <= 1) {
+	static double slopePreference(double altitudeLayer, double[] neighbors, int neighborCount, double cellSize, double altitudeScale) {
+		if(neighbors == null || neighborCount <= 1) {
 			throw new IllegalArgumentException();
 		}
 		
 		double greatestSlope = 0;
 		double smallestSlope = Integer.MAX_VALUE;
 		
-		for(Double alt : neighbors) {
+		for(int n = 0; n < neighborCount; n++) {
+			double alt = neighbors[n];
 			double altDiff = (altitudeLayer - alt)*altitudeScale;
 			double calcSlope = altDiff/cellSize;
 			calcSlope = Math.toDegrees(Math.atan(calcSlope));			
@@ -306,10 +669,10 @@ public class DiscreteCostAnalysis {
 		/* Another continuous function:
 		 * 
 		double avgDiff = 0;
-		for(Double alt : neighbors) {
-			avgDiff += Math.abs(altitudeLayer - alt);
+		for(int n = 0; n < neighborCount; n++) {
+			avgDiff += Math.abs(altitudeLayer - neighbors[n]);
 		}
-		avgDiff = avgDiff / neighbors.size() * altitudeScale;
+		avgDiff = avgDiff / neighborCount * altitudeScale;
 
 		double avgPercentGrade = 100.0 * avgDiff / cellSize;
 		
@@ -0,0 +1,153 @@
+package algorithm;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Exact Euclidean distance transform of a binary map in O(width * height).
+ * Uses two separable 1-D passes (Felzenszwalb and Huttenlocher, "Distance Transforms of Sampled Functions"):
+ * the first pass finds the distance to the nearest feature cell in the same column and the second pass
+ * takes the lower envelope of the resulting parabolas along each row.
+ */
+public class DistanceTransform {
+
+	/**
+	 * Calculates the squared Euclidean distance (in cells) from every cell to the nearest feature cell
+	 * @param features row-major flags (index y * width + x) that are true for feature cells
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @return row-major squared distances, Double.POSITIVE_INFINITY everywhere if there are no feature cells
+	 * @throws IllegalArgumentException if features is null or does not match the dimensions
+	 */
+	public static double[] squaredEuclidean(boolean[] features, int width, int height) {
+		return squaredEuclidean(features, width, height, null);
+	}
+
+	/**
+	 * Calculates the squared Euclidean distance (in cells) from every cell to the nearest feature cell
+	 * @param features row-major flags (index y * width + x) that are true for feature cells
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param pool pool to split the column pass into column bands and the row pass into row bands, or null
+	 * @return row-major squared distances, Double.POSITIVE_INFINITY everywhere if there are no feature cells
+	 * @throws IllegalArgumentException if features is null or does not match the dimensions
+	 */
+	public static double[] squaredEuclidean(final boolean[] features, final int width, final int height, ForkJoinPool pool) {
+		if(features == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(width < 0 || height < 0 || features.length != width * height) {
+			throw new IllegalArgumentException("Illegal dimensions.");
+		}
+		final double[] distance = new double[width * height];
+		RowBands.run(pool, width, new RowBands.Kernel() {
+			@Override
+			public void run(int fromX, int toX) {
+				columnPass(features, distance, width, height, fromX, toX);
+			}
+		});
+		RowBands.run(pool, height, new RowBands.Kernel() {
+			@Override
+			public void run(int fromY, int toY) {
+				rowPass(distance, width, fromY, toY);
+			}
+		});
+		return distance;
+	}
+
+	/**
+	 * First pass: squared distance to the nearest feature cell in the same column, for the columns [fromX, toX).
+	 * Sweeps rows top-down and bottom-up so that memory is read row by row.
+	 */
+	static void columnPass(boolean[] features, double[] distance, int width, int height, int fromX, int toX) {
+		int columns = toX - fromX;
+		if(columns <= 0) return;
+		// rows between the current row and the nearest feature cell above (or below) it, -1 if there is none yet
+		int[] nearest = new int[columns];
+
+		// top-down
+		Arrays.fill(nearest, -1);
+		for(int y = 0; y < height; y++) {
+			int row = y * width;
+			for(int c = 0; c < columns; c++) {
+				int cell = row + fromX + c;
+				if(features[cell]) nearest[c] = 0;
+				else if(nearest[c] >= 0) nearest[c]++;
+				distance[cell] = nearest[c] >= 0 ? nearest[c] : -1;
+			}
+		}
+		// bottom-up, keeping the closer of the two and squaring
+		Arrays.fill(nearest, -1);
+		for(int y = height - 1; y >= 0; y--) {
+			int row = y * width;
+			for(int c = 0; c < columns; c++) {
+				int cell = row + fromX + c;
+				if(features[cell]) nearest[c] = 0;
+				else if(nearest[c] >= 0) nearest[c]++;
+				double above = distance[cell];
+				double best;
+				if(nearest[c] < 0) best = above;
+				else if(above < 0) best = nearest[c];
+				else best = Math.min(above, nearest[c]);
+				distance[cell] = best < 0 ? Double.POSITIVE_INFINITY : best * best;
+			}
+		}
+	}
+
+	/**
+	 * Second pass: lower envelope of the column distances along each row, for the rows [fromY, toY)
+	 */
+	static void rowPass(double[] distance, int width, int fromY, int toY) {
+		double[] f = new double[width];
+		int[] v = new int[width];
+		double[] z = new double[width + 1];
+		for(int y = fromY; y < toY; y++) {
+			int row = y * width;
+			System.arraycopy(distance, row, f, 0, width);
+			transform1D(f, distance, row, width, v, z);
+		}
+	}
+
+	/**
+	 * 1-D squared distance transform of the sampled function f, written to out[offset .. offset + n).
+	 * Samples with an infinite value do not contribute a parabola.
+	 */
+	private static void transform1D(double[] f, double[] out, int offset, int n, int[] v, double[] z) {
+		// build the lower envelope of the parabolas rooted at the finite samples
+		int k = -1;
+		for(int q = 0; q < n; q++) {
+			if(f[q] == Double.POSITIVE_INFINITY) continue;
+			if(k < 0) {
+				k = 0;
+				v[0] = q;
+				z[0] = Double.NEGATIVE_INFINITY;
+				z[1] = Double.POSITIVE_INFINITY;
+				continue;
+			}
+			double s = intersection(f, q, v[k]);
+			while(s <= z[k]) {
+				k--;
+				s = intersection(f, q, v[k]);
+			}
+			k++;
+			v[k] = q;
+			z[k] = s;
+			z[k + 1] = Double.POSITIVE_INFINITY;
+		}
+		if(k < 0) {
+			Arrays.fill(out, offset, offset + n, Double.POSITIVE_INFINITY);
+			return;
+		}
+		// sample the lower envelope
+		k = 0;
+		for(int q = 0; q < n; q++) {
+			while(z[k + 1] < q) k++;
+			double dq = q - v[k];
+			out[offset + q] = dq * dq + f[v[k]];
+		}
+	}
+
+	private static double intersection(double[] f, int q, int p) {
+		return ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * q - 2.0 * p);
+	}
+}
@@ -0,0 +1,119 @@
+package algorithm;
+
+/**
+ * Two dimensional grid of single precision floats stored row-major in a single flat array, for cost surfaces in half the memory of a Raster
+ * (see MapUtil.Precisions). The value of cell (x, y) is stored at data[y * stride + x], where stride >= width.
+ */
+public class FloatRaster implements Grid {
+	private final int width;
+	private final int height;
+	private final int stride;
+	private final float[] data;
+
+	/**
+	 * Creates a zero filled raster
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @throws IllegalArgumentException if a dimension is negative
+	 */
+	public FloatRaster(int width, int height) {
+		this(width, height, width, new float[Raster.checkedSize(width, height)]);
+	}
+
+	/**
+	 * Wraps an existing row-major array
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param stride distance in the array between the start of two consecutive rows
+	 * @param data row-major cell values
+	 * @throws IllegalArgumentException if the dimensions do not fit the data array
+	 */
+	public FloatRaster(int width, int height, int stride, float[] data) {
+		if(data == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(width < 0 || height < 0 || stride < width || (height > 0 && (long) (height - 1) * stride + width > data.length)) {
+			throw new IllegalArgumentException("Illegal raster dimensions.");
+		}
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+		this.data = data;
+	}
+
+	@Override
+	public int getWidth() { return width; }
+	@Override
+	public int getHeight() { return height; }
+	public int getStride() { return stride; }
+	/**
+	 * @return the backing array (shared, not copied)
+	 */
+	public float[] getData() { return data; }
+
+	/**
+	 * @return index into getData() of cell (x, y)
+	 */
+	public int index(int x, int y) {
+		return y * stride + x;
+	}
+
+	@Override
+	public double get(int x, int y) {
+		return data[y * stride + x];
+	}
+
+	/**
+	 * @param value new value of the cell, rounded to the nearest float
+	 */
+	public void set(int x, int y, double value) {
+		data[y * stride + x] = (float) value;
+	}
+
+	/**
+	 * @return this raster if rows are stored contiguously (stride == width), otherwise a contiguous copy
+	 */
+	public FloatRaster compact() {
+		if(stride == width) return this;
+		FloatRaster copy = new FloatRaster(width, height);
+		for(int y = 0; y < height; y++) {
+			System.arraycopy(data, y * stride, copy.data, y * width, width);
+		}
+		return copy;
+	}
+
+	/**
+	 * @param raster double precision raster
+	 * @return raster holding every value of raster rounded to the nearest float (a relative error of at most 2^-24)
+	 * @throws IllegalArgumentException if raster is null
+	 */
+	public static FloatRaster fromRaster(Raster raster) {
+		if(raster == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		FloatRaster floats = new FloatRaster(raster.getWidth(), raster.getHeight());
+		double[] values = raster.getData();
+		for(int y = 0; y < floats.height; y++) {
+			int row = raster.index(0, y);
+			for(int x = 0; x < floats.width; x++) {
+				floats.data[y * floats.width + x] = (float) values[row + x];
+			}
+		}
+		return floats;
+	}
+
+	/**
+	 * @return copy of the raster in double precision
+	 */
+	public Raster toRaster() {
+		Raster raster = new Raster(width, height);
+		double[] values = raster.getData();
+		for(int y = 0; y < height; y++) {
+			int row = y * stride;
+			for(int x = 0; x < width; x++) {
+				values[y * width + x] = data[row + x];
+			}
+		}
+		return raster;
+	}
+}
@@ -0,0 +1,132 @@
+package algorithm;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Downsampled flow field of an accumulated cost surface.
+ * The surface is sampled every spacing cells (starting at spacing / 2) and each sample holds the offset, in cells,
+ * reached by following the steepest descent (the neighbor with the least accumulated cost) for a few steps or until a source cell.
+ */
+public class FlowField {
+	// Neighbors (indices into MapUtil.NEIGHBOR_DX/NEIGHBOR_DY) in the order the descent has always checked them: down, up, right, left,
+	// down-right, down-left, up-right, up-left. The first of several neighbors with the least cost is taken, so the order breaks ties.
+	private static final int[] DESCENT_ORDER = { 0, 1, 2, 3, 6, 7, 4, 5 };
+
+	private final int spacing;
+	private final int columns;
+	private final int rows;
+	// offsets from the sample to the end of its flow vector, indexed row * columns + column
+	private final int[] offsetX;
+	private final int[] offsetY;
+
+	private FlowField(int spacing, int columns, int rows) {
+		this.spacing = spacing;
+		this.columns = columns;
+		this.rows = rows;
+		offsetX = new int[columns*rows];
+		offsetY = new int[columns*rows];
+	}
+
+	/**
+	 * Calculates the flow field of an accumulated cost surface
+	 * @param accumulatedCost accumulated cost raster
+	 * @param spacing distance in cells between two samples
+	 * @param steps largest number of descent steps followed from each sample
+	 * @param parallelism number of threads (1 runs serially on the calling thread)
+	 * @return flow field
+	 * @throws IllegalArgumentException if accumulatedCost is null, spacing is less than 1 or steps is negative
+	 */
+	public static FlowField generate(Raster accumulatedCost, int spacing, int steps, int parallelism) {
+		if(accumulatedCost == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(spacing < 1 || steps < 0) {
+			throw new IllegalArgumentException("Illegal spacing or steps.");
+		}
+		int columns = (accumulatedCost.getWidth() - spacing/2 + spacing - 1)/spacing;
+		int rows = (accumulatedCost.getHeight() - spacing/2 + spacing - 1)/spacing;
+		FlowField field = new FlowField(spacing, Math.max(0, columns), Math.max(0, rows));
+
+		ForkJoinPool pool = RowBands.newPool(parallelism);
+		try {
+			field.trace(accumulatedCost, steps, pool);
+		} finally {
+			if(pool != null) pool.shutdown();
+		}
+		return field;
+	}
+
+	private void trace(final Raster accumulatedCost, final int steps, ForkJoinPool pool) {
+		final int width = accumulatedCost.getWidth();
+		final int height = accumulatedCost.getHeight();
+		final double[] accumulated = accumulatedCost.getData();
+		RowBands.run(pool, rows, 1, new RowBands.Kernel() {
+			@Override
+			public void run(int fromRow, int toRow) {
+				for(int row = fromRow; row < toRow; row++) {
+					for(int column = 0; column < columns; column++) {
+						int startX = getSampleX(column);
+						int startY = getSampleY(row);
+						int x = startX;
+						int y = startY;
+						double value = accumulated[accumulatedCost.index(x, y)];
+						// steepest descent until a source cell (0) or the step limit
+						for(int step = 0; step < steps && value != 0; step++) {
+							int nextX = x;
+							int nextY = y;
+							double smallestValue = Double.NaN;
+							for(int n : DESCENT_ORDER) {
+								int nx = x + MapUtil.NEIGHBOR_DX[n];
+								int ny = y + MapUtil.NEIGHBOR_DY[n];
+								if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+								double neighborValue = accumulated[accumulatedCost.index(nx, ny)];
+								if(Double.isNaN(smallestValue) || neighborValue < smallestValue) {
+									smallestValue = neighborValue;
+									nextX = nx;
+									nextY = ny;
+								}
+							}
+							x = nextX;
+							y = nextY;
+							value = smallestValue;
+						}
+						offsetX[row*columns + column] = x - startX;
+						offsetY[row*columns + column] = y - startY;
+					}
+				}
+			}
+		});
+	}
+
+	public int getSpacing() { return spacing; }
+	public int getColumns() { return columns; }
+	public int getRows() { return rows; }
+
+	/**
+	 * @return column in the surface of the samples in a column of the field
+	 */
+	public int getSampleX(int column) {
+		return spacing/2 + column*spacing;
+	}
+
+	/**
+	 * @return row in the surface of the samples in a row of the field
+	 */
+	public int getSampleY(int row) {
+		return spacing/2 + row*spacing;
+	}
+
+	/**
+	 * @return horizontal offset in cells from the sample to the end of its flow vector
+	 */
+	public int getOffsetX(int column, int row) {
+		return offsetX[row*columns + column];
+	}
+
+	/**
+	 * @return vertical offset in cells from the sample to the end of its flow vector
+	 */
+	public int getOffsetY(int column, int row) {
+		return offsetY[row*columns + column];
+	}
+}
@@ -0,0 +1,14 @@
+package algorithm;
+
+/**
+ * Read access to a two dimensional grid of cell values, whatever the way they are stored (see Raster and ByteLayer)
+ */
+public interface Grid {
+	int getWidth();
+	int getHeight();
+
+	/**
+	 * @return value of cell (x, y)
+	 */
+	double get(int x, int y);
+}
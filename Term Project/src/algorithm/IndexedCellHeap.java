@@ -0,0 +1,188 @@
+package algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of map cells keyed by a double cost.
+ * Cells are identified by a packed index (y * width + x) and each cell is held at most once: pushing a cell that is already queued
+ * only lowers its key (decrease-key), so no stale duplicates are ever queued and no objects are allocated per push.
+ */
+public class IndexedCellHeap {
+	private static final int NOT_QUEUED = -1;
+
+	// heap[k] is the cell stored at heap slot k and keys[k] is its key
+	private int[] heap;
+	private double[] keys;
+	// position[cell] is the heap slot of cell, or NOT_QUEUED
+	private final int[] position;
+	private int size;
+	// Statistics since the heap was created: cells added, keys lowered and the largest size
+	private long pushCount;
+	private long decreaseKeyCount;
+	private int peakSize;
+
+	/**
+	 * Creates an empty heap able to hold any cell index in [0, cellCount)
+	 * @param cellCount number of cells in the map (width * height)
+	 */
+	public IndexedCellHeap(int cellCount) {
+		if(cellCount < 0) {
+			throw new IllegalArgumentException("Illegal cell count.");
+		}
+		int capacity = Math.max(16, Math.min(cellCount, 1 << 12));
+		heap = new int[capacity];
+		keys = new double[capacity];
+		position = new int[cellCount];
+		Arrays.fill(position, NOT_QUEUED);
+	}
+
+	/**
+	 * Adds cell to the heap with the given key, or lowers its key if it is already queued with a larger one
+	 * @param cell packed cell index
+	 * @param key cost of the cell
+	 * @return true if the cell was added or its key was lowered
+	 */
+	public boolean push(int cell, double key) {
+		int slot = position[cell];
+		if(slot == NOT_QUEUED) {
+			if(size == heap.length) grow();
+			slot = size++;
+			pushCount++;
+			if(size > peakSize) peakSize = size;
+		} else if(key < keys[slot]) {
+			// decrease-key: keep slot and sift up below
+			decreaseKeyCount++;
+		} else {
+			return false;
+		}
+		siftUp(slot, cell, key);
+		return true;
+	}
+
+	/**
+	 * @return the cell with the smallest key (undefined if the heap is empty)
+	 */
+	public int peekCell() {
+		return heap[0];
+	}
+
+	/**
+	 * @return the smallest key in the heap (undefined if the heap is empty)
+	 */
+	public double peekKey() {
+		return keys[0];
+	}
+
+	/**
+	 * Removes the cell with the smallest key
+	 * @return the removed cell
+	 * @throws IllegalStateException if the heap is empty
+	 */
+	public int removeFirst() {
+		if(size == 0) {
+			throw new IllegalStateException("Heap is empty.");
+		}
+		int first = heap[0];
+		position[first] = NOT_QUEUED;
+		size--;
+		if(size > 0) {
+			siftDown(0, heap[size], keys[size]);
+		}
+		return first;
+	}
+
+	/**
+	 * @param cell packed cell index
+	 * @return true if cell is currently queued
+	 */
+	public boolean contains(int cell) {
+		return position[cell] != NOT_QUEUED;
+	}
+
+	/**
+	 * @param cell packed cell index
+	 * @return the key of a queued cell (undefined if the cell is not queued)
+	 */
+	public double keyOf(int cell) {
+		return keys[position[cell]];
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of cells added to the heap (pushes that lowered the key of a queued cell are not counted)
+	 */
+	public long getPushCount() {
+		return pushCount;
+	}
+
+	/**
+	 * @return number of pushes that lowered the key of a queued cell
+	 */
+	public long getDecreaseKeyCount() {
+		return decreaseKeyCount;
+	}
+
+	/**
+	 * @return largest number of cells queued at once
+	 */
+	public int getPeakSize() {
+		return peakSize;
+	}
+
+	/**
+	 * Removes all cells from the heap, keeping the allocated storage and statistics
+	 */
+	public void clear() {
+		for(int k = 0; k < size; k++) {
+			position[heap[k]] = NOT_QUEUED;
+		}
+		size = 0;
+	}
+
+	private void siftUp(int slot, int cell, double key) {
+		while(slot > 0) {
+			int parent = (slot - 1) >>> 1;
+			double parentKey = keys[parent];
+			if(parentKey <= key) break;
+			int parentCell = heap[parent];
+			heap[slot] = parentCell;
+			keys[slot] = parentKey;
+			position[parentCell] = slot;
+			slot = parent;
+		}
+		heap[slot] = cell;
+		keys[slot] = key;
+		position[cell] = slot;
+	}
+
+	private void siftDown(int slot, int cell, double key) {
+		int half = size >>> 1;
+		while(slot < half) {
+			int child = 2 * slot + 1;
+			int right = child + 1;
+			if(right < size && keys[right] < keys[child]) child = right;
+			if(key <= keys[child]) break;
+			int childCell = heap[child];
+			heap[slot] = childCell;
+			keys[slot] = keys[child];
+			position[childCell] = slot;
+			slot = child;
+		}
+		heap[slot] = cell;
+		keys[slot] = key;
+		position[cell] = slot;
+	}
+
+	private void grow() {
+		int capacity = Math.min(Math.max(heap.length * 2, 16), Math.max(position.length, 16));
+		heap = Arrays.copyOf(heap, capacity);
+		keys = Arrays.copyOf(keys, capacity);
+	}
+}
@@ -0,0 +1,54 @@
+package algorithm;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints (cell indices), used where a List<Integer> would box every entry
+ */
+class IntList {
+	private int[] values;
+	private int size;
+
+	IntList() {
+		this(16);
+	}
+
+	IntList(int capacity) {
+		values = new int[Math.max(1, capacity)];
+	}
+
+	void add(int value) {
+		if(size == values.length) {
+			values = Arrays.copyOf(values, values.length * 2);
+		}
+		values[size++] = value;
+	}
+
+	void addAll(IntList other) {
+		if(size + other.size > values.length) {
+			values = Arrays.copyOf(values, Math.max(values.length * 2, size + other.size));
+		}
+		System.arraycopy(other.values, 0, values, size, other.size);
+		size += other.size;
+	}
+
+	int get(int index) {
+		return values[index];
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+}
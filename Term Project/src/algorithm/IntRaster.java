@@ -0,0 +1,106 @@
+package algorithm;
+
+/**
+ * Two dimensional grid of ints stored row-major in a single flat array (used for sources and paths).
+ * The value of cell (x, y) is stored at data[y * stride + x], where stride >= width.
+ */
+public class IntRaster {
+	private final int width;
+	private final int height;
+	private final int stride;
+	private final int[] data;
+
+	/**
+	 * Creates a zero filled raster
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @throws IllegalArgumentException if a dimension is negative
+	 */
+	public IntRaster(int width, int height) {
+		this(width, height, width, new int[Raster.checkedSize(width, height)]);
+	}
+
+	/**
+	 * Wraps an existing row-major array
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param stride distance in the array between the start of two consecutive rows
+	 * @param data row-major cell values
+	 * @throws IllegalArgumentException if the dimensions do not fit the data array
+	 */
+	public IntRaster(int width, int height, int stride, int[] data) {
+		if(data == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(width < 0 || height < 0 || stride < width || (height > 0 && (long) (height - 1) * stride + width > data.length)) {
+			throw new IllegalArgumentException("Illegal raster dimensions.");
+		}
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+		this.data = data;
+	}
+
+	public int getWidth() { return width; }
+	public int getHeight() { return height; }
+	public int getStride() { return stride; }
+	/**
+	 * @return the backing array (shared, not copied)
+	 */
+	public int[] getData() { return data; }
+
+	/**
+	 * @return index into getData() of cell (x, y)
+	 */
+	public int index(int x, int y) {
+		return y * stride + x;
+	}
+
+	public int get(int x, int y) {
+		return data[y * stride + x];
+	}
+
+	public void set(int x, int y, int value) {
+		data[y * stride + x] = value;
+	}
+
+	/**
+	 * Converts a 2D array indexed [x][y] to a raster
+	 * @param map 2D array (assumes that all columns have the same length)
+	 * @return raster holding a copy of map
+	 * @throws IllegalArgumentException if map is null or empty
+	 */
+	public static IntRaster fromArray(int[][] map) {
+		if(map == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(map.length == 0 || map[0].length == 0) {
+			throw new IllegalArgumentException("Illegal dimensions.");
+		}
+		int width = map.length;
+		int height = map[0].length;
+		IntRaster raster = new IntRaster(width, height);
+		int[] data = raster.data;
+		for(int x = 0; x < width; x++) {
+			int[] column = map[x];
+			for(int y = 0; y < height; y++) {
+				data[y * width + x] = column[y];
+			}
+		}
+		return raster;
+	}
+
+	/**
+	 * @return copy of the raster as a 2D array indexed [x][y]
+	 */
+	public int[][] toArray() {
+		int[][] map = new int[width][height];
+		for(int y = 0; y < height; y++) {
+			int row = y * stride;
+			for(int x = 0; x < width; x++) {
+				map[x][y] = data[row + x];
+			}
+		}
+		return map;
+	}
+}
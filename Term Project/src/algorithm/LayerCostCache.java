@@ -0,0 +1,184 @@
+package algorithm;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Least recently used cache of layer cost rasters within a memory budget.
+ * Entries are keyed by the map type, a 64-bit hash of the layer contents and the parameters the layer cost depends on,
+ * so a layer read again from the same file (or an unchanged layer with new weightings) hits the cache.
+ * Cached rasters are shared and must not be modified. All methods are thread safe.
+ */
+public class LayerCostCache {
+	private final long maxBytes;
+	private long bytes;
+	private long hits, misses;
+	private final LinkedHashMap<Key, Raster> entries = new LinkedHashMap<Key, Raster>(16, 0.75f, true);
+
+	/**
+	 * @param maxBytes memory budget for the cached rasters (8 bytes per cell)
+	 * @throws IllegalArgumentException if maxBytes is negative
+	 */
+	public LayerCostCache(long maxBytes) {
+		if(maxBytes < 0) {
+			throw new IllegalArgumentException("Negative memory budget.");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Builds the key of a layer cost, ignoring the parameters that the cost of type does not depend on
+	 * @param type map type of the layer
+	 * @param layer raster (or ByteLayer) of the map data
+	 * @param cellSize dimensions of cell in meters (length/width of cell square)
+	 * @param altitudeScale scale factor for altitude
+	 * @param roadDistance method used to measure the distance to the nearest road
+	 * @param pool pool to hash the layer in parallel row bands, or null
+	 * @return key of the layer cost
+	 */
+	static Key keyFor(MapUtil.MapTypes type, Grid layer, double cellSize, double altitudeScale, MapUtil.DistanceMethods roadDistance, ForkJoinPool pool) {
+		boolean usesCellSize = type == MapUtil.MapTypes.ALTITUDE || type == MapUtil.MapTypes.ROADS;
+		boolean usesAltitudeScale = type == MapUtil.MapTypes.ALTITUDE || type == MapUtil.MapTypes.WATER;
+		return new Key(type, contentHash(layer, pool), layer.getWidth(), layer.getHeight(),
+				usesCellSize ? cellSize : 0, usesAltitudeScale ? altitudeScale : 0, type == MapUtil.MapTypes.ROADS ? roadDistance : null);
+	}
+
+	/**
+	 * @return the cached layer cost for key, or null if it is not cached
+	 */
+	synchronized Raster get(Key key) {
+		Raster cost = entries.get(key);
+		if(cost != null) hits++;
+		else misses++;
+		return cost;
+	}
+
+	/**
+	 * Caches a layer cost, evicting the least recently used entries to stay within the memory budget
+	 * (a raster larger than the whole budget is not cached)
+	 */
+	synchronized void put(Key key, Raster cost) {
+		long size = 8L*cost.getData().length;
+		if(size > maxBytes) return;
+		Raster previous = entries.put(key, cost);
+		if(previous != null) bytes -= 8L*previous.getData().length;
+		bytes += size;
+		Iterator<Map.Entry<Key, Raster>> eldest = entries.entrySet().iterator();
+		while(bytes > maxBytes && eldest.hasNext()) {
+			Map.Entry<Key, Raster> entry = eldest.next();
+			if(entry.getKey().equals(key)) continue;
+			bytes -= 8L*entry.getValue().getData().length;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Removes every entry
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	public synchronized int size() { return entries.size(); }
+	public synchronized long getBytes() { return bytes; }
+	public synchronized long getHits() { return hits; }
+	public synchronized long getMisses() { return misses; }
+
+	/**
+	 * 64-bit hash of the width, height and cell values of a layer (rows are hashed in parallel and combined in order).
+	 * A ByteLayer hashes the same as a raster of the same values.
+	 */
+	private static long contentHash(final Grid layer, ForkJoinPool pool) {
+		final int width = layer.getWidth();
+		final long[] rowHashes = new long[layer.getHeight()];
+		if(layer instanceof ByteLayer) {
+			final ByteLayer bytes = (ByteLayer) layer;
+			final byte[] data = bytes.getData();
+			final long[] valueBits = new long[256];
+			for(int value = 0; value < 256; value++) valueBits[value] = Double.doubleToLongBits(value);
+			RowBands.run(pool, layer.getHeight(), new RowBands.Kernel() {
+				@Override
+				public void run(int fromY, int toY) {
+					for(int y = fromY; y < toY; y++) {
+						int row = bytes.index(0, y);
+						long hash = 0x9E3779B97F4A7C15L;
+						for(int x = 0; x < width; x++) {
+							hash = mix(hash ^ valueBits[data[row + x] & 255]);
+						}
+						rowHashes[y] = hash;
+					}
+				}
+			});
+		} else {
+			final Raster raster = Raster.fromGrid(layer);
+			final double[] data = raster.getData();
+			RowBands.run(pool, layer.getHeight(), new RowBands.Kernel() {
+				@Override
+				public void run(int fromY, int toY) {
+					for(int y = fromY; y < toY; y++) {
+						int row = raster.index(0, y);
+						long hash = 0x9E3779B97F4A7C15L;
+						for(int x = 0; x < width; x++) {
+							hash = mix(hash ^ Double.doubleToLongBits(data[row + x]));
+						}
+						rowHashes[y] = hash;
+					}
+				}
+			});
+		}
+		long hash = mix(((long) width << 32) | layer.getHeight());
+		for(long rowHash : rowHashes) {
+			hash = mix(hash ^ rowHash);
+		}
+		return hash;
+	}
+
+	// 64-bit finalizer of MurmurHash3
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xFF51AFD7ED558CCDL;
+		value ^= value >>> 33;
+		value *= 0xC4CEB93FE1A85A53L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+	static final class Key {
+		private final MapUtil.MapTypes type;
+		private final long contentHash;
+		private final int width, height;
+		private final double cellSize, altitudeScale;
+		private final MapUtil.DistanceMethods roadDistance;
+
+		Key(MapUtil.MapTypes type, long contentHash, int width, int height, double cellSize, double altitudeScale, MapUtil.DistanceMethods roadDistance) {
+			this.type = type;
+			this.contentHash = contentHash;
+			this.width = width;
+			this.height = height;
+			this.cellSize = cellSize;
+			this.altitudeScale = altitudeScale;
+			this.roadDistance = roadDistance;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key)) return false;
+			Key key = (Key) other;
+			return type == key.type && contentHash == key.contentHash && width == key.width && height == key.height
+					&& Double.compare(cellSize, key.cellSize) == 0 && Double.compare(altitudeScale, key.altitudeScale) == 0 && roadDistance == key.roadDistance;
+		}
+
+		@Override
+		public int hashCode() {
+			long hash = contentHash;
+			hash = 31*hash + type.ordinal();
+			hash = 31*hash + Double.doubleToLongBits(cellSize);
+			hash = 31*hash + Double.doubleToLongBits(altitudeScale);
+			hash = 31*hash + (roadDistance != null ? roadDistance.ordinal() + 1 : 0);
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+}
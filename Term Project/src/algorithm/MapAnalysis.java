@@ -5,9 +5,22 @@ import java.util.Map;
 import algorithm.MapUtil.Pair;
 
 public class MapAnalysis {		
-	public double[][] discreteCost;
-	public double[][] accumulatedCost;
-	public int[][] path;
+	// Cost surfaces: Rasters, or FloatRasters when settings.precision is FLOAT
+	public Grid discreteCost;
+	public Grid accumulatedCost;
+	// Direction from every cell to the neighbor its accumulated cost is reached through (see AccumulatedCostAnalysis.generateAccumulatedCostMap)
+	public ByteRaster predecessors;
+	// Least cost path from start to the source
+	public CellPath path;
+	// Upper bound on the relative gap between the accumulated cost of the start and the optimum (0 unless routing is PYRAMID)
+	public double optimalityGap;
+	
+	// Inputs kept so that the analysis can be updated
+	private IntRaster source;
+	private Pair<Integer, Integer> start;
+	private Map<MapUtil.MapTypes, ? extends Grid> layers;
+	private double cellSize, altitudeScale, costDistance;
+	private AnalysisSettings settings;
 	
 	/**
 	 * Generates a discrete cost map, accumulated cost map, and an optimal path given the geographical information of a map.
@@ -20,106 +33,159 @@ public class MapAnalysis {
 	 * @param weightings mapping of a map type to a weighting
 	 */
 	public MapAnalysis(int[][] source, Pair<Integer, Integer> start, Map<MapUtil.MapTypes, double[][]> layers, double cellSize, double altitudeScale, double costDistance, Map<MapUtil.MapTypes, Double> weightings) {	
-		// Discrete cost analysis
-		discreteCost =  DiscreteCostAnalysis.generateDiscreteCostMap(layers, cellSize, altitudeScale, weightings);
-		
-		// Accumulated cost analysis
-		accumulatedCost = AccumulatedCostAnalysis.generateAccumulatedCostMap(source, discreteCost, costDistance);
-		
-		// Steepest Cost Path analysis
-		path = steepestCostPath(start, accumulatedCost);
-		
+		this(IntRaster.fromArray(source), start, Raster.fromArrays(layers), cellSize, altitudeScale, costDistance, weightings);
 	}
 	
 	/**
-	 * Using the greedy algorithm of choosing the next neighbor with the least accumulatedCost value to be the next path segment and generates an optimal path 
-	 * (It is called the steepest Cost Path because the accumulatedCost map can be considered like an altitude map where we are going from a high altitude to ground level and generate a path that takes to sttepest path segments)
+	 * Generates a discrete cost raster, accumulated cost raster, and an optimal path given the geographical information of a map.
+	 * @param source ending area for the path represented as a raster where a non-zero represents a potential ending area
 	 * @param start starting point for the path
-	 * @param accumulatedCost the accumulated cost map for the area (assumes that this s a valid accumuatedCost map and so there is at least one cell with a value of 0)
-	 * @return the optimal path represented as a 2D array where a non-zero represents a path segment
+	 * @param layers mapping of a map type to the map information (rasters, or ByteLayers for layers read from 8-bit images)
+	 * @param cellSize dimensions of cell in meters (length/width of cell square)
+	 * @param altitudeScale scale factor for altitude
+	 * @param costDistance cost to traverse cell
+	 * @param weightings mapping of a map type to a weighting
 	 */
-	private static int[][] steepestCostPath(Pair<Integer, Integer> start, double[][] accumulatedCost) {
-		int x = start.getFirst();
-		int y = start.getSecond();
+	public MapAnalysis(IntRaster source, Pair<Integer, Integer> start, Map<MapUtil.MapTypes, ? extends Grid> layers, double cellSize, double altitudeScale, double costDistance, Map<MapUtil.MapTypes, Double> weightings) {	
+		this(source, start, layers, cellSize, altitudeScale, costDistance, weightings, new AnalysisSettings());
+	}
+	
+	/**
+	 * Generates a discrete cost raster, accumulated cost raster, and an optimal path given the geographical information of a map.
+	 * @param source ending area for the path represented as a raster where a non-zero represents a potential ending area
+	 * @param start starting point for the path
+	 * @param layers mapping of a map type to the map information (rasters, or ByteLayers for layers read from 8-bit images)
+	 * @param cellSize dimensions of cell in meters (length/width of cell square)
+	 * @param altitudeScale scale factor for altitude
+	 * @param costDistance cost to traverse cell
+	 * @param weightings mapping of a map type to a weighting
+	 * @param settings analysis settings (settings.monitor is told each phase and search, records them if it is an AnalysisMetrics, and can cancel the analysis)
+	 * @throws java.util.concurrent.CancellationException if settings.monitor is cancelled
+	 */
+	public MapAnalysis(IntRaster source, Pair<Integer, Integer> start, Map<MapUtil.MapTypes, ? extends Grid> layers, double cellSize, double altitudeScale, double costDistance, Map<MapUtil.MapTypes, Double> weightings, AnalysisSettings settings) {	
+		this.source = source;
+		this.start = start;
+		this.layers = layers;
+		this.cellSize = cellSize;
+		this.altitudeScale = altitudeScale;
+		this.costDistance = costDistance;
+		this.settings = settings;
 		
-		// Initialize path
-		int width = accumulatedCost.length;
-		int height = accumulatedCost[0].length;
-		int[][] path = new int[width][height];
+		// Discrete cost analysis
+		startPhase(MapUtil.AnalysisPhases.DISCRETE_COST);
+		discreteCost = discreteCost(weightings);
+		finishPhase(MapUtil.AnalysisPhases.DISCRETE_COST);
 		
-		double currValue = accumulatedCost[x][y];
-		path[x][y] = 1;
+		// Accumulated cost analysis
+		route();
+	}
+	
+	/**
+	 * Updates the analysis for new weightings of the same layers.
+	 * With FULL_SURFACE routing in DOUBLE precision the accumulated cost is repaired only where the discrete cost changed
+	 * (see AccumulatedCostAnalysis.repairAccumulatedCostMap), otherwise it is recalculated.
+	 * If the update is cancelled the analysis is left inconsistent and should be discarded.
+	 * @param weightings mapping of a map type to a weighting
+	 * @throws java.util.concurrent.CancellationException if settings.monitor is cancelled
+	 */
+	public void updateWeightings(Map<MapUtil.MapTypes, Double> weightings) {
+		startPhase(MapUtil.AnalysisPhases.DISCRETE_COST);
+		Grid previousDiscreteCost = discreteCost;
+		discreteCost = discreteCost(weightings);
+		finishPhase(MapUtil.AnalysisPhases.DISCRETE_COST);
 		
-		// Until the path has reached the source (where the source cells have values of 0)
-		while(currValue != 0) {
-			// Determine the next path segment by finding the neighbor with the least cost
-			Pair<Integer, Integer> nextCell = null;
-			double smallestValue = -1;
-			// Down
-			if(y + 1 < accumulatedCost[0].length && path[x][y + 1] != 1) {
-				if(smallestValue == -1 || accumulatedCost[x][y + 1] < smallestValue) {
-					smallestValue = accumulatedCost[x][y + 1];
-					nextCell = new Pair<Integer, Integer>(x, y + 1);
-				}
-			}
-			// Up
-			if(y - 1 >= 0 && path[x][y - 1] != 1) {
-				if(smallestValue == -1 || accumulatedCost[x][y - 1] < smallestValue) {
-					smallestValue = accumulatedCost[x][y - 1];
-					nextCell = new Pair<Integer, Integer>(x, y - 1);
-				}
-			}
-			// Right
-			if((x + 1 < accumulatedCost.length) && path[x + 1][y] != 1) {
-				if(smallestValue == -1 || accumulatedCost[x + 1][y] < smallestValue) {
-					smallestValue = accumulatedCost[x + 1][y];
-					nextCell = new Pair<Integer, Integer>(x + 1, y);
-				}
-			}
-			// Left
-			if((x - 1 >= 0) && path[x -  1][y] != 1) {
-				if(smallestValue == -1 || accumulatedCost[x - 1][y] < smallestValue) {
-					smallestValue = accumulatedCost[x - 1][y];
-					nextCell = new Pair<Integer, Integer>(x - 1, y);
-				}
+		if(settings.routing == MapUtil.RoutingModes.FULL_SURFACE && settings.precision == MapUtil.Precisions.DOUBLE) {
+			startPhase(MapUtil.AnalysisPhases.ACCUMULATED_COST);
+			Raster previous = (Raster) previousDiscreteCost;
+			Raster discrete = (Raster) discreteCost;
+			int[] changedCells = changedCells(previous, discrete);
+			if(changedCells.length > 0) {
+				accumulatedCost = AccumulatedCostAnalysis.repairAccumulatedCostMap(source, previous, (Raster) accumulatedCost, discrete, costDistance, changedCells, settings.maxRepairFraction, settings.monitor);
+				finishPhase(MapUtil.AnalysisPhases.ACCUMULATED_COST);
+				startPhase(MapUtil.AnalysisPhases.PATH);
+				AccumulatedCostAnalysis.generatePredecessors(source, discrete, (Raster) accumulatedCost, costDistance, predecessors);
+				path = CellPath.fromPredecessors(predecessors, start.getFirst(), start.getSecond());
+				finishPhase(MapUtil.AnalysisPhases.PATH);
+			} else {
+				finishPhase(MapUtil.AnalysisPhases.ACCUMULATED_COST);
 			}
-			// Down-Right
-			if(y + 1 < accumulatedCost[0].length && (x + 1 < accumulatedCost.length) && path[x + 1][y + 1] != 1) {
-				if(smallestValue == -1 || accumulatedCost[x + 1][y + 1] < smallestValue) {
-					smallestValue = accumulatedCost[x + 1][y + 1];
-					nextCell = new Pair<Integer, Integer>(x + 1, y + 1);
-				}
-			}
-			// Down-Left
-			if(y + 1 < accumulatedCost[0].length && (x - 1 >= 0) && path[x - 1][y + 1] != 1) {
-				if(smallestValue == -1 || accumulatedCost[x - 1][y + 1] < smallestValue) {
-					smallestValue = accumulatedCost[x - 1][y + 1];
-					nextCell = new Pair<Integer, Integer>(x - 1, y + 1);
-				}
-			}
-			// Up-Right
-			if(y - 1 >= 0 && (x + 1 < accumulatedCost.length) && path[x + 1][y - 1] != 1) {
-				if(smallestValue == -1 || accumulatedCost[x + 1][y - 1] < smallestValue) {
-					smallestValue = accumulatedCost[x + 1][y - 1];
-					nextCell = new Pair<Integer, Integer>(x + 1, y - 1);
-				}
-			}
-			// Up-Left
-			if(y - 1 >= 0 && (x - 1 >= 0) && path[x - 1][y - 1] != 1) {
-				if(smallestValue == -1 || accumulatedCost[x - 1][y - 1] < smallestValue) {
-					smallestValue = accumulatedCost[x - 1][y - 1];
-					nextCell = new Pair<Integer, Integer>(x - 1, y - 1);
-				}
+		} else {
+			route();
+		}
+	}
+	
+	/**
+	 * @return discrete cost surface in the precision of the settings
+	 */
+	private Grid discreteCost(Map<MapUtil.MapTypes, Double> weightings) {
+		Raster discrete = DiscreteCostAnalysis.generateDiscreteCostRaster(layers, cellSize, altitudeScale, weightings, settings);
+		return settings.precision == MapUtil.Precisions.FLOAT ? FloatRaster.fromRaster(discrete) : discrete;
+	}
+	
+	/**
+	 * Accumulated cost and Steepest Cost Path analysis of the current discrete cost
+	 */
+	private void route() {
+		startPhase(MapUtil.AnalysisPhases.ACCUMULATED_COST);
+		predecessors = new ByteRaster(source.getWidth(), source.getHeight(), MapUtil.NO_PREDECESSOR);
+		boolean singlePrecision = settings.precision == MapUtil.Precisions.FLOAT;
+		if(settings.routing == MapUtil.RoutingModes.PYRAMID) {
+			// the coarse levels are small, so the pyramid routes in double precision and only its result is stored as floats
+			PyramidAnalysis pyramid = new PyramidAnalysis(source, Raster.fromGrid(discreteCost), costDistance, start.getFirst(), start.getSecond(), settings);
+			accumulatedCost = singlePrecision ? FloatRaster.fromRaster(pyramid.accumulatedCost) : pyramid.accumulatedCost;
+			predecessors = pyramid.predecessors;
+			optimalityGap = pyramid.optimalityGap;
+		} else if(singlePrecision) {
+			FloatRaster discrete = (FloatRaster) discreteCost;
+			if(settings.routing == MapUtil.RoutingModes.POINT_TO_POINT) {
+				accumulatedCost = AccumulatedCostAnalysis.generatePointToPointCostMap(source, discrete, costDistance, start.getFirst(), start.getSecond(), predecessors, settings.monitor);
+			} else {
+				accumulatedCost = AccumulatedCostAnalysis.generateAccumulatedCostMap(source, discrete, costDistance, predecessors, settings.monitor);
 			}
-			
-			// Adds path segment to the path
-			x = nextCell.getFirst();
-			y = nextCell.getSecond();
-			path[x][y] = 1;
-			currValue = accumulatedCost[x][y];
+		} else if(settings.routing == MapUtil.RoutingModes.POINT_TO_POINT) {
+			accumulatedCost = AccumulatedCostAnalysis.generatePointToPointCostMap(source, (Raster) discreteCost, costDistance, start.getFirst(), start.getSecond(), predecessors, settings.monitor);
+		} else {
+			accumulatedCost = AccumulatedCostAnalysis.generateAccumulatedCostMap(source, (Raster) discreteCost, costDistance, settings, predecessors);
 		}
 		
-		return path;
+		finishPhase(MapUtil.AnalysisPhases.ACCUMULATED_COST);
+		
+		// Least cost path, following the predecessors from start
+		startPhase(MapUtil.AnalysisPhases.PATH);
+		path = CellPath.fromPredecessors(predecessors, start.getFirst(), start.getSecond());
+		finishPhase(MapUtil.AnalysisPhases.PATH);
+	}
+	
+	/**
+	 * Tells the monitor, if any, that a phase starts, after checking that the analysis was not cancelled
+	 */
+	private void startPhase(MapUtil.AnalysisPhases phase) {
+		if(settings.monitor != null) {
+			settings.monitor.checkCancelled();
+			settings.monitor.phaseStarted(phase);
+		}
+	}
+	
+	/**
+	 * Tells the monitor, if any, that a phase is finished
+	 */
+	private void finishPhase(MapUtil.AnalysisPhases phase) {
+		if(settings.monitor != null) {
+			settings.monitor.phaseFinished(phase);
+		}
+	}
+	
+	/**
+	 * @return cells (y * width + x) whose value differs between two rasters of the same dimensions
+	 */
+	private static int[] changedCells(Raster before, Raster after) {
+		IntList changed = new IntList();
+		for(int y = 0; y < after.getHeight(); y++) {
+			for(int x = 0; x < after.getWidth(); x++) {
+				if(Double.compare(before.get(x, y), after.get(x, y)) != 0) changed.add(y*after.getWidth() + x);
+			}
+		}
+		return changed.toArray();
 	}
 
 }
@@ -0,0 +1,259 @@
+package algorithm;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Coarse-to-fine routing on a pyramid of the discrete cost raster.
+ * Level k of the pyramid combines blocks of 2^k x 2^k cells into one cell. The route is solved on the coarsest level,
+ * then at each finer level the search is restricted to a corridor of corridorWidth cells around the path of the level above,
+ * down to a full resolution accumulated cost within the final corridor.
+ *
+ * The result is not guaranteed to be optimal, so an admissible lower bound on the optimal accumulated cost of the start is
+ * computed as well: any better path has to leave the final corridor (or start from a source outside of it), and the cost
+ * of leaving it is bounded below by the corridor cost at the exit plus the A* heuristic from there to the start.
+ */
+public class PyramidAnalysis {
+	// Full resolution accumulated cost within the final corridor, Double.POSITIVE_INFINITY outside of it
+	public Raster accumulatedCost;
+	// Full resolution predecessor directions within the final corridor (see AccumulatedCostAnalysis.generateAccumulatedCostMap)
+	public ByteRaster predecessors;
+	// Accumulated cost of the start found through the corridor
+	public double cost;
+	// Admissible lower bound on the optimal accumulated cost of the start
+	public double lowerBound;
+	// Upper bound on the relative gap between cost and the optimum, (cost - lowerBound) / cost
+	// (NaN if the corridor holds no path to the source although there may be one outside of it)
+	public double optimalityGap;
+
+	/**
+	 * Routes from the start to the source through the pyramid
+	 * @param source raster representing the source, where the source cells are given a non-zero value and all others cells are 0.
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to travel from one cell to the next
+	 * @param startX column of the start cell
+	 * @param startY row of the start cell
+	 * @param settings analysis settings (pyramidLevels, corridorWidth, pyramidAggregation, and the engine and parallelism of the coarsest search)
+	 * @throws IllegalArgumentException if arguments are null, the dimensions of discreteCost and source are not the same or dimensions are 0,
+	 * start is outside the raster, or pyramidLevels is less than 1 or corridorWidth is negative
+	 */
+	public PyramidAnalysis(IntRaster source, Raster discreteCost, double costDistance, int startX, int startY, AnalysisSettings settings) {
+		if(discreteCost == null || source == null || settings == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(discreteCost.getWidth() == 0 || discreteCost.getHeight() == 0 || discreteCost.getWidth() != source.getWidth() || discreteCost.getHeight() != source.getHeight()) {
+			throw new IllegalArgumentException("Illegal dimensions of discreteCost and source.");
+		}
+		if(startX < 0 || startX >= discreteCost.getWidth() || startY < 0 || startY >= discreteCost.getHeight()) {
+			throw new IllegalArgumentException("Start is outside of the map.");
+		}
+		if(settings.pyramidLevels < 1 || settings.corridorWidth < 0) {
+			throw new IllegalArgumentException("Illegal pyramid settings.");
+		}
+
+		int width = discreteCost.getWidth();
+		int height = discreteCost.getHeight();
+		Raster discrete = discreteCost.compact();
+
+		// no point in levels coarser than a single cell
+		int coarsest = settings.pyramidLevels - 1;
+		while(coarsest > 0 && (Math.max(width, height) - 1) >> (coarsest - 1) == 0) coarsest--;
+
+		ForkJoinPool pool = RowBands.newPool(settings.parallelism);
+		try {
+			boolean[] corridor = null;
+			for(int level = coarsest; level >= 0; level--) {
+				int factor = 1 << level;
+				Raster levelDiscrete = level == 0 ? discrete : downsample(discrete, factor, settings.pyramidAggregation, pool);
+				IntRaster levelSource = level == 0 ? source : downsample(source, factor);
+				// a coarse step crosses factor cells
+				double levelCostDistance = costDistance*factor;
+
+				// the path is only followed at full resolution
+				ByteRaster levelPredecessors = level == 0 ? new ByteRaster(width, height, MapUtil.NO_PREDECESSOR) : null;
+				Raster levelCost;
+				if(corridor == null) {
+					levelCost = AccumulatedCostAnalysis.generateAccumulatedCostMap(levelSource, levelDiscrete, levelCostDistance, settings, levelPredecessors);
+				} else {
+					levelCost = AccumulatedCostAnalysis.generateCorridorCostMap(levelSource, levelDiscrete, levelCostDistance, corridor, levelPredecessors, settings.monitor);
+				}
+
+				if(level > 0) {
+					IntList path = descend(levelCost, startX/factor, startY/factor);
+					int fineWidth = (width + (factor >> 1) - 1)/(factor >> 1);
+					int fineHeight = (height + (factor >> 1) - 1)/(factor >> 1);
+					corridor = corridorAround(path, levelCost.getWidth(), fineWidth, fineHeight, settings.corridorWidth, pool);
+				} else {
+					accumulatedCost = levelCost;
+					predecessors = levelPredecessors;
+					cost = levelCost.get(startX, startY);
+					lowerBound = corridor == null ? cost : lowerBound(source, discrete, levelCost, corridor, costDistance, startX, startY);
+					optimalityGap = cost == lowerBound ? 0 : (cost - lowerBound)/cost;
+				}
+			}
+		} finally {
+			if(pool != null) pool.shutdown();
+		}
+	}
+
+	/**
+	 * Combines blocks of factor x factor cells into one cell, scaled by factor since a coarse cell is crossed in factor steps
+	 * @param discrete compact discrete cost raster
+	 * @return coarse discrete cost raster of ceil(width / factor) x ceil(height / factor) cells
+	 */
+	private static Raster downsample(final Raster discrete, final int factor, final MapUtil.Aggregations aggregation, ForkJoinPool pool) {
+		final int width = discrete.getWidth();
+		final int height = discrete.getHeight();
+		final int coarseWidth = (width + factor - 1)/factor;
+		final int coarseHeight = (height + factor - 1)/factor;
+		final double[] data = discrete.getData();
+		Raster coarse = new Raster(coarseWidth, coarseHeight);
+		final double[] coarseData = coarse.getData();
+
+		RowBands.run(pool, coarseHeight, new RowBands.Kernel() {
+			@Override
+			public void run(int fromY, int toY) {
+				for(int cy = fromY; cy < toY; cy++) {
+					int yEnd = Math.min(height, (cy + 1)*factor);
+					for(int cx = 0; cx < coarseWidth; cx++) {
+						int xEnd = Math.min(width, (cx + 1)*factor);
+						double min = Double.POSITIVE_INFINITY;
+						double sum = 0;
+						int count = 0;
+						for(int y = cy*factor; y < yEnd; y++) {
+							for(int x = cx*factor; x < xEnd; x++) {
+								double value = data[y*width + x];
+								if(value < min) min = value;
+								sum += value;
+								count++;
+							}
+						}
+						double value = aggregation == MapUtil.Aggregations.MIN ? min : sum/count;
+						coarseData[cy*coarseWidth + cx] = value*factor;
+					}
+				}
+			}
+		});
+		return coarse;
+	}
+
+	/**
+	 * @return coarse source raster where a cell is a source if any cell of its block is
+	 */
+	private static IntRaster downsample(IntRaster source, int factor) {
+		int coarseWidth = (source.getWidth() + factor - 1)/factor;
+		int coarseHeight = (source.getHeight() + factor - 1)/factor;
+		IntRaster coarse = new IntRaster(coarseWidth, coarseHeight);
+		int[] data = source.getData();
+		for(int y = 0; y < source.getHeight(); y++) {
+			int row = source.index(0, y);
+			for(int x = 0; x < source.getWidth(); x++) {
+				if(data[row + x] != 0) coarse.set(x/factor, y/factor, 1);
+			}
+		}
+		return coarse;
+	}
+
+	/**
+	 * Follows the least accumulated cost neighbor from the start down to a source cell
+	 * @param accumulatedCost compact accumulated cost raster
+	 * @return cells (y * width + x) of the path, starting with the start
+	 */
+	private static IntList descend(Raster accumulatedCost, int x, int y) {
+		int width = accumulatedCost.getWidth();
+		int height = accumulatedCost.getHeight();
+		double[] accumulated = accumulatedCost.getData();
+		IntList path = new IntList();
+		int cell = y*width + x;
+		path.add(cell);
+		// every step lowers the accumulated cost, so the path cannot be longer than the number of cells
+		while(accumulated[cell] > 0 && accumulated[cell] < Double.POSITIVE_INFINITY && path.size() <= accumulated.length) {
+			x = cell % width;
+			y = cell / width;
+			int next = -1;
+			for(int n = 0; n < MapUtil.NEIGHBOR_COUNT; n++) {
+				int nx = x + MapUtil.NEIGHBOR_DX[n];
+				int ny = y + MapUtil.NEIGHBOR_DY[n];
+				if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+				int neighbor = ny*width + nx;
+				if(accumulated[neighbor] < accumulated[next < 0 ? cell : next]) next = neighbor;
+			}
+			if(next < 0) break;
+			cell = next;
+			path.add(cell);
+		}
+		return path;
+	}
+
+	/**
+	 * Flags the cells of the next finer level (half the block size) within corridorWidth cells of the path
+	 * @param path cells of the path on the coarse level
+	 * @param coarseWidth number of columns of the coarse level
+	 * @return row-major corridor flags of the finer level
+	 */
+	private static boolean[] corridorAround(IntList path, int coarseWidth, int fineWidth, int fineHeight, int corridorWidth, ForkJoinPool pool) {
+		boolean[] onPath = new boolean[fineWidth*fineHeight];
+		for(int i = 0; i < path.size(); i++) {
+			int cx = path.get(i) % coarseWidth;
+			int cy = path.get(i) / coarseWidth;
+			for(int y = 2*cy; y < Math.min(fineHeight, 2*cy + 2); y++) {
+				for(int x = 2*cx; x < Math.min(fineWidth, 2*cx + 2); x++) {
+					onPath[y*fineWidth + x] = true;
+				}
+			}
+		}
+		double[] squaredDistance = DistanceTransform.squaredEuclidean(onPath, fineWidth, fineHeight, pool);
+		double limit = (double) corridorWidth*corridorWidth;
+		boolean[] corridor = new boolean[fineWidth*fineHeight];
+		for(int cell = 0; cell < corridor.length; cell++) {
+			corridor[cell] = squaredDistance[cell] <= limit;
+		}
+		return corridor;
+	}
+
+	/**
+	 * Admissible lower bound on the optimal accumulated cost of the start: a path that is cheaper than the one in the corridor
+	 * either leaves the corridor, costing at least the corridor cost of the last cell inside plus the step out plus the heuristic
+	 * from the first cell outside to the start, or starts from a source outside of the corridor, costing at least the heuristic.
+	 */
+	private static double lowerBound(IntRaster source, Raster discrete, Raster accumulatedCost, boolean[] corridor, double costDistance, int startX, int startY) {
+		int width = discrete.getWidth();
+		int height = discrete.getHeight();
+		double[] discreteData = discrete.getData();
+		double[] accumulated = accumulatedCost.getData();
+		int[] sourceData = source.getData();
+		double diagonalDistance = costDistance*Math.sqrt(2);
+
+		double minDiscreteCost = Double.POSITIVE_INFINITY;
+		for(int cell = 0; cell < discreteData.length; cell++) {
+			if(discreteData[cell] < minDiscreteCost) minDiscreteCost = discreteData[cell];
+		}
+		minDiscreteCost = Math.max(0, minDiscreteCost);
+
+		double bound = accumulated[startY*width + startX];
+		for(int y = 0; y < height; y++) {
+			int sourceRow = source.index(0, y);
+			for(int x = 0; x < width; x++) {
+				int cell = y*width + x;
+				if(!corridor[cell]) {
+					if(sourceData[sourceRow + x] != 0) {
+						bound = Math.min(bound, AccumulatedCostAnalysis.heuristic(x, y, startX, startY, costDistance, diagonalDistance, minDiscreteCost));
+					}
+					continue;
+				}
+				if(accumulated[cell] == Double.POSITIVE_INFINITY) continue;
+				for(int n = 0; n < MapUtil.NEIGHBOR_COUNT; n++) {
+					int nx = x + MapUtil.NEIGHBOR_DX[n];
+					int ny = y + MapUtil.NEIGHBOR_DY[n];
+					if(nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+					int neighbor = ny*width + nx;
+					if(corridor[neighbor]) continue;
+					double distance = MapUtil.isDiagonal(n) ? diagonalDistance : costDistance;
+					double exitCost = accumulated[cell] + distance + discreteData[neighbor]
+							+ AccumulatedCostAnalysis.heuristic(nx, ny, startX, startY, costDistance, diagonalDistance, minDiscreteCost);
+					if(exitCost < bound) bound = exitCost;
+				}
+			}
+		}
+		return bound;
+	}
+}
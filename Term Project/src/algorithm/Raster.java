@@ -0,0 +1,176 @@
+package algorithm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Two dimensional grid of doubles stored row-major in a single flat array.
+ * The value of cell (x, y) is stored at data[y * stride + x], where stride >= width.
+ */
+public class Raster implements Grid {
+	private final int width;
+	private final int height;
+	private final int stride;
+	private final double[] data;
+
+	/**
+	 * Creates a zero filled raster
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @throws IllegalArgumentException if a dimension is negative
+	 */
+	public Raster(int width, int height) {
+		this(width, height, width, new double[checkedSize(width, height)]);
+	}
+
+	/**
+	 * Wraps an existing row-major array
+	 * @param width number of columns
+	 * @param height number of rows
+	 * @param stride distance in the array between the start of two consecutive rows
+	 * @param data row-major cell values
+	 * @throws IllegalArgumentException if the dimensions do not fit the data array
+	 */
+	public Raster(int width, int height, int stride, double[] data) {
+		if(data == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(width < 0 || height < 0 || stride < width || (height > 0 && (long) (height - 1) * stride + width > data.length)) {
+			throw new IllegalArgumentException("Illegal raster dimensions.");
+		}
+		this.width = width;
+		this.height = height;
+		this.stride = stride;
+		this.data = data;
+	}
+
+	@Override
+	public int getWidth() { return width; }
+	@Override
+	public int getHeight() { return height; }
+	public int getStride() { return stride; }
+	/**
+	 * @return the backing array (shared, not copied)
+	 */
+	public double[] getData() { return data; }
+
+	/**
+	 * @return index into getData() of cell (x, y)
+	 */
+	public int index(int x, int y) {
+		return y * stride + x;
+	}
+
+	@Override
+	public double get(int x, int y) {
+		return data[y * stride + x];
+	}
+
+	public void set(int x, int y, double value) {
+		data[y * stride + x] = value;
+	}
+
+	/**
+	 * @param other raster to compare with
+	 * @return true if other has the same width and height
+	 */
+	public boolean sameDimensions(Raster other) {
+		return other.width == width && other.height == height;
+	}
+
+	/**
+	 * @return this raster if rows are stored contiguously (stride == width), otherwise a contiguous copy
+	 */
+	public Raster compact() {
+		if(stride == width) return this;
+		Raster copy = new Raster(width, height);
+		for(int y = 0; y < height; y++) {
+			System.arraycopy(data, y * stride, copy.data, y * width, width);
+		}
+		return copy;
+	}
+
+	/**
+	 * Converts a 2D array indexed [x][y] to a raster
+	 * @param map 2D array (assumes that all columns have the same length)
+	 * @return raster holding a copy of map
+	 * @throws IllegalArgumentException if map is null or empty
+	 */
+	public static Raster fromArray(double[][] map) {
+		if(map == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(map.length == 0 || map[0].length == 0) {
+			throw new IllegalArgumentException("Illegal dimensions.");
+		}
+		int width = map.length;
+		int height = map[0].length;
+		Raster raster = new Raster(width, height);
+		double[] data = raster.data;
+		for(int x = 0; x < width; x++) {
+			double[] column = map[x];
+			for(int y = 0; y < height; y++) {
+				data[y * width + x] = column[y];
+			}
+		}
+		return raster;
+	}
+
+	/**
+	 * @param grid grid of cell values
+	 * @return grid itself if it is a raster, otherwise a raster holding a copy of its values
+	 * @throws IllegalArgumentException if grid is null
+	 */
+	public static Raster fromGrid(Grid grid) {
+		if(grid == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(grid instanceof Raster) return (Raster) grid;
+		if(grid instanceof ByteLayer) return ((ByteLayer) grid).toRaster();
+		if(grid instanceof FloatRaster) return ((FloatRaster) grid).toRaster();
+		Raster raster = new Raster(grid.getWidth(), grid.getHeight());
+		for(int y = 0; y < raster.height; y++) {
+			for(int x = 0; x < raster.width; x++) {
+				raster.data[y * raster.width + x] = grid.get(x, y);
+			}
+		}
+		return raster;
+	}
+
+	/**
+	 * Converts every 2D array indexed [x][y] in a mapping to a raster
+	 * @param maps mapping of keys to 2D arrays
+	 * @return mapping of the same keys to rasters
+	 */
+	public static <K> Map<K, Raster> fromArrays(Map<K, double[][]> maps) {
+		if(maps == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		Map<K, Raster> rasters = new HashMap<K, Raster>();
+		for(Map.Entry<K, double[][]> entry : maps.entrySet()) {
+			rasters.put(entry.getKey(), fromArray(entry.getValue()));
+		}
+		return rasters;
+	}
+
+	/**
+	 * @return copy of the raster as a 2D array indexed [x][y]
+	 */
+	public double[][] toArray() {
+		double[][] map = new double[width][height];
+		for(int y = 0; y < height; y++) {
+			int row = y * stride;
+			for(int x = 0; x < width; x++) {
+				map[x][y] = data[row + x];
+			}
+		}
+		return map;
+	}
+
+	static int checkedSize(int width, int height) {
+		if(width < 0 || height < 0 || (long) width * height > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Illegal raster dimensions.");
+		}
+		return width * height;
+	}
+}
@@ -0,0 +1,86 @@
+package algorithm;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs a kernel over a range of rows (or columns) split into bands on a ForkJoinPool.
+ * Every index is handed to the kernel exactly once, so a kernel that writes only its own rows gives the same result
+ * whatever the number of bands.
+ */
+public class RowBands {
+	// Smallest number of rows worth handing to a separate task
+	private static final int MIN_BAND = 16;
+
+	/**
+	 * Work done for the rows [from, to)
+	 */
+	public interface Kernel {
+		void run(int from, int to);
+	}
+
+	/**
+	 * Runs kernel over [0, count), in parallel bands if pool is not null
+	 * @param pool pool to run on, or null to run serially on the calling thread
+	 * @param count number of rows
+	 * @param kernel work for a band of rows
+	 */
+	public static void run(ForkJoinPool pool, int count, Kernel kernel) {
+		run(pool, count, MIN_BAND, kernel);
+	}
+
+	/**
+	 * Runs kernel over [0, count), in parallel bands of at least minBand indices if pool is not null
+	 * @param pool pool to run on, or null to run serially on the calling thread
+	 * @param count number of indices
+	 * @param minBand smallest number of indices worth handing to a separate task
+	 * @param kernel work for a band of indices
+	 */
+	public static void run(ForkJoinPool pool, int count, int minBand, Kernel kernel) {
+		if(pool == null || pool.getParallelism() <= 1 || count <= minBand) {
+			kernel.run(0, count);
+			return;
+		}
+		int band = Math.max(minBand, count / (pool.getParallelism() * 4));
+		BandAction action = new BandAction(kernel, 0, count, band);
+		if(ForkJoinTask.getPool() == pool) {
+			// already inside a task of this pool (e.g. one of several layers computed concurrently)
+			action.invoke();
+		} else {
+			pool.invoke(action);
+		}
+	}
+
+	/**
+	 * @param parallelism number of worker threads
+	 * @return a new pool, or null if parallelism is 1 or less (serial)
+	 */
+	public static ForkJoinPool newPool(int parallelism) {
+		return parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+	}
+
+	private static class BandAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Kernel kernel;
+		private final int from, to, band;
+
+		BandAction(Kernel kernel, int from, int to, int band) {
+			this.kernel = kernel;
+			this.from = from;
+			this.to = to;
+			this.band = band;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= band) {
+				kernel.run(from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new BandAction(kernel, from, middle, band), new BandAction(kernel, middle, to, band));
+		}
+	}
+}
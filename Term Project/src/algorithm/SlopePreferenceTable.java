@@ -0,0 +1,143 @@
+package algorithm;
+
+/**
+ * Precomputed slope preferences for altitude layers read from 8-bit images (whole numbers from 0 to 255).
+ * For such layers the altitude difference between two neighbors is a whole number from -255 to 255, so the slope
+ * preference of a cell only depends on its greatest and smallest difference to its neighbors, and both are looked up
+ * in 511-entry tables built once per cellSize/altitudeScale.
+ * Entries are computed with the same expressions as DiscreteCostAnalysis.slopePreference, so results are identical.
+ */
+public class SlopePreferenceTable {
+	// Altitude differences range from -MAX_DIFFERENCE to MAX_DIFFERENCE
+	public static final int MAX_DIFFERENCE = 255;
+	// Marks a neighbor outside of the layer (not a possible difference)
+	private static final int NO_NEIGHBOR = Integer.MIN_VALUE;
+
+	// preference if the greatest difference is d and the smallest is not too steep, indexed by d + MAX_DIFFERENCE
+	private final double[] preferenceByGreatest;
+	// true if a smallest difference of d is not too steep downwards (> -50 degrees), indexed by d + MAX_DIFFERENCE
+	private final boolean[] acceptableSmallest;
+
+	/**
+	 * Builds the tables
+	 * @param cellSize dimension of cell in meters
+	 * @param altitudeScale scale factor for altitude
+	 */
+	public SlopePreferenceTable(double cellSize, double altitudeScale) {
+		preferenceByGreatest = new double[2 * MAX_DIFFERENCE + 1];
+		acceptableSmallest = new boolean[2 * MAX_DIFFERENCE + 1];
+		for(int d = -MAX_DIFFERENCE; d <= MAX_DIFFERENCE; d++) {
+			double slope = slope(d, cellSize, altitudeScale);
+			// the greatest slope of a cell is never below 0 (flat)
+			double greatestSlope = Math.max(0, slope);
+			double preference = 9.0;
+			if(greatestSlope <= 60) {
+				preference = 1 + Math.pow(greatestSlope, 4)/Math.pow(60,4)*8;
+			}
+			preferenceByGreatest[d + MAX_DIFFERENCE] = preference;
+			acceptableSmallest[d + MAX_DIFFERENCE] = slope > -50;
+		}
+	}
+
+	/**
+	 * @param layer altitude layer
+	 * @return true if every altitude in layer is a whole number from 0 to 255 (so that the tables can be used)
+	 */
+	public static boolean appliesTo(Raster layer) {
+		double[] data = layer.getData();
+		for(int y = 0; y < layer.getHeight(); y++) {
+			int row = layer.index(0, y);
+			for(int x = 0; x < layer.getWidth(); x++) {
+				double altitude = data[row + x];
+				if(!(altitude >= 0 && altitude <= MAX_DIFFERENCE) || altitude != (int) altitude) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Slope preference of a cell from its 4 neighbors (1 most preferred, 9 least preferred)
+	 * @param altitudeLayer altitude layer for which appliesTo is true
+	 * @param x column of the cell
+	 * @param y row of the cell
+	 * @return the preference of the slope of the cell given the neighboring cells
+	 * @throws IllegalArgumentException if the cell has 1 neighbor or less
+	 */
+	public double preference(Raster altitudeLayer, int x, int y) {
+		double[] data = altitudeLayer.getData();
+		int stride = altitudeLayer.getStride();
+		int cell = altitudeLayer.index(x, y);
+		int altitude = (int) data[cell];
+		return preference(
+				y + 1 < altitudeLayer.getHeight() ? altitude - (int) data[cell + stride] : NO_NEIGHBOR, // Up
+				y - 1 >= 0 ? altitude - (int) data[cell - stride] : NO_NEIGHBOR, // Down
+				x + 1 < altitudeLayer.getWidth() ? altitude - (int) data[cell + 1] : NO_NEIGHBOR, // Right
+				x - 1 >= 0 ? altitude - (int) data[cell - 1] : NO_NEIGHBOR); // Left
+	}
+
+	/**
+	 * Slope preference of a cell of an 8-bit layer from its 4 neighbors (1 most preferred, 9 least preferred)
+	 * @param altitudeLayer altitude layer
+	 * @param x column of the cell
+	 * @param y row of the cell
+	 * @return the preference of the slope of the cell given the neighboring cells
+	 * @throws IllegalArgumentException if the cell has 1 neighbor or less
+	 */
+	public double preference(ByteLayer altitudeLayer, int x, int y) {
+		byte[] data = altitudeLayer.getData();
+		int stride = altitudeLayer.getStride();
+		int cell = altitudeLayer.index(x, y);
+		int altitude = data[cell] & 255;
+		return preference(
+				y + 1 < altitudeLayer.getHeight() ? altitude - (data[cell + stride] & 255) : NO_NEIGHBOR, // Up
+				y - 1 >= 0 ? altitude - (data[cell - stride] & 255) : NO_NEIGHBOR, // Down
+				x + 1 < altitudeLayer.getWidth() ? altitude - (data[cell + 1] & 255) : NO_NEIGHBOR, // Right
+				x - 1 >= 0 ? altitude - (data[cell - 1] & 255) : NO_NEIGHBOR); // Left
+	}
+
+	/**
+	 * Looks up the preference of a cell from the altitude differences to its neighbors
+	 * (the altitude of the cell minus the altitude of the neighbor, NO_NEIGHBOR for a neighbor outside of the layer)
+	 * @throws IllegalArgumentException if there is 1 neighbor or less
+	 */
+	private double preference(int up, int down, int right, int left) {
+		int greatest = Integer.MIN_VALUE;
+		int smallest = Integer.MAX_VALUE;
+		int neighborCount = 0;
+		if(up != NO_NEIGHBOR) {
+			greatest = Math.max(greatest, up);
+			smallest = Math.min(smallest, up);
+			neighborCount++;
+		}
+		if(down != NO_NEIGHBOR) {
+			greatest = Math.max(greatest, down);
+			smallest = Math.min(smallest, down);
+			neighborCount++;
+		}
+		if(right != NO_NEIGHBOR) {
+			greatest = Math.max(greatest, right);
+			smallest = Math.min(smallest, right);
+			neighborCount++;
+		}
+		if(left != NO_NEIGHBOR) {
+			greatest = Math.max(greatest, left);
+			smallest = Math.min(smallest, left);
+			neighborCount++;
+		}
+		if(neighborCount <= 1) {
+			throw new IllegalArgumentException();
+		}
+
+		if(!acceptableSmallest[smallest + MAX_DIFFERENCE]) return 9.0;
+		return preferenceByGreatest[greatest + MAX_DIFFERENCE];
+	}
+
+	/**
+	 * Slope in degrees for an altitude difference, computed exactly as in DiscreteCostAnalysis.slopePreference
+	 */
+	private static double slope(int difference, double cellSize, double altitudeScale) {
+		double altDiff = ((double) difference)*altitudeScale;
+		double calcSlope = altDiff/cellSize;
+		return Math.toDegrees(Math.atan(calcSlope));
+	}
+}
@@ -0,0 +1,230 @@
+package algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import algorithm.MapUtil.Pair;
+
+/**
+ * Least accumulated cost between every pair of a set of stations.
+ * The discrete cost raster is computed once and shared, read only, by one search per station. Every search is a separate task on a pool
+ * of settings.parallelism threads, so a thread starts the next station as soon as its search is done. Each search stops as soon as every
+ * station is settled (see AccumulatedCostAnalysis.generateMultiTargetCostMap), so stations that are close together settle far fewer cells
+ * than full surfaces would.
+ *
+ * Every concurrent search holds its own accumulated cost (8 bytes per cell), flags and source (5 bytes per cell), heap (up to 8 bytes per cell)
+ * and, with paths, predecessors (1 byte per cell); only the station costs and paths are kept once a search is done.
+ * The searches are the Dijkstra engine in double precision whatever settings.accumulatedCostEngine and settings.precision are,
+ * since they already run in parallel across stations and stop early.
+ */
+public class StationCostMatrix {
+	// Stations as (x, y) cells, in the order of the rows and columns of the matrix
+	public List<Pair<Integer, Integer>> stations;
+	// Discrete cost raster shared by the searches
+	public Raster discreteCost;
+	// costs[i][j] is the least accumulated cost of the path from station i to station j (as MapAnalysis with j as source and i as start),
+	// Double.POSITIVE_INFINITY if there is none
+	public double[][] costs;
+	// paths[i][j] is the least cost path from station i to station j, null if there is none, or paths is null if paths were not requested
+	public CellPath[][] paths;
+
+	/**
+	 * Computes the discrete cost raster from the layers, then the cost matrix of the stations
+	 * @param stations stations as (x, y) cells
+	 * @param layers mapping of a map type to the map information (rasters, or ByteLayers for layers read from 8-bit images)
+	 * @param cellSize dimensions of cell in meters (length/width of cell square)
+	 * @param altitudeScale scale factor for altitude
+	 * @param costDistance cost to traverse cell
+	 * @param weightings mapping of a map type to a weighting
+	 * @param withPaths true to also follow the path between every pair of stations
+	 * @param settings analysis settings (settings.parallelism searches run at the same time; settings.monitor is told each phase and search and can cancel the analysis)
+	 * @throws IllegalArgumentException if arguments are null, the layers are illegal (see DiscreteCostAnalysis.generateDiscreteCostRaster) or a station is outside the map
+	 * @throws CancellationException if settings.monitor is cancelled (or the analysis thread is interrupted while it waits for the searches)
+	 */
+	public StationCostMatrix(List<Pair<Integer, Integer>> stations, Map<MapUtil.MapTypes, ? extends Grid> layers, double cellSize, double altitudeScale,
+			double costDistance, Map<MapUtil.MapTypes, Double> weightings, boolean withPaths, AnalysisSettings settings) {
+		if(stations == null || settings == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		startPhase(MapUtil.AnalysisPhases.DISCRETE_COST, settings);
+		Raster discrete = DiscreteCostAnalysis.generateDiscreteCostRaster(layers, cellSize, altitudeScale, weightings, settings);
+		finishPhase(MapUtil.AnalysisPhases.DISCRETE_COST, settings);
+
+		route(stations, discrete, costDistance, withPaths, settings);
+	}
+
+	/**
+	 * Computes the cost matrix of the stations on a discrete cost raster
+	 * @param stations stations as (x, y) cells
+	 * @param discreteCost discrete cost raster
+	 * @param costDistance cost to traverse cell
+	 * @param withPaths true to also follow the path between every pair of stations
+	 * @param settings analysis settings (settings.parallelism searches run at the same time; settings.monitor is told each search and can cancel the analysis)
+	 * @throws IllegalArgumentException if arguments are null, dimensions are 0 or a station is outside the map
+	 * @throws CancellationException if settings.monitor is cancelled (or the analysis thread is interrupted while it waits for the searches)
+	 */
+	public StationCostMatrix(List<Pair<Integer, Integer>> stations, Raster discreteCost, double costDistance, boolean withPaths, AnalysisSettings settings) {
+		if(stations == null || discreteCost == null || settings == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		route(stations, discreteCost, costDistance, withPaths, settings);
+	}
+
+	/**
+	 * Runs the search of every station, settings.parallelism at a time, each filling in its column of the matrix
+	 */
+	private void route(List<Pair<Integer, Integer>> stations, Raster discreteCost, double costDistance, final boolean withPaths, AnalysisSettings settings) {
+		if(discreteCost.getWidth() == 0 || discreteCost.getHeight() == 0) {
+			throw new IllegalArgumentException("Illegal dimensions of discreteCost.");
+		}
+		int width = discreteCost.getWidth();
+		int height = discreteCost.getHeight();
+		final int count = stations.size();
+		final int[] xs = new int[count];
+		final int[] ys = new int[count];
+		for(int i = 0; i < count; i++) {
+			Pair<Integer, Integer> station = stations.get(i);
+			if(station == null || station.getFirst() == null || station.getSecond() == null) {
+				throw new IllegalArgumentException("Null arguments.");
+			}
+			xs[i] = station.getFirst();
+			ys[i] = station.getSecond();
+			if(xs[i] < 0 || xs[i] >= width || ys[i] < 0 || ys[i] >= height) {
+				throw new IllegalArgumentException("Station is outside of the map.");
+			}
+		}
+
+		this.stations = new ArrayList<Pair<Integer, Integer>>(stations);
+		// compacted once here rather than by every search
+		this.discreteCost = discreteCost.compact();
+		costs = new double[count][count];
+		paths = withPaths ? new CellPath[count][count] : null;
+
+		final AnalysisMonitor monitor = settings.monitor;
+		startPhase(MapUtil.AnalysisPhases.ACCUMULATED_COST, settings);
+		final Raster discrete = this.discreteCost;
+		final List<Pair<Integer, Integer>> targets = this.stations;
+		final double distance = costDistance;
+		// one task per station on a plain thread pool: the searches are independent, and a failed search passes on its own exception
+		ExecutorService pool = settings.parallelism > 1 ? Executors.newFixedThreadPool(settings.parallelism) : null;
+		try {
+			// every station is its own task, so a thread that finishes a short search starts the next one at once
+			CompletionService<SearchCounters> searches = pool != null ? new ExecutorCompletionService<SearchCounters>(pool) : null;
+			for(int j = 0; j < count; j++) {
+				if(searches == null) {
+					searchFinished(searchFrom(j, xs, ys, discrete, distance, targets, withPaths, monitor), j + 1, count, monitor);
+					continue;
+				}
+				final int station = j;
+				searches.submit(new Callable<SearchCounters>() {
+					@Override
+					public SearchCounters call() {
+						return searchFrom(station, xs, ys, discrete, distance, targets, withPaths, monitor);
+					}
+				});
+			}
+			// the monitor is told of every search on this thread, in the order the searches finish
+			for(int done = 1; searches != null && done <= count; done++) {
+				searchFinished(searches.take().get(), done, count, monitor);
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Analysis interrupted.");
+		} catch(ExecutionException e) {
+			// the exception of the search (such as a CancellationException), on the analysis thread
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if(e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			// after a failure the searches not yet started are dropped (running ones stop at a cancellation, otherwise they finish unused)
+			if(pool != null) pool.shutdownNow();
+		}
+		finishPhase(MapUtil.AnalysisPhases.ACCUMULATED_COST, settings);
+	}
+
+	/**
+	 * Searches from one station until every station is settled and fills in its column of the matrix
+	 * @return counters of the search
+	 */
+	private SearchCounters searchFrom(int station, int[] xs, int[] ys, Raster discrete, double costDistance, List<Pair<Integer, Integer>> targets,
+			boolean withPaths, AnalysisMonitor monitor) {
+		int width = discrete.getWidth();
+		int height = discrete.getHeight();
+		IntRaster source = new IntRaster(width, height);
+		source.set(xs[station], ys[station], 1);
+		ByteRaster predecessors = withPaths ? new ByteRaster(width, height, MapUtil.NO_PREDECESSOR) : null;
+		SearchCounters counters = new SearchCounters(monitor);
+		Raster accumulated = AccumulatedCostAnalysis.generateMultiTargetCostMap(source, discrete, costDistance, targets, predecessors, counters);
+		for(int i = 0; i < xs.length; i++) {
+			costs[i][station] = accumulated.get(xs[i], ys[i]);
+			if(withPaths && costs[i][station] < Double.POSITIVE_INFINITY) {
+				paths[i][station] = CellPath.fromPredecessors(predecessors, xs[i], ys[i]);
+			}
+		}
+		return counters;
+	}
+
+	/**
+	 * Tells the monitor, if any, the counters of a finished search and the fraction of the searches that are done
+	 */
+	private static void searchFinished(SearchCounters search, int done, int count, AnalysisMonitor monitor) {
+		if(monitor != null) {
+			monitor.searchFinished(search.cellsSettled, search.pushes, search.decreaseKeys, search.stalePops, search.peakFrontier);
+			monitor.progress((double) done/count);
+		}
+	}
+
+	/**
+	 * Tells the monitor, if any, that a phase starts, after checking that the analysis was not cancelled
+	 */
+	private static void startPhase(MapUtil.AnalysisPhases phase, AnalysisSettings settings) {
+		if(settings.monitor != null) {
+			settings.monitor.checkCancelled();
+			settings.monitor.phaseStarted(phase);
+		}
+	}
+
+	/**
+	 * Tells the monitor, if any, that a phase is finished
+	 */
+	private static void finishPhase(MapUtil.AnalysisPhases phase, AnalysisSettings settings) {
+		if(settings.monitor != null) {
+			settings.monitor.phaseFinished(phase);
+		}
+	}
+
+	/**
+	 * Monitor of one search on a pool thread: checks the cancellation of the analysis and keeps the counters of the search,
+	 * so that the monitor of the analysis is only called on the analysis thread
+	 */
+	private static class SearchCounters extends AnalysisMonitor {
+		private final AnalysisMonitor analysis;
+		long cellsSettled, pushes, decreaseKeys, stalePops, peakFrontier;
+
+		SearchCounters(AnalysisMonitor analysis) {
+			this.analysis = analysis;
+		}
+
+		@Override
+		public void checkCancelled() {
+			if(analysis != null) analysis.checkCancelled();
+		}
+
+		@Override
+		public void searchFinished(long cellsSettled, long pushes, long decreaseKeys, long stalePops, long peakFrontier) {
+			this.cellsSettled = cellsSettled;
+			this.pushes = pushes;
+			this.decreaseKeys = decreaseKeys;
+			this.stalePops = stalePops;
+			this.peakFrontier = peakFrontier;
+		}
+	}
+}
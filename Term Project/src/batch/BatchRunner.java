@@ -0,0 +1,307 @@
+package batch;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.ImageIO;
+
+import algorithm.AnalysisMetrics;
+import algorithm.AnalysisSettings;
+import algorithm.ByteLayer;
+import algorithm.CellPath;
+import algorithm.Grid;
+import algorithm.IntRaster;
+import algorithm.LayerCostCache;
+import algorithm.MapAnalysis;
+import algorithm.MapUtil;
+import algorithm.MapUtil.Pair;
+import algorithm.Raster;
+import fileUtils.FileUtil;
+
+/**
+ * Headless entry point that runs every scenario of a batch manifest (see Scenario) on a bounded thread pool.
+ * Layer images shared between scenarios are read once and layer costs are shared through a LayerCostCache.
+ * Layers may be images or raster files (see FileUtil.writeRaster).
+ * For each scenario the path (path.csv), the path drawn on the altitude map (pathMap.png), the accumulated cost (accumulatedCost.raster)
+ * and a summary with timings (summary.properties) are written to output/id, and one line per scenario is written to output/timings.csv.
+ *
+ * Top level manifest keys:
+ * <pre>
+ * threads         number of scenarios analyzed at the same time (number of processors)
+ * output          output directory, relative to the manifest (batch-output)
+ * cacheMegabytes  memory budget of the layer cost cache (256)
+ * </pre>
+ */
+public class BatchRunner {
+	private final File outputDirectory;
+	private final LayerCostCache layerCostCache;
+	// Layers read so far, keyed by canonical path (and whether they are inverted)
+	private final ConcurrentHashMap<String, FutureTask<Grid>> layers = new ConcurrentHashMap<String, FutureTask<Grid>>();
+
+	/**
+	 * @param args path of the manifest, optionally followed by the number of threads (overrides the manifest)
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length < 1 || args.length > 2) {
+			System.err.println("Usage: BatchRunner <manifest.properties> [threads]");
+			System.exit(2);
+		}
+		File manifestFile = new File(args[0]).getAbsoluteFile();
+		Properties manifest = new Properties();
+		try(InputStream in = new FileInputStream(manifestFile)) {
+			manifest.load(in);
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1])
+				: Integer.parseInt(manifest.getProperty("threads", String.valueOf(Runtime.getRuntime().availableProcessors())).trim());
+		File outputDirectory = new File(manifest.getProperty("output", "batch-output").trim());
+		if(!outputDirectory.isAbsolute()) outputDirectory = new File(manifestFile.getParentFile(), outputDirectory.getPath());
+		long cacheBytes = Long.parseLong(manifest.getProperty("cacheMegabytes", "256").trim()) << 20;
+
+		List<Scenario> scenarios = Scenario.fromManifest(manifest, manifestFile.getParentFile());
+		BatchRunner runner = new BatchRunner(outputDirectory, new LayerCostCache(cacheBytes));
+		boolean failed = !runner.run(scenarios, Math.max(1, threads));
+		System.exit(failed ? 1 : 0);
+	}
+
+	/**
+	 * @param outputDirectory directory the outputs are written to
+	 * @param layerCostCache cache of layer costs shared by the scenarios, or null
+	 */
+	public BatchRunner(File outputDirectory, LayerCostCache layerCostCache) {
+		this.outputDirectory = outputDirectory;
+		this.layerCostCache = layerCostCache;
+	}
+
+	/**
+	 * Analyzes scenarios on a pool of threads and writes their outputs
+	 * @param scenarios scenarios to analyze
+	 * @param threads number of scenarios analyzed at the same time
+	 * @return true if every scenario succeeded
+	 * @throws IOException if the output directory or timings file cannot be written
+	 */
+	public boolean run(List<Scenario> scenarios, int threads) throws IOException, InterruptedException {
+		if(!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("Cannot create " + outputDirectory);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Timings>> results = new ArrayList<Future<Timings>>();
+		try {
+			for(final Scenario scenario : scenarios) {
+				results.add(executor.submit(new Callable<Timings>() {
+					@Override
+					public Timings call() throws Exception {
+						return analyze(scenario);
+					}
+				}));
+			}
+
+			boolean succeeded = true;
+			try(PrintWriter timings = new PrintWriter(new File(outputDirectory, "timings.csv"), "UTF-8")) {
+				timings.println("scenario,status,loadMs,analysisMs,writeMs,totalMs,cost,message");
+				for(int i = 0; i < scenarios.size(); i++) {
+					String id = scenarios.get(i).id;
+					try {
+						Timings result = results.get(i).get();
+						timings.println(id + ",ok," + result.loadMs + "," + result.analysisMs + "," + result.writeMs + "," + result.totalMs() + "," + result.cost + ",");
+						System.out.println(id + ": " + result.totalMs() + " ms");
+					} catch(ExecutionException e) {
+						succeeded = false;
+						Throwable cause = e.getCause();
+						timings.println(id + ",failed,,,,,," + String.valueOf(cause.getMessage()).replace(',', ';').replace('\n', ' '));
+						System.err.println(id + " failed:");
+						cause.printStackTrace();
+					}
+				}
+			}
+			return succeeded;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Loads the layers of a scenario, analyzes it and writes its outputs
+	 */
+	private Timings analyze(Scenario scenario) throws IOException {
+		Timings timings = new Timings();
+		long time = System.nanoTime();
+
+		// Layers, interpreted as in TrainTerrainPanel
+		Map<MapUtil.MapTypes, Grid> layers = new EnumMap<MapUtil.MapTypes, Grid>(MapUtil.MapTypes.class);
+		Grid altitude = layer(scenario.altitude, false);
+		layers.put(MapUtil.MapTypes.ALTITUDE, altitude);
+		if(scenario.water != null) {
+			layers.put(MapUtil.MapTypes.WATER, layer(scenario.water, false));
+		} else if(scenario.waterLevel > 0) {
+			layers.put(MapUtil.MapTypes.WATER, waterLayer(altitude, scenario));
+		}
+		if(scenario.roads != null) layers.put(MapUtil.MapTypes.ROADS, layer(scenario.roads, true));
+		if(scenario.housing != null) layers.put(MapUtil.MapTypes.HOUSINGDENSITY, layer(scenario.housing, true));
+		int width = altitude.getWidth();
+		int height = altitude.getHeight();
+
+		IntRaster source = new IntRaster(width, height);
+		if(scenario.source == null) {
+			source.set(width - 1, height - 1, 1);
+		} else {
+			for(Pair<Integer, Integer> cell : scenario.source) {
+				checkCell(cell, width, height, scenario.id);
+				source.set(cell.getFirst(), cell.getSecond(), 1);
+			}
+		}
+		checkCell(scenario.start, width, height, scenario.id);
+		timings.loadMs = elapsedMs(time);
+
+		// Analysis (scenarios already run in parallel, so each analysis is serial)
+		time = System.nanoTime();
+		AnalysisSettings settings = new AnalysisSettings();
+		settings.routing = scenario.routing;
+		settings.accumulatedCostEngine = scenario.engine;
+		settings.precision = scenario.precision;
+		AnalysisMetrics metrics = new AnalysisMetrics();
+		settings.monitor = metrics;
+		settings.layerCostCache = layerCostCache;
+		double altitudeScale = (scenario.maxAltitude - scenario.minAltitude)/255.0;
+		MapAnalysis analysis = new MapAnalysis(source, scenario.start, layers, scenario.pixelSize, altitudeScale, scenario.costDistance, scenario.weightings, settings);
+		timings.cost = analysis.accumulatedCost.get(scenario.start.getFirst(), scenario.start.getSecond());
+		timings.analysisMs = elapsedMs(time);
+
+		// Outputs
+		time = System.nanoTime();
+		File directory = new File(outputDirectory, scenario.id);
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create " + directory);
+		}
+		CellPath path = analysis.path;
+		try(PrintWriter out = new PrintWriter(new File(directory, "path.csv"), "UTF-8")) {
+			out.println("x,y");
+			for(int i = 0; i < path.size(); i++) {
+				out.println(path.getX(i) + "," + path.getY(i));
+			}
+		}
+		BufferedImage pathImage = FileUtil.gridToImage(altitude);
+		for(int i = 0; i < path.size(); i++) {
+			pathImage.setRGB(path.getX(i), path.getY(i), 255<<16); //red
+		}
+		ImageIO.write(pathImage, "png", new File(directory, "pathMap.png"));
+		FileUtil.writeRaster(analysis.accumulatedCost, new File(directory, "accumulatedCost." + FileUtil.RASTER_EXTENSION));
+		timings.writeMs = elapsedMs(time);
+
+		Properties summary = new Properties();
+		summary.setProperty("cost", String.valueOf(timings.cost));
+		summary.setProperty("pathLength", String.valueOf(path.size()));
+		summary.setProperty("optimalityGap", String.valueOf(analysis.optimalityGap));
+		summary.setProperty("loadMs", String.valueOf(timings.loadMs));
+		summary.setProperty("analysisMs", String.valueOf(timings.analysisMs));
+		summary.setProperty("writeMs", String.valueOf(timings.writeMs));
+		for(Map.Entry<MapUtil.AnalysisPhases, AnalysisMetrics.PhaseMetrics> phase : metrics.getPhases().entrySet()) {
+			String prefix = "phase." + phase.getKey().name() + ".";
+			AnalysisMetrics.PhaseMetrics phaseMetrics = phase.getValue();
+			summary.setProperty(prefix + "wallMs", String.valueOf(phaseMetrics.wallNanos/1000000.0));
+			summary.setProperty(prefix + "allocatedBytes", String.valueOf(phaseMetrics.allocatedBytes));
+			if(phaseMetrics.searches > 0) {
+				summary.setProperty(prefix + "cellsSettled", String.valueOf(phaseMetrics.cellsSettled));
+				summary.setProperty(prefix + "pushes", String.valueOf(phaseMetrics.pushes));
+				summary.setProperty(prefix + "decreaseKeys", String.valueOf(phaseMetrics.decreaseKeys));
+				summary.setProperty(prefix + "stalePops", String.valueOf(phaseMetrics.stalePops));
+				summary.setProperty(prefix + "peakFrontier", String.valueOf(phaseMetrics.peakFrontier));
+			}
+		}
+		try(OutputStream out = new FileOutputStream(new File(directory, "summary.properties"))) {
+			summary.store(out, "Scenario " + scenario.id);
+		}
+		return timings;
+	}
+
+	/**
+	 * Reads a layer image (as an 8-bit layer) or raster file once, however many scenarios use it
+	 * @param inverted true to use 255 - value (roads and housing density, where white means none)
+	 */
+	private Grid layer(final File file, final boolean inverted) throws IOException {
+		String key = file.getCanonicalPath() + (inverted ? "#inverted" : "");
+		FutureTask<Grid> task = new FutureTask<Grid>(new Callable<Grid>() {
+			@Override
+			public Grid call() throws IOException {
+				if(FileUtil.isRasterFile(file)) {
+					Raster raster = FileUtil.readRaster(file);
+					if(inverted) {
+						double[] data = raster.getData();
+						for(int i = 0; i < data.length; i++) data[i] = 255 - data[i];
+					}
+					return raster;
+				}
+				BufferedImage image = ImageIO.read(file);
+				if(image == null) {
+					throw new IOException("Cannot read image " + file);
+				}
+				ByteLayer layer = FileUtil.imageToByteLayer(image);
+				return inverted ? layer.inverted() : layer;
+			}
+		});
+		FutureTask<Grid> loading = layers.putIfAbsent(key, task);
+		if(loading == null) {
+			loading = task;
+			task.run();
+		}
+		try {
+			return loading.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading " + file);
+		} catch(ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Water depth below waterLevel, as TrainTerrainPanel generates it
+	 */
+	private static Raster waterLayer(Grid altitudeLayer, Scenario scenario) {
+		double altitudeScale = (scenario.maxAltitude - scenario.minAltitude)/255.0;
+		Raster water = new Raster(altitudeLayer.getWidth(), altitudeLayer.getHeight());
+		for(int y = 0; y < altitudeLayer.getHeight(); y++) {
+			for(int x = 0; x < altitudeLayer.getWidth(); x++) {
+				double altitude = altitudeLayer.get(x, y)*altitudeScale + scenario.minAltitude;
+				water.set(x, y, altitude < scenario.waterLevel ? scenario.waterLevel - altitude : 0);
+			}
+		}
+		return water;
+	}
+
+	private static void checkCell(Pair<Integer, Integer> cell, int width, int height, String id) {
+		if(cell.getFirst() < 0 || cell.getFirst() >= width || cell.getSecond() < 0 || cell.getSecond() >= height) {
+			throw new IllegalArgumentException("Scenario " + id + " has a cell outside of the map: " + cell.getFirst() + "," + cell.getSecond());
+		}
+	}
+
+	private static long elapsedMs(long start) {
+		return (System.nanoTime() - start)/1000000;
+	}
+
+	private static class Timings {
+		long loadMs, analysisMs, writeMs;
+		double cost;
+
+		long totalMs() {
+			return loadMs + analysisMs + writeMs;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package batch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import algorithm.MapUtil;
+import algorithm.MapUtil.Pair;
+
+/**
+ * One analysis of a batch manifest.
+ * A manifest is a properties file where the keys of scenario "id" start with "scenario.id." and keys starting with "default."
+ * apply to every scenario that does not set them:
+ * <pre>
+ * altitude      altitude image (black is low, white is high), required
+ * water         water depth image (black is no water), optional
+ * waterLevel    altitude in meters below which there is water, used instead of a water image
+ * roads         roads image (white is no road), optional
+ * housing       housing density image (white is no houses), optional
+ * minAltitude   altitude in meters of a black altitude pixel (0)
+ * maxAltitude   altitude in meters of a white altitude pixel (255)
+ * pixelSize     dimensions of a cell in meters (1.0)
+ * costDistance  cost to travel from one cell to the next (1.0)
+ * weight.TYPE   weighting of a MapTypes layer, e.g. weight.ROADS (1.0)
+ * source        source cells as x,y pairs separated by ';' (the bottom right cell)
+ * start         start cell as x,y (0,0)
+ * routing       MapUtil.RoutingModes name (FULL_SURFACE)
+ * engine        MapUtil.AccumulatedCostEngines name (DIJKSTRA)
+ * precision     MapUtil.Precisions name of the cost surfaces (DOUBLE)
+ * </pre>
+ * Image paths are relative to the directory of the manifest, and may also name raster files (see FileUtil.writeRaster).
+ */
+public class Scenario {
+	public final String id;
+	public final File altitude, water, roads, housing;
+	public final double waterLevel;
+	public final double minAltitude, maxAltitude;
+	public final double pixelSize;
+	public final double costDistance;
+	public final Map<MapUtil.MapTypes, Double> weightings;
+	// Source cells, or null for the bottom right cell
+	public final List<Pair<Integer, Integer>> source;
+	public final Pair<Integer, Integer> start;
+	public final MapUtil.RoutingModes routing;
+	public final MapUtil.AccumulatedCostEngines engine;
+	public final MapUtil.Precisions precision;
+
+	private Scenario(String id, Properties manifest, File directory) {
+		this.id = id;
+		altitude = file(manifest, id, "altitude", directory);
+		if(altitude == null) {
+			throw new IllegalArgumentException("Scenario " + id + " has no altitude image.");
+		}
+		water = file(manifest, id, "water", directory);
+		roads = file(manifest, id, "roads", directory);
+		housing = file(manifest, id, "housing", directory);
+		waterLevel = number(manifest, id, "waterLevel", 0);
+		minAltitude = number(manifest, id, "minAltitude", 0);
+		maxAltitude = number(manifest, id, "maxAltitude", 255);
+		if(!(maxAltitude > minAltitude && minAltitude >= 0)) {
+			throw new IllegalArgumentException("Scenario " + id + " needs maxAltitude > minAltitude >= 0.");
+		}
+		pixelSize = number(manifest, id, "pixelSize", 1.0);
+		costDistance = number(manifest, id, "costDistance", 1.0);
+		weightings = new EnumMap<MapUtil.MapTypes, Double>(MapUtil.MapTypes.class);
+		for(MapUtil.MapTypes type : MapUtil.MapTypes.values()) {
+			weightings.put(type, number(manifest, id, "weight." + type.name(), 1.0));
+		}
+		String sourceCells = value(manifest, id, "source");
+		if(sourceCells == null) {
+			source = null;
+		} else {
+			source = new ArrayList<Pair<Integer, Integer>>();
+			for(String cell : sourceCells.split(";")) {
+				if(!cell.trim().isEmpty()) source.add(cell(cell, id));
+			}
+		}
+		String startCell = value(manifest, id, "start");
+		start = startCell == null ? new Pair<Integer, Integer>(0, 0) : cell(startCell, id);
+		String routingName = value(manifest, id, "routing");
+		routing = routingName == null ? MapUtil.RoutingModes.FULL_SURFACE : MapUtil.RoutingModes.valueOf(routingName);
+		String engineName = value(manifest, id, "engine");
+		engine = engineName == null ? MapUtil.AccumulatedCostEngines.DIJKSTRA : MapUtil.AccumulatedCostEngines.valueOf(engineName);
+		String precisionName = value(manifest, id, "precision");
+		precision = precisionName == null ? MapUtil.Precisions.DOUBLE : MapUtil.Precisions.valueOf(precisionName);
+	}
+
+	/**
+	 * Reads every scenario of a manifest, in order of id
+	 * @param manifest properties of the manifest
+	 * @param directory directory that image paths are relative to
+	 * @return scenarios
+	 * @throws IllegalArgumentException if a scenario is missing its altitude image or has an invalid value
+	 */
+	public static List<Scenario> fromManifest(Properties manifest, File directory) {
+		TreeSet<String> ids = new TreeSet<String>();
+		for(String key : manifest.stringPropertyNames()) {
+			if(key.startsWith("scenario.")) {
+				int end = key.indexOf('.', "scenario.".length());
+				if(end > 0) ids.add(key.substring("scenario.".length(), end));
+			}
+		}
+		List<Scenario> scenarios = new ArrayList<Scenario>();
+		for(String id : ids) {
+			scenarios.add(new Scenario(id, manifest, directory));
+		}
+		return scenarios;
+	}
+
+	private static String value(Properties manifest, String id, String key) {
+		String value = manifest.getProperty("scenario." + id + "." + key);
+		if(value == null) value = manifest.getProperty("default." + key);
+		return value == null ? null : value.trim();
+	}
+
+	private static double number(Properties manifest, String id, String key, double defaultValue) {
+		String value = value(manifest, id, key);
+		if(value == null) return defaultValue;
+		try {
+			return Double.parseDouble(value);
+		} catch(NumberFormatException e) {
+			throw new IllegalArgumentException("Scenario " + id + " has an invalid " + key + ": " + value);
+		}
+	}
+
+	private static File file(Properties manifest, String id, String key, File directory) {
+		String path = value(manifest, id, key);
+		if(path == null || path.isEmpty()) return null;
+		File file = new File(path);
+		return file.isAbsolute() ? file : new File(directory, path);
+	}
+
+	private static Pair<Integer, Integer> cell(String value, String id) {
+		String[] coordinates = value.split(",");
+		try {
+			if(coordinates.length == 2) {
+				return new Pair<Integer, Integer>(Integer.parseInt(coordinates[0].trim()), Integer.parseInt(coordinates[1].trim()));
+			}
+		} catch(NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("Scenario " + id + " has an invalid cell: " + value);
+	}
+}
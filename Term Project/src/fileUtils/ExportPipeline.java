@@ -0,0 +1,182 @@
+package fileUtils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import algorithm.Grid;
+
+/**
+ * Writes the artifacts of an analysis (images and rasters) to files in a directory, concurrently on a bounded pool of threads.
+ * Images are written in an image format (see FileUtil.ImageFormats) and rasters as raster files (see FileUtil.writeRaster).
+ * Images can also be generated on the pool, for images that are only needed in their files.
+ * Adding an artifact does not wait for it to be written, unless the pool and its queue are full (then the caller writes it, which keeps at
+ * most a bounded number of artifacts waiting). finish waits for every artifact and reports the failures, files and bytes written.
+ * Artifacts are added and finished from one thread.
+ */
+public class ExportPipeline {
+	/**
+	 * Outcome of an export
+	 */
+	public static class Report {
+		public final File directory;
+		public int files;
+		public long bytes;
+		public long elapsedNanos;
+		// Error of every artifact that could not be written, by name, in the order the artifacts were added
+		public final Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+
+		private Report(File directory) {
+			this.directory = directory;
+		}
+
+		/**
+		 * @return megabytes (2^20 bytes) written per second
+		 */
+		public double megabytesPerSecond() {
+			return elapsedNanos > 0 ? bytes / (double) (1 << 20) / (elapsedNanos / 1e9) : 0;
+		}
+
+		@Override
+		public String toString() {
+			String text = String.format("%d files, %.1f MB in %d ms (%.1f MB/s)", files, bytes / (double) (1 << 20), elapsedNanos / 1000000,
+					megabytesPerSecond());
+			if(!failures.isEmpty()) {
+				text += ", " + failures.size() + " failed";
+			}
+			return text;
+		}
+	}
+
+	private final File directory;
+	private final FileUtil.ImageFormats imageFormat;
+	private final ThreadPoolExecutor executor;
+	private final Map<String, Future<Long>> artifacts = new LinkedHashMap<String, Future<Long>>();
+	private final long startNanos;
+
+	/**
+	 * @param directory directory to write the files in, created if it does not exist
+	 * @param imageFormat format of the image files
+	 * @param threads number of artifacts written at the same time
+	 * @throws IOException if the directory cannot be created
+	 * @throws IllegalArgumentException if arguments are null or threads is less than 1
+	 */
+	public ExportPipeline(File directory, FileUtil.ImageFormats imageFormat, int threads) throws IOException {
+		if(directory == null || imageFormat == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(threads < 1) {
+			throw new IllegalArgumentException("Illegal number of threads.");
+		}
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create directory: " + directory);
+		}
+		this.directory = directory;
+		this.imageFormat = imageFormat;
+		// as many artifacts waiting as being written, beyond that the caller writes
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threads),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		startNanos = System.nanoTime();
+	}
+
+	/**
+	 * @param name name of the file, without extension
+	 * @param image image to write
+	 * @throws IllegalArgumentException if arguments are null or an artifact already has the name
+	 * @throws IllegalStateException if the export is finished
+	 */
+	public void addImage(String name, final BufferedImage image) {
+		if(image == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		addImage(name, new Callable<BufferedImage>() {
+			@Override
+			public BufferedImage call() {
+				return image;
+			}
+		});
+	}
+
+	/**
+	 * @param name name of the file, without extension
+	 * @param image generates the image to write, on the pool (its exception is reported as a failure of the artifact)
+	 * @throws IllegalArgumentException if arguments are null or an artifact already has the name
+	 * @throws IllegalStateException if the export is finished
+	 */
+	public void addImage(String name, final Callable<BufferedImage> image) {
+		if(name == null || image == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		final File file = new File(directory, name + "." + FileUtil.imageExtension(imageFormat));
+		add(name, new Callable<Long>() {
+			@Override
+			public Long call() throws Exception {
+				FileUtil.writeImage(image.call(), file, imageFormat);
+				return file.length();
+			}
+		});
+	}
+
+	/**
+	 * @param name name of the file, without extension
+	 * @param raster raster to write without loss (see FileUtil.writeRaster)
+	 * @throws IllegalArgumentException if arguments are null or an artifact already has the name
+	 * @throws IllegalStateException if the export is finished
+	 */
+	public void addRaster(String name, final Grid raster) {
+		if(name == null || raster == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		final File file = new File(directory, name + "." + FileUtil.RASTER_EXTENSION);
+		add(name, new Callable<Long>() {
+			@Override
+			public Long call() throws IOException {
+				FileUtil.writeRaster(raster, file);
+				return file.length();
+			}
+		});
+	}
+
+	/**
+	 * Waits for every artifact to be written and shuts the pool down (no artifacts can be added afterwards)
+	 * @return files and bytes written, the time since the pipeline was created, and the artifacts that failed
+	 * @throws InterruptedException if interrupted while waiting (artifacts not yet written are abandoned)
+	 */
+	public Report finish() throws InterruptedException {
+		Report report = new Report(directory);
+		try {
+			for(Map.Entry<String, Future<Long>> artifact : artifacts.entrySet()) {
+				try {
+					report.bytes += artifact.getValue().get();
+					report.files++;
+				} catch(ExecutionException e) {
+					report.failures.put(artifact.getKey(), e.getCause());
+				}
+			}
+		} catch(InterruptedException e) {
+			executor.shutdownNow();
+			throw e;
+		}
+		executor.shutdown();
+		report.elapsedNanos = System.nanoTime() - startNanos;
+		return report;
+	}
+
+	private void add(String name, Callable<Long> write) {
+		if(executor.isShutdown()) {
+			throw new IllegalStateException("Export already finished.");
+		}
+		if(artifacts.containsKey(name)) {
+			throw new IllegalArgumentException("Duplicate artifact: " + name);
+		}
+		artifacts.put(name, executor.submit(write));
+	}
+}
@@ -1,11 +1,66 @@
 package fileUtils;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.WritableRaster;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
+
+import algorithm.ByteLayer;
+import algorithm.FloatRaster;
+import algorithm.Grid;
+import algorithm.Raster;
+import algorithm.RowBands;
 
 
 public class FileUtil {
+	// Fewest pixels worth converting on several threads
+	private static final int MIN_PARALLEL_PIXELS = 1 << 18;
+	
+	// Raster files: a 32 byte header followed by the values row by row, all little-endian
+	//      0  magic "TTRS"
+	//      4  int format version (1)
+	//      8  int type of the stored values (see rasterTypeCode)
+	//      12 int width
+	//      16 int height
+	//      20 int reserved (0)
+	//      24 double scale, the value of a cell is its stored value * scale
+	public static final String RASTER_EXTENSION = "raster";
+	private static final int RASTER_MAGIC = 'T' | 'T' << 8 | 'R' << 16 | 'S' << 24;
+	private static final int RASTER_VERSION = 1;
+	private static final int RASTER_HEADER_BYTES = 32;
+	// Largest region of a raster file mapped at once
+	private static final long MAX_MAPPED_BYTES = 1 << 30;
 	
+	// Types of the values stored in a raster file:
+	//      UINT8   0 to 255, rounded and clamped
+	//      INT32   rounded and clamped to the int range
+	//      FLOAT32 single precision
+	//      FLOAT64 double precision (lossless)
+	public enum RasterTypes{ UINT8, INT32, FLOAT32, FLOAT64 };
+
+	// Formats of image files:
+	//      PNG       compressed by ImageIO (small but slow to write)
+	//      FAST_PNG  RGB or RGBA PNG deflated at the fastest level (larger files, several times faster to write)
+	//      RAW       raster file of INT32 ARGB pixels (see writeRaster), the fastest, readable with readRaster
+	public enum ImageFormats{ PNG, FAST_PNG, RAW };
+	private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
 	/**
 	 * Converts image file to a 2D array
 	 * @param file image file
@@ -13,39 +68,589 @@ public class FileUtil {
 	 * @throws IOException if there is a problem reading the file
 	 */
 	public static double[][] imageToMap(BufferedImage image) {
-		int width = image.getWidth();
+		return imageToRaster(image).toArray();
+	}
+
+	/**
+	 * Converts image to a raster, on every processor for large images
+	 * @param image image to be converted
+	 * @return raster of the interpreted map
+	 */
+	public static Raster imageToRaster(BufferedImage image) {
+		return imageToRaster(image, defaultParallelism(image.getWidth(), image.getHeight()));
+	}
+
+	/**
+	 * Converts image to a raster, sampling the blue channel of every pixel (the same value as getRGB(x, y) & 255).
+	 * Rows of the common image types are read in bulk from the image raster, other types through getRGB.
+	 * @param image image to be converted
+	 * @param parallelism number of threads (1 runs serially on the calling thread)
+	 * @return raster of the interpreted map
+	 */
+	public static Raster imageToRaster(final BufferedImage image, int parallelism) {
+		final int width = image.getWidth();
 		int height = image.getHeight();
-		
-		double map[][] = new double[width][height];
-		for(int i = 0; i < width; i++) {
-			for(int j = 0; j < height; j ++) {
-				map[i][j] = image.getRGB(i, j) & 255; //mask to only sample first channel
+
+		Raster map = new Raster(width, height);
+		final double[] data = map.getData();
+		run(new RowBands.Kernel() {
+			@Override
+			public void run(int fromY, int toY) {
+				BlueRowReader reader = blueRowReader(image);
+				int[] blue = new int[width];
+				for(int j = fromY; j < toY; j++) {
+					reader.read(j, blue);
+					for(int i = 0; i < width; i++) {
+						data[j * width + i] = blue[i];
+					}
+				}
 			}
-		}
-		
+		}, height, parallelism);
+
 		return map;
 	}
-	
+
+	/**
+	 * Converts image to an 8-bit layer, on every processor for large images
+	 * @param image image to be converted
+	 * @return layer of the interpreted map
+	 */
+	public static ByteLayer imageToByteLayer(BufferedImage image) {
+		return imageToByteLayer(image, defaultParallelism(image.getWidth(), image.getHeight()));
+	}
+
+	/**
+	 * Converts image to an 8-bit layer, sampling the blue channel of every pixel as imageToRaster does
+	 * in an eighth of the memory of a raster
+	 * @param image image to be converted
+	 * @param parallelism number of threads (1 runs serially on the calling thread)
+	 * @return layer of the interpreted map
+	 */
+	public static ByteLayer imageToByteLayer(final BufferedImage image, int parallelism) {
+		final int width = image.getWidth();
+		int height = image.getHeight();
+
+		ByteLayer map = new ByteLayer(width, height);
+		final byte[] data = map.getData();
+		run(new RowBands.Kernel() {
+			@Override
+			public void run(int fromY, int toY) {
+				BlueRowReader reader = blueRowReader(image);
+				int[] blue = new int[width];
+				for(int j = fromY; j < toY; j++) {
+					reader.read(j, blue);
+					for(int i = 0; i < width; i++) {
+						data[j * width + i] = (byte) blue[i];
+					}
+				}
+			}
+		}, height, parallelism);
+
+		return map;
+	}
+
+	/**
+	 * Reads the blue channel of image rows, with a row buffer of its own (one reader per thread)
+	 */
+	private static abstract class BlueRowReader {
+		/**
+		 * @param y row of the image
+		 * @param blue receives the blue channel (0 to 255) of every pixel of the row
+		 */
+		abstract void read(int y, int[] blue);
+	}
+
+	/**
+	 * @param image image to be read
+	 * @return reader of the blue channel, in bulk from the image raster for the common image types and through getRGB for the others
+	 */
+	private static BlueRowReader blueRowReader(final BufferedImage image) {
+		final int width = image.getWidth();
+		final WritableRaster raster = image.getRaster();
+		switch(image.getType()) {
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_ARGB:
+		case BufferedImage.TYPE_INT_BGR:
+			// one packed pixel per int, blue in the low byte (high byte for BGR)
+			final int blueShift = image.getType() == BufferedImage.TYPE_INT_BGR ? 16 : 0;
+			return new BlueRowReader() {
+				private final int[] row = new int[width];
+				@Override
+				void read(int y, int[] blue) {
+					raster.getDataElements(0, y, width, 1, row);
+					for(int i = 0; i < width; i++) {
+						blue[i] = (row[i] >> blueShift) & 255;
+					}
+				}
+			};
+		case BufferedImage.TYPE_3BYTE_BGR:
+		case BufferedImage.TYPE_4BYTE_ABGR:
+			// bytes of a pixel in band order (red, green, blue[, alpha])
+			final int bands = raster.getNumDataElements();
+			return new BlueRowReader() {
+				private final byte[] row = new byte[width * bands];
+				@Override
+				void read(int y, int[] blue) {
+					raster.getDataElements(0, y, width, 1, row);
+					for(int i = 0; i < width; i++) {
+						blue[i] = row[i * bands + 2] & 255;
+					}
+				}
+			};
+		case BufferedImage.TYPE_BYTE_GRAY:
+		case BufferedImage.TYPE_BYTE_INDEXED:
+			// one byte per pixel, converted through the color model once for each of the 256 values
+			final int[] lookup = new int[256];
+			ColorModel colorModel = image.getColorModel();
+			for(int value = 0; value < 256; value++) {
+				lookup[value] = colorModel.getRGB(value) & 255;
+			}
+			return new BlueRowReader() {
+				private final byte[] row = new byte[width];
+				@Override
+				void read(int y, int[] blue) {
+					raster.getDataElements(0, y, width, 1, row);
+					for(int i = 0; i < width; i++) {
+						blue[i] = lookup[row[i] & 255];
+					}
+				}
+			};
+		default:
+			return new BlueRowReader() {
+				@Override
+				void read(int y, int[] blue) {
+					image.getRGB(0, y, width, 1, blue, 0, width);
+					for(int i = 0; i < width; i++) {
+						blue[i] &= 255; //mask to only sample first channel
+					}
+				}
+			};
+		}
+	}
+
 	/**
 	 * Converts 2D array to grayscale image
 	 * @param map array to be converted to image
 	 * @return grayscale image interpreted from array
 	 */
 	public static BufferedImage mapToImage(double[][] map) {
-		int width = map.length;
-		int height = map[0].length;
-		
+		return rasterToImage(Raster.fromArray(map));
+	}
+
+	/**
+	 * Converts raster to grayscale image, on every processor for large rasters
+	 * @param map raster to be converted to image
+	 * @return grayscale image interpreted from raster
+	 */
+	public static BufferedImage rasterToImage(Raster map) {
+		return rasterToImage(map, defaultParallelism(map.getWidth(), map.getHeight()));
+	}
+
+	/**
+	 * Converts raster to grayscale image, writing rows of the image raster in bulk
+	 * @param map raster to be converted to image
+	 * @param parallelism number of threads (1 runs serially on the calling thread)
+	 * @return grayscale image interpreted from raster
+	 */
+	public static BufferedImage rasterToImage(final Raster map, int parallelism) {
+		final int width = map.getWidth();
+		int height = map.getHeight();
+		final double[] data = map.getData();
+
 		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-		
-		for(int i = 0; i < width; i++) {
-			for(int j = 0; j < height; j ++) {
-				int data = Double.valueOf(map[i][j]).intValue();
-				int rgb = (data<<16) | (data<<8) | (data); //set all color channels to same value for grayscale image
-				image.setRGB(i, j, rgb);
+		final WritableRaster raster = image.getRaster();
+
+		run(new RowBands.Kernel() {
+			@Override
+			public void run(int fromY, int toY) {
+				// bytes of a pixel in band order (red, green, blue)
+				byte[] row = new byte[width * 3];
+				for(int j = fromY; j < toY; j++) {
+					int start = map.index(0, j);
+					for(int i = 0; i < width; i++) {
+						int value = Double.valueOf(data[start + i]).intValue();
+						int rgb = (value<<16) | (value<<8) | (value); //set all color channels to same value for grayscale image
+						row[i * 3] = (byte) (rgb >> 16);
+						row[i * 3 + 1] = (byte) (rgb >> 8);
+						row[i * 3 + 2] = (byte) rgb;
+					}
+					raster.setDataElements(0, j, width, 1, row);
+				}
 			}
-		}
-		
+		}, height, parallelism);
+
 		return image;
 	}
 
+	/**
+	 * Converts a raster or 8-bit layer to grayscale image
+	 * @param map grid to be converted to image
+	 * @return grayscale image interpreted from grid
+	 */
+	public static BufferedImage gridToImage(Grid map) {
+		if(map instanceof ByteLayer) {
+			ByteLayer layer = (ByteLayer) map;
+			byte[] data = layer.getData();
+			int width = layer.getWidth();
+			BufferedImage image = new BufferedImage(width, layer.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+			WritableRaster raster = image.getRaster();
+			byte[] row = new byte[width * 3];
+			for(int j = 0; j < layer.getHeight(); j++) {
+				int start = layer.index(0, j);
+				for(int i = 0; i < width; i++) {
+					row[i * 3] = row[i * 3 + 1] = row[i * 3 + 2] = data[start + i];
+				}
+				raster.setDataElements(0, j, width, 1, row);
+			}
+			return image;
+		}
+		return rasterToImage(Raster.fromGrid(map));
+	}
+
+	/**
+	 * @return number of processors for images with at least MIN_PARALLEL_PIXELS pixels, otherwise 1
+	 */
+	private static int defaultParallelism(int width, int height) {
+		return (long) width * height >= MIN_PARALLEL_PIXELS ? Runtime.getRuntime().availableProcessors() : 1;
+	}
+
+	private static void run(RowBands.Kernel kernel, int height, int parallelism) {
+		ForkJoinPool pool = RowBands.newPool(parallelism);
+		try {
+			RowBands.run(pool, height, kernel);
+		} finally {
+			if(pool != null) pool.shutdown();
+		}
+	}
+
+	/**
+	 * @param file file to check
+	 * @return true if the file has the extension of raster files
+	 */
+	public static boolean isRasterFile(File file) {
+		return file.getName().toLowerCase().endsWith("." + RASTER_EXTENSION);
+	}
+
+	/**
+	 * Writes a raster to a raster file without loss (FLOAT32 values for a FloatRaster, otherwise FLOAT64 values, with a scale of 1)
+	 * @param map raster to be written
+	 * @param file file to write, replaced if it exists
+	 * @throws IOException if there is a problem writing the file
+	 */
+	public static void writeRaster(Grid map, File file) throws IOException {
+		writeRaster(map, file, map instanceof FloatRaster ? RasterTypes.FLOAT32 : RasterTypes.FLOAT64, 1);
+	}
+
+	/**
+	 * Writes a raster to a raster file, storing value / scale for every cell
+	 * @param map raster (or other grid) to be written
+	 * @param file file to write, replaced if it exists
+	 * @param type type of the stored values
+	 * @param scale scale of the stored values (the values read back are the stored values * scale)
+	 * @throws IOException if there is a problem writing the file
+	 * @throws IllegalArgumentException if arguments are null or scale is not a positive number
+	 */
+	public static void writeRaster(Grid map, File file, RasterTypes type, double scale) throws IOException {
+		if(map == null || file == null || type == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		if(!(scale > 0) || Double.isInfinite(scale)) {
+			throw new IllegalArgumentException("Illegal scale.");
+		}
+		int width = map.getWidth();
+		int height = map.getHeight();
+		int valueBytes = rasterTypeBytes(type);
+		// rasters and float rasters are read from their arrays, other grids cell by cell
+		Raster raster = map instanceof Raster ? (Raster) map : null;
+		FloatRaster floats = map instanceof FloatRaster ? (FloatRaster) map : null;
+		double[] data = raster != null ? raster.getData() : null;
+		float[] floatData = floats != null ? floats.getData() : null;
+
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			writeRasterHeader(channel, type, width, height, scale);
+
+			// map a band of rows at a time so that large rasters stay within the limits of a mapping
+			int bandRows = rowsPerMapping(width, valueBytes);
+			for(int fromY = 0; fromY < height; fromY += bandRows) {
+				int toY = Math.min(height, fromY + bandRows);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+						RASTER_HEADER_BYTES + (long) fromY*width*valueBytes, (long) (toY - fromY)*width*valueBytes);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				for(int y = fromY; y < toY; y++) {
+					if(raster != null && type == RasterTypes.FLOAT64 && scale == 1) {
+						buffer.asDoubleBuffer().put(data, raster.index(0, y), width);
+						buffer.position(buffer.position() + width*valueBytes);
+						continue;
+					}
+					if(floats != null && type == RasterTypes.FLOAT32 && scale == 1) {
+						buffer.asFloatBuffer().put(floatData, floats.index(0, y), width);
+						buffer.position(buffer.position() + width*valueBytes);
+						continue;
+					}
+					for(int x = 0; x < width; x++) {
+						double value = raster != null ? data[raster.index(x, y)] : floats != null ? floatData[floats.index(x, y)] : map.get(x, y);
+						switch(type) {
+						case UINT8: buffer.put((byte) Math.max(0, Math.min(255, Math.round(value/scale)))); break;
+						case INT32: buffer.putInt((int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.round(value/scale)))); break;
+						case FLOAT32: buffer.putFloat((float) (value/scale)); break;
+						case FLOAT64: buffer.putDouble(value/scale); break;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes an image to a file
+	 * @param image image to be written
+	 * @param file file to write, replaced if it exists (see imageExtension)
+	 * @param format format of the file
+	 * @throws IOException if there is a problem writing the file
+	 * @throws IllegalArgumentException if arguments are null
+	 */
+	public static void writeImage(BufferedImage image, File file, ImageFormats format) throws IOException {
+		if(image == null || file == null || format == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		switch(format) {
+		case PNG:
+			if(!ImageIO.write(image, "png", file)) {
+				throw new IOException("No PNG writer for image: " + file);
+			}
+			break;
+		case FAST_PNG:
+			writeFastPng(image, file);
+			break;
+		case RAW:
+			writeRawImage(image, file);
+			break;
+		}
+	}
+
+	/**
+	 * @param format format of image files
+	 * @return extension of the files written in format, without the dot
+	 */
+	public static String imageExtension(ImageFormats format) {
+		return format == ImageFormats.RAW ? RASTER_EXTENSION : "png";
+	}
+
+	/**
+	 * Writes an 8-bit RGB (or RGBA, if the image has alpha) PNG without row filters, deflated at the fastest level
+	 */
+	private static void writeFastPng(BufferedImage image, File file) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean alpha = image.getColorModel().hasAlpha();
+		int channels = alpha ? 4 : 3;
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+			out.write(PNG_SIGNATURE);
+			ByteBuffer header = ByteBuffer.allocate(13);
+			// bit depth 8, colour type RGBA (6) or RGB (2), deflate, adaptive filtering, no interlace
+			header.putInt(width).putInt(height).put((byte) 8).put((byte) (alpha ? 6 : 2)).put((byte) 0).put((byte) 0).put((byte) 0);
+			writePngChunk(out, "IHDR", header.array(), header.position());
+
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				int[] argb = new int[width];
+				// every row starts with its filter type, 0 (none)
+				byte[] row = new byte[1 + width * channels];
+				byte[] compressed = new byte[1 << 16];
+				int used = 0;
+				for(int y = 0; y <= height; y++) {
+					if(y < height) {
+						readArgbRow(image, y, argb);
+						for(int x = 0, i = 1; x < width; x++) {
+							int pixel = argb[x];
+							row[i++] = (byte) (pixel >> 16);
+							row[i++] = (byte) (pixel >> 8);
+							row[i++] = (byte) pixel;
+							if(alpha) row[i++] = (byte) (pixel >>> 24);
+						}
+						deflater.setInput(row);
+					} else {
+						deflater.finish();
+					}
+					// drain the deflater into IDAT chunks of up to 64 KB
+					while(y < height ? !deflater.needsInput() : !deflater.finished()) {
+						used += deflater.deflate(compressed, used, compressed.length - used);
+						if(used == compressed.length) {
+							writePngChunk(out, "IDAT", compressed, used);
+							used = 0;
+						}
+					}
+				}
+				if(used > 0) writePngChunk(out, "IDAT", compressed, used);
+			} finally {
+				deflater.end();
+			}
+			writePngChunk(out, "IEND", new byte[0], 0);
+		}
+	}
+
+	private static void writePngChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data, 0, length);
+		out.writeInt(length);
+		out.write(typeBytes);
+		out.write(data, 0, length);
+		out.writeInt((int) crc.getValue());
+	}
+
+	/**
+	 * Writes the ARGB pixels of an image as the INT32 values of a raster file (see writeRaster), row by row in bulk
+	 */
+	private static void writeRawImage(BufferedImage image, File file) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			writeRasterHeader(channel, RasterTypes.INT32, width, height, 1);
+			int[] argb = new int[width];
+			int bandRows = rowsPerMapping(width, 4);
+			for(int fromY = 0; fromY < height; fromY += bandRows) {
+				int toY = Math.min(height, fromY + bandRows);
+				IntBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+						RASTER_HEADER_BYTES + (long) fromY*width*4, (long) (toY - fromY)*width*4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+				for(int y = fromY; y < toY; y++) {
+					readArgbRow(image, y, argb);
+					buffer.put(argb);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads a row of an image as ARGB pixels, in bulk from the image raster for int images, through getRGB for other types
+	 */
+	private static void readArgbRow(BufferedImage image, int y, int[] argb) {
+		switch(image.getType()) {
+		case BufferedImage.TYPE_INT_ARGB:
+			image.getRaster().getDataElements(0, y, argb.length, 1, argb);
+			break;
+		case BufferedImage.TYPE_INT_RGB:
+			image.getRaster().getDataElements(0, y, argb.length, 1, argb);
+			for(int x = 0; x < argb.length; x++) {
+				argb[x] |= 0xff000000;
+			}
+			break;
+		default:
+			image.getRGB(0, y, argb.length, 1, argb, 0, argb.length);
+		}
+	}
+
+	private static void writeRasterHeader(FileChannel channel, RasterTypes type, int width, int height, double scale) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(RASTER_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(RASTER_MAGIC).putInt(RASTER_VERSION).putInt(rasterTypeCode(type)).putInt(width).putInt(height).putInt(0).putDouble(scale);
+		header.flip();
+		while(header.hasRemaining()) channel.write(header, header.position());
+	}
+
+	/**
+	 * Reads a raster file (see writeRaster) by mapping it into memory
+	 * @param file raster file
+	 * @return raster of the values in the file (stored values * scale)
+	 * @throws IOException if there is a problem reading the file or it is not a valid raster file
+	 */
+	public static Raster readRaster(File file) throws IOException {
+		if(file == null) {
+			throw new IllegalArgumentException("Null arguments.");
+		}
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if(channel.size() < RASTER_HEADER_BYTES) {
+				throw new IOException("Not a raster file: " + file);
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, RASTER_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			if(header.getInt() != RASTER_MAGIC) {
+				throw new IOException("Not a raster file: " + file);
+			}
+			int version = header.getInt();
+			if(version != RASTER_VERSION) {
+				throw new IOException("Unsupported raster file version " + version + ": " + file);
+			}
+			RasterTypes type = rasterType(header.getInt());
+			int width = header.getInt();
+			int height = header.getInt();
+			header.getInt();
+			double scale = header.getDouble();
+			int valueBytes = type == null ? 0 : rasterTypeBytes(type);
+			if(type == null || width < 0 || height < 0 || channel.size() != RASTER_HEADER_BYTES + (long) width*height*valueBytes) {
+				throw new IOException("Corrupt raster file: " + file);
+			}
+
+			Raster map = new Raster(width, height);
+			double[] data = map.getData();
+			int bandRows = rowsPerMapping(width, valueBytes);
+			for(int fromY = 0; fromY < height; fromY += bandRows) {
+				int toY = Math.min(height, fromY + bandRows);
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+						RASTER_HEADER_BYTES + (long) fromY*width*valueBytes, (long) (toY - fromY)*width*valueBytes).order(ByteOrder.LITTLE_ENDIAN);
+				int from = fromY*width;
+				int to = toY*width;
+				switch(type) {
+				case UINT8:
+					for(int cell = from; cell < to; cell++) data[cell] = (buffer.get() & 255)*scale;
+					break;
+				case INT32:
+					for(int cell = from; cell < to; cell++) data[cell] = buffer.getInt()*scale;
+					break;
+				case FLOAT32:
+					for(int cell = from; cell < to; cell++) data[cell] = buffer.getFloat()*scale;
+					break;
+				case FLOAT64:
+					buffer.asDoubleBuffer().get(data, from, to - from);
+					if(scale != 1) {
+						for(int cell = from; cell < to; cell++) data[cell] *= scale;
+					}
+					break;
+				}
+			}
+			return map;
+		}
+	}
+
+	/**
+	 * @return number of rows of a raster file that fit in one mapping
+	 */
+	private static int rowsPerMapping(int width, int valueBytes) {
+		return (int) Math.max(1, MAX_MAPPED_BYTES/Math.max(1, (long) width*valueBytes));
+	}
+
+	/**
+	 * @return code of a type in the header of raster files (never change these, files depend on them)
+	 */
+	private static int rasterTypeCode(RasterTypes type) {
+		switch(type) {
+		case UINT8: return 1;
+		case INT32: return 2;
+		case FLOAT32: return 3;
+		default: return 4;
+		}
+	}
+
+	/**
+	 * @return type of a code in the header of raster files, or null for an unknown code
+	 */
+	private static RasterTypes rasterType(int code) {
+		for(RasterTypes type : RasterTypes.values()) {
+			if(rasterTypeCode(type) == code) return type;
+		}
+		return null;
+	}
+
+	/**
+	 * @return number of bytes of a value of a type
+	 */
+	private static int rasterTypeBytes(RasterTypes type) {
+		switch(type) {
+		case UINT8: return 1;
+		case INT32: case FLOAT32: return 4;
+		default: return 8;
+		}
+	}
+
 }